@@ -75,4 +75,410 @@ public class MpesaConfig {
      */
     @Value("${mpesa.callback-url}")
     private String callbackUrl;
+
+    /**
+     * Multi-tenant (several paybills in one instance)
+     * - default-id: tenant id of the shortcode configured above; used when a request names no tenant
+     * - file: optional properties file with more tenants, keyed "<tenant-id>.<setting>"
+     *   (shortcode, passkey, consumer-key, consumer-secret, callback-url, rate-per-second, burst, weight)
+     * - reload-seconds: how often the file is checked for changes (0 disables reloading)
+     * - rate-per-second / burst: default STK Push rate per tenant (rate <= 0 disables it)
+     * - weight: default share of the push scheduler per tenant, relative to the others
+     */
+    @Value("${mpesa.tenants.default-id:default}")
+    private String tenantsDefaultId;
+
+    @Value("${mpesa.tenants.file:}")
+    private String tenantsFile;
+
+    @Value("${mpesa.tenants.reload-seconds:30}")
+    private long tenantsReloadSeconds;
+
+    @Value("${mpesa.tenants.rate-per-second:0}")
+    private double tenantsRatePerSecond;
+
+    @Value("${mpesa.tenants.burst:20}")
+    private int tenantsBurst;
+
+    @Value("${mpesa.tenants.weight:1}")
+    private int tenantsWeight;
+
+    /**
+     * Outbound push scheduling (weighted fair queuing per tenant, interactive and batch lanes)
+     * - enabled: false sends every push straight away, as before
+     * - max-in-flight: pushes dispatched to Safaricom at once across all tenants
+     * - interactive-weight / batch-weight: relative share of /stkpush and /stkpush/bulk pushes
+     * - max-queued-per-tenant: queued pushes per tenant and lane before new ones are refused
+     * - max-wait-millis: a push not dispatched within this is failed instead (0 = no limit)
+     */
+    @Value("${mpesa.scheduler.enabled:true}")
+    private boolean schedulerEnabled;
+
+    @Value("${mpesa.scheduler.max-in-flight:128}")
+    private int schedulerMaxInFlight;
+
+    @Value("${mpesa.scheduler.interactive-weight:8}")
+    private int schedulerInteractiveWeight;
+
+    @Value("${mpesa.scheduler.batch-weight:1}")
+    private int schedulerBatchWeight;
+
+    @Value("${mpesa.scheduler.max-queued-per-tenant:1000}")
+    private int schedulerMaxQueuedPerTenant;
+
+    @Value("${mpesa.scheduler.max-wait-millis:10000}")
+    private long schedulerMaxWaitMillis;
+
+    /**
+     * How many seconds before token expiry the background refresh runs
+     * Safaricom tokens live ~3600 seconds; refreshing a minute early means
+     * request threads practically never wait for /oauth/v1/generate
+     */
+    @Value("${mpesa.token.refresh-skew-seconds:60}")
+    private long tokenRefreshSkewSeconds;
+
+    /**
+     * How /api/mpesa/stkpush talks to Safaricom
+     * sync:  the request thread blocks on HttpClient.send (original behaviour)
+     * async: the request is handed off to HttpClient.sendAsync and the servlet
+     *        thread is released immediately; thousands of pushes can be in flight
+     */
+    @Value("${mpesa.execution-mode:sync}")
+    private String executionMode;
+
+    /** True when mpesa.execution-mode=async */
+    public boolean isAsyncExecution() {
+        return "async".equalsIgnoreCase(executionMode);
+    }
+
+    /**
+     * Bulk STK Push (/api/mpesa/stkpush/bulk) settings
+     * - max-concurrency: pushes in flight at once per batch
+     * - rate-per-second / burst: token bucket per shortcode (rate <= 0 disables it)
+     * - tenant-rate-share: at most this fraction of the tenant's own STK Push rate is used by
+     *   bulk runs, so the rest stays available to interactive checkouts
+     * - request-timeout-seconds: how long one bulk HTTP request may stream results
+     */
+    @Value("${mpesa.bulk.max-concurrency:32}")
+    private int bulkMaxConcurrency;
+
+    @Value("${mpesa.bulk.rate-per-second:50}")
+    private double bulkRatePerSecond;
+
+    @Value("${mpesa.bulk.burst:50}")
+    private int bulkBurst;
+
+    @Value("${mpesa.bulk.tenant-rate-share:0.5}")
+    private double bulkTenantRateShare;
+
+    @Value("${mpesa.bulk.request-timeout-seconds:3600}")
+    private long bulkRequestTimeoutSeconds;
+
+    /**
+     * Callback ingestion and journal settings
+     * - callback.queue-capacity: callbacks buffered between the HTTP ack and the journal writer
+     * - journal.dir: where callback journal segments are written (replayed at startup)
+     * - journal.segment-bytes: size at which a new segment file is started
+     * - journal.batch-size: max callbacks written per fsync (group commit)
+     * - journal.retention-seconds: closed segments older than this are deleted (0 = keep all);
+     *   statement reconciliation only sees callbacks still retained, so the default is 35 days
+     */
+    @Value("${mpesa.callback.queue-capacity:10000}")
+    private int callbackQueueCapacity;
+
+    @Value("${mpesa.journal.dir:data/journal}")
+    private String journalDir;
+
+    @Value("${mpesa.journal.segment-bytes:67108864}")
+    private long journalSegmentBytes;
+
+    @Value("${mpesa.journal.batch-size:256}")
+    private int journalBatchSize;
+
+    @Value("${mpesa.journal.retention-seconds:3024000}")
+    private long journalRetentionSeconds;
+
+    /**
+     * Statement reconciliation (POST /api/mpesa/reconciliations)
+     * - statement-dir: where statement CSV exports are dropped; only files in it can be reconciled
+     * - report-dir: reports go to <report-dir>/<job id>/{matched,mismatched,missing}.csv
+     * - chunk-bytes: statement bytes memory-mapped and parsed per task
+     * - parallelism: parsing threads (0 = one per CPU)
+     */
+    @Value("${mpesa.reconciliation.statement-dir:data/statements}")
+    private String reconciliationStatementDir;
+
+    @Value("${mpesa.reconciliation.report-dir:data/reconciliation}")
+    private String reconciliationReportDir;
+
+    @Value("${mpesa.reconciliation.chunk-bytes:8388608}")
+    private long reconciliationChunkBytes;
+
+    @Value("${mpesa.reconciliation.parallelism:0}")
+    private int reconciliationParallelism;
+
+    /**
+     * In-memory transaction index (GET /api/mpesa/transactions/{checkoutRequestId})
+     * - max-entries: hard cap on tracked transactions
+     * - settled-ttl-seconds: how long COMPLETED/FAILED/TIMEOUT entries stay queryable
+     * - pending-timeout-seconds: PENDING entries older than this become TIMEOUT
+     */
+    @Value("${mpesa.transactions.max-entries:2000000}")
+    private int transactionsMaxEntries;
+
+    @Value("${mpesa.transactions.settled-ttl-seconds:86400}")
+    private long transactionsSettledTtlSeconds;
+
+    @Value("${mpesa.transactions.pending-timeout-seconds:3600}")
+    private long transactionsPendingTimeoutSeconds;
+
+    /**
+     * Durable transaction storage behind the in-memory index
+     * - type: none (memory only) or jdbc (write-behind to a JDBC database)
+     * - jdbc-url / username / password: the database; by default an embedded H2 file
+     * - batch-size / flush-interval-millis: a batch is written when either is reached
+     * - buffer-capacity: transactions waiting for the writer before saves block
+     * - offer-timeout-millis: how long a save blocks on a full buffer before it is dropped
+     */
+    @Value("${mpesa.persistence.type:none}")
+    private String persistenceType;
+
+    @Value("${mpesa.persistence.jdbc-url:jdbc:h2:file:./data/db/mpesa}")
+    private String persistenceJdbcUrl;
+
+    @Value("${mpesa.persistence.username:sa}")
+    private String persistenceUsername;
+
+    @Value("${mpesa.persistence.password:}")
+    private String persistencePassword;
+
+    @Value("${mpesa.persistence.batch-size:500}")
+    private int persistenceBatchSize;
+
+    @Value("${mpesa.persistence.flush-interval-millis:200}")
+    private long persistenceFlushIntervalMillis;
+
+    @Value("${mpesa.persistence.buffer-capacity:50000}")
+    private int persistenceBufferCapacity;
+
+    @Value("${mpesa.persistence.offer-timeout-millis:50}")
+    private long persistenceOfferTimeoutMillis;
+
+    /**
+     * Audit log of request-path events (JSON lines written by a background thread)
+     * - dir / max-file-bytes / max-files: numbered files, oldest deleted beyond max-files
+     * - buffer-size: preallocated events between request threads and the writer; when full,
+     *   new events are dropped and counted
+     * - debug-sample-rate: share of DEBUG events (raw payloads, OAuth responses) recorded
+     */
+    @Value("${mpesa.audit.enabled:true}")
+    private boolean auditEnabled;
+
+    @Value("${mpesa.audit.dir:data/audit}")
+    private String auditDir;
+
+    @Value("${mpesa.audit.buffer-size:16384}")
+    private int auditBufferSize;
+
+    @Value("${mpesa.audit.max-file-bytes:67108864}")
+    private long auditMaxFileBytes;
+
+    @Value("${mpesa.audit.max-files:10}")
+    private int auditMaxFiles;
+
+    @Value("${mpesa.audit.debug-sample-rate:0.01}")
+    private double auditDebugSampleRate;
+
+    /**
+     * One-off and recurring STK Pushes (POST /api/mpesa/schedules)
+     * - file: fixed-size record per schedule, reloaded on startup
+     * - tick-millis / wheel-size: timing wheel resolution and buckets per level
+     * - rate-per-second / burst: pace at which due pushes are sent
+     * - default-jitter-seconds: window after the due time a push is spread over
+     */
+    @Value("${mpesa.schedules.file:data/schedules/schedules.dat}")
+    private String schedulesFile;
+
+    @Value("${mpesa.schedules.tick-millis:1000}")
+    private long schedulesTickMillis;
+
+    @Value("${mpesa.schedules.wheel-size:512}")
+    private int schedulesWheelSize;
+
+    @Value("${mpesa.schedules.rate-per-second:20}")
+    private double schedulesRatePerSecond;
+
+    @Value("${mpesa.schedules.burst:20}")
+    private int schedulesBurst;
+
+    @Value("${mpesa.schedules.default-jitter-seconds:900}")
+    private int schedulesDefaultJitterSeconds;
+
+    /**
+     * Waiting for a transaction result (long-poll /await and SSE /events)
+     * - max-wait-seconds: upper bound for the ?timeoutSeconds= a long-poll client may ask for
+     * - sse-timeout-seconds: how long an event stream stays open without a result
+     */
+    @Value("${mpesa.status.max-wait-seconds:120}")
+    private long statusMaxWaitSeconds;
+
+    @Value("${mpesa.status.sse-timeout-seconds:300}")
+    private long statusSseTimeoutSeconds;
+
+    /**
+     * STK Push Query for callbacks that never arrive
+     * - enabled: arm a query for every accepted push
+     * - delay-seconds: wait this long for the callback before querying
+     * - retry-delay-seconds / max-attempts: re-query while Safaricom is still processing
+     * - max-concurrency: query requests in flight at once
+     * - tick-millis / wheel-size: timing wheel resolution and bucket count
+     */
+    @Value("${mpesa.query.enabled:true}")
+    private boolean queryEnabled;
+
+    @Value("${mpesa.query.delay-seconds:90}")
+    private long queryDelaySeconds;
+
+    @Value("${mpesa.query.retry-delay-seconds:60}")
+    private long queryRetryDelaySeconds;
+
+    @Value("${mpesa.query.max-attempts:5}")
+    private int queryMaxAttempts;
+
+    @Value("${mpesa.query.max-concurrency:8}")
+    private int queryMaxConcurrency;
+
+    @Value("${mpesa.query.tick-millis:100}")
+    private long queryTickMillis;
+
+    @Value("${mpesa.query.wheel-size:512}")
+    private int queryWheelSize;
+
+    /**
+     * Duplicate push suppression on /api/mpesa/stkpush
+     * - key-ttl-seconds: how long an Idempotency-Key header is remembered
+     * - fingerprint-window-seconds: without a key, phone+amount+reference duplicates
+     *   within this window are suppressed
+     * - max-entries: cache bound
+     */
+    @Value("${mpesa.idempotency.enabled:true}")
+    private boolean idempotencyEnabled;
+
+    @Value("${mpesa.idempotency.key-ttl-seconds:86400}")
+    private long idempotencyKeyTtlSeconds;
+
+    @Value("${mpesa.idempotency.fingerprint-window-seconds:120}")
+    private long idempotencyFingerprintWindowSeconds;
+
+    @Value("${mpesa.idempotency.max-entries:100000}")
+    private int idempotencyMaxEntries;
+
+    /**
+     * Adaptive concurrency limit in front of Safaricom (OAuth and STK Push, each separately)
+     * - initial / min / max: the limit starts at initial and moves between min and max
+     *   based on observed upstream latency; calls over the limit fail fast
+     * - rtt-tolerance: how much slower than the baseline latency may get before the limit shrinks
+     * - backoff-ratio: limit multiplier after a 5xx, 429 or timeout
+     */
+    @Value("${mpesa.upstream.limit.initial:64}")
+    private int upstreamLimitInitial;
+
+    @Value("${mpesa.upstream.limit.min:4}")
+    private int upstreamLimitMin;
+
+    @Value("${mpesa.upstream.limit.max:512}")
+    private int upstreamLimitMax;
+
+    @Value("${mpesa.upstream.limit.rtt-tolerance:2.0}")
+    private double upstreamLimitRttTolerance;
+
+    @Value("${mpesa.upstream.limit.backoff-ratio:0.9}")
+    private double upstreamLimitBackoffRatio;
+
+    /**
+     * Circuit breaker in front of Safaricom
+     * - window-size / minimum-calls: the failure rate is taken over the last window-size
+     *   calls, once at least minimum-calls have been made
+     * - failure-rate-threshold: percentage of failed calls that opens the circuit
+     * - open-seconds: how long calls fail fast before trial calls are let through
+     * - half-open-calls: trial calls that must all succeed to close the circuit again
+     */
+    @Value("${mpesa.upstream.breaker.window-size:50}")
+    private int upstreamBreakerWindowSize;
+
+    @Value("${mpesa.upstream.breaker.minimum-calls:20}")
+    private int upstreamBreakerMinimumCalls;
+
+    @Value("${mpesa.upstream.breaker.failure-rate-threshold:50}")
+    private double upstreamBreakerFailureRateThreshold;
+
+    @Value("${mpesa.upstream.breaker.open-seconds:30}")
+    private long upstreamBreakerOpenSeconds;
+
+    @Value("${mpesa.upstream.breaker.half-open-calls:5}")
+    private int upstreamBreakerHalfOpenCalls;
+
+    /**
+     * Timeouts for HTTP calls to Safaricom (0 disables)
+     * - connect-timeout-millis: TCP + TLS connection setup
+     * - request-timeout-millis: one request, from sending until the response headers arrive
+     */
+    @Value("${mpesa.http.connect-timeout-millis:3000}")
+    private long httpConnectTimeoutMillis;
+
+    @Value("${mpesa.http.request-timeout-millis:10000}")
+    private long httpRequestTimeoutMillis;
+
+    /**
+     * Daraja HttpClient (one per tenant, sharing one executor)
+     * - version: HTTP_2 (falls back to HTTP/1.1 when the server doesn't offer h2) or HTTP_1_1
+     * - executor-threads: threads completing async requests (0 = a virtual thread per task)
+     */
+    @Value("${mpesa.http.version:HTTP_2}")
+    private String httpVersion;
+
+    @Value("${mpesa.http.executor-threads:0}")
+    private int httpExecutorThreads;
+
+    /**
+     * Connection warm-up and keep-alive
+     * - warmup.enabled: fetch each tenant's token at startup, waiting at most warmup.timeout-millis
+     * - warmup.connections: extra TLS connections opened per tenant after the token fetch, with
+     *   HTTP_1_1 only (HTTP/2 multiplexes every request onto the single connection the token opened)
+     * - keep-alive-probe-seconds: a tenant with no Daraja call during this interval gets a
+     *   HEAD probe-path so its pooled connection stays open (0 disables). Keep it below the
+     *   HttpClient idle timeout (jdk.httpclient.keepalive.timeout, 30 s by default).
+     */
+    @Value("${mpesa.http.warmup.enabled:true}")
+    private boolean httpWarmupEnabled;
+
+    @Value("${mpesa.http.warmup.connections:2}")
+    private int httpWarmupConnections;
+
+    @Value("${mpesa.http.warmup.timeout-millis:5000}")
+    private long httpWarmupTimeoutMillis;
+
+    @Value("${mpesa.http.keep-alive-probe-seconds:20}")
+    private long httpKeepAliveProbeSeconds;
+
+    @Value("${mpesa.http.probe-path:/}")
+    private String httpProbePath;
+
+    /**
+     * Retries of transient Safaricom failures (5xx, 429, connection errors)
+     * - max-attempts: attempts per call including the first (1 disables retries)
+     * - base-delay-millis / max-delay-millis: bounds of the decorrelated-jitter delay
+     * - deadline-millis: total time budget for all attempts of one call (0 = no deadline)
+     */
+    @Value("${mpesa.retry.max-attempts:3}")
+    private int retryMaxAttempts;
+
+    @Value("${mpesa.retry.base-delay-millis:100}")
+    private long retryBaseDelayMillis;
+
+    @Value("${mpesa.retry.max-delay-millis:2000}")
+    private long retryMaxDelayMillis;
+
+    @Value("${mpesa.retry.deadline-millis:15000}")
+    private long retryDeadlineMillis;
 }
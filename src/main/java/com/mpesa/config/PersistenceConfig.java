@@ -0,0 +1,35 @@
+package com.mpesa.config;
+
+import com.mpesa.service.AuditLog;
+import com.mpesa.service.JdbcTransactionRepository;
+import com.mpesa.service.TransactionRepository;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * Persistence Configuration
+ *
+ * Picks the TransactionRepository the TransactionStore writes through to,
+ * based on mpesa.persistence.type:
+ * - none: transactions only live in memory (the default)
+ * - jdbc: write-behind batches to the database at mpesa.persistence.jdbc-url
+ *
+ * Spring calls close() on shutdown, which writes out whatever is still buffered.
+ */
+@Configuration
+public class PersistenceConfig {
+
+    @Bean
+    public TransactionRepository transactionRepository(MpesaConfig config, AuditLog auditLog) throws SQLException {
+        String type = config.getPersistenceType().trim().toLowerCase(Locale.ROOT);
+        return switch (type) {
+            case "none" -> TransactionRepository.NONE;
+            case "jdbc" -> new JdbcTransactionRepository(config, auditLog);
+            default -> throw new IllegalArgumentException(
+                    "Unknown mpesa.persistence.type '" + type + "' (expected none or jdbc)");
+        };
+    }
+}
@@ -0,0 +1,27 @@
+package com.mpesa.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Startup Configuration
+ *
+ * The fast-startup profile (application-fast-startup.properties) turns on
+ * spring.main.lazy-initialization, so beans are only created when first used. That is
+ * meant for the non-critical ones: actuator endpoints, the Prometheus scrape support and
+ * the rest of Spring Boot's infrastructure that no push needs.
+ *
+ * This application's own beans stay eager: they are on the push and callback paths, or
+ * run work that has to start with the application (journal replay, status queries,
+ * scheduled pushes, connection warm-up). Creating them on the first request would move
+ * their startup cost onto the first payment.
+ */
+@Configuration
+public class StartupConfig {
+
+    @Bean
+    static LazyInitializationExcludeFilter eagerMpesaBeans() {
+        return (beanName, beanDefinition, beanType) -> beanType != null && beanType.getName().startsWith("com.mpesa.");
+    }
+}
@@ -1,9 +1,40 @@
 package com.mpesa.controller;
 
+import com.mpesa.config.MpesaConfig;
 import com.mpesa.dto.Mpesamapping;
+import com.mpesa.dto.ReconciliationView;
+import com.mpesa.dto.ScheduledPushRequest;
+import com.mpesa.dto.ScheduledPushView;
+import com.mpesa.dto.TransactionView;
+import com.mpesa.service.AuditLog;
+import com.mpesa.service.BulkStkPushService;
+import com.mpesa.service.CallbackIngestor;
+import com.mpesa.service.IdempotencyCache;
+import com.mpesa.service.IdempotencyKeyReusedException;
 import com.mpesa.service.MpesaService;
+import com.mpesa.service.PushScheduler;
+import com.mpesa.service.ScheduledPushService;
+import com.mpesa.service.StatementReconciler;
+import com.mpesa.service.Tenant;
+import com.mpesa.service.TenantRegistry;
+import com.mpesa.service.TransactionStatusNotifier;
+import com.mpesa.service.TransactionStore;
+import com.mpesa.service.UnknownTenantException;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * M-Pesa REST Controller
@@ -26,8 +57,24 @@ import org.springframework.web.bind.annotation.*;
 @RequiredArgsConstructor
 public class MpesaController {
 
+    private static final String CALLBACK_ACCEPTED = "{\"ResultCode\":0,\"ResultDesc\":\"Accepted\"}";
+    private static final String CALLBACK_REJECTED = "{\"ResultCode\":1,\"ResultDesc\":\"Busy, retry later\"}";
+
+    /** Header naming the tenant (paybill) a push is for; absent means the default tenant */
+    private static final String TENANT_HEADER = "X-Tenant-Id";
+
     // Dependency injection - Spring automatically injects MpesaService instance
     private final MpesaService mpesaService;
+    private final BulkStkPushService bulkStkPushService;
+    private final CallbackIngestor callbackIngestor;
+    private final TransactionStore transactionStore;
+    private final TransactionStatusNotifier statusNotifier;
+    private final IdempotencyCache idempotencyCache;
+    private final TenantRegistry tenants;
+    private final StatementReconciler reconciler;
+    private final ScheduledPushService scheduledPushes;
+    private final MpesaConfig config;
+    private final AuditLog auditLog;
 
     /**
      * STK Push Endpoint - Initiate Mobile Money Payment Request
@@ -40,9 +87,19 @@ public class MpesaController {
      * Request Body Example:
      * {
      *   "phone": "254796022656",
-     *   "amount": 100
+     *   "amount": 100,
+     *   "reference": "INV-1042"     (optional)
      * }
      *
+     * Optional header "X-Tenant-Id": the tenant (paybill) to charge, as configured in
+     * mpesa.tenants.file; without it the default tenant (mpesa.shortcode) is used.
+     * An unknown tenant id is answered with 404.
+     *
+     * Optional header "Idempotency-Key": retries with the same key within its TTL get the
+     * original response instead of a second prompt on the customer's phone. Without it,
+     * identical phone + amount + reference pushes within a short window are suppressed.
+     * A key reused with a different phone, amount or reference is answered with 422.
+     *
      * Success Response Example:
      * {
      *   "MerchantRequestID": "29115-34620561-1",
@@ -51,19 +108,244 @@ public class MpesaController {
      *   "ResponseDescription": "Success. Request accepted for processing"
      * }
      *
+     * The push goes through the interactive lane of the PushScheduler, so it overtakes
+     * queued bulk pushes. The Tomcat thread is released right away and Spring MVC writes
+     * the response when the push completes. Execution mode (mpesa.execution-mode):
+     * - sync:  a scheduler virtual thread waits for Safaricom (blocking HttpClient.send);
+     *          with mpesa.scheduler.enabled=false the Tomcat thread waits instead
+     * - async: the non-blocking HttpClient call completes the response
+     *
      * @param mapping Contains phone number and amount from request body
+     * @param idempotencyKey Optional client-chosen key identifying this payment attempt
+     * @param tenantId Optional tenant id
      * @return JSON response from Safaricom M-Pesa API
-     * @throws Exception If there are issues with API communication
      */
     @PostMapping("/stkpush")
-    public String initiateStkPush(@RequestBody Mpesamapping mapping) throws Exception {
+    public CompletableFuture<String> initiateStkPush(
+            @RequestBody Mpesamapping mapping,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestHeader(value = TENANT_HEADER, required = false) String tenantId) {
+        Tenant tenant = tenants.resolve(tenantId);
+        return idempotencyCache.execute(tenant.getId(), idempotencyKey, mapping,
+                () -> dispatchStkPush(tenant, mapping));
+    }
+
+    private CompletableFuture<String> dispatchStkPush(Tenant tenant, Mpesamapping mapping) {
         // Delegate the STK Push logic to the service layer
         // The service handles:
-        // 1. Getting access token from Safaricom
-        // 2. Building STK Push request
-        // 3. Sending request to Safaricom API
-        // 4. Returning the response
-        return mpesaService.initiateStkPush(mapping);
+        // 1. Queueing the push in the interactive lane of the push scheduler
+        // 2. Getting access token from Safaricom
+        // 3. Building STK Push request
+        // 4. Sending request to Safaricom API
+        // 5. Returning the response
+        return mpesaService.submitStkPush(tenant, PushScheduler.Lane.INTERACTIVE, mapping);
+    }
+
+    /**
+     * Bulk STK Push Endpoint - Send Payment Prompts to Many Customers
+     *
+     * Accepts a JSON array or NDJSON stream of the same objects /stkpush takes and
+     * streams back one NDJSON line per item as each push completes.
+     *
+     * URL: POST http://localhost:8090/api/mpesa/stkpush/bulk
+     * Content-Type: application/json or application/x-ndjson
+     *
+     * Request Body Example (NDJSON):
+     * {"phone": "254796022656", "amount": 100}
+     * {"phone": "254712345678", "amount": 250}
+     *
+     * Response Lines Example:
+     * {"index":1,"phone":"254712345678","response":{"ResponseCode":"0",...}}
+     * {"index":0,"phone":"254796022656","response":{"ResponseCode":"0",...}}
+     *
+     * Takes the same optional "X-Tenant-Id" header as /stkpush. Items go through the batch
+     * lane of the PushScheduler, behind interactive pushes.
+     *
+     * @param request Raw servlet request, read incrementally so large batches never sit in memory
+     * @param tenantId Optional tenant id
+     * @return Emitter that streams result lines until every item has been processed
+     */
+    @PostMapping(value = "/stkpush/bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseBodyEmitter bulkStkPush(HttpServletRequest request,
+            @RequestHeader(value = TENANT_HEADER, required = false) String tenantId) throws IOException {
+        Tenant tenant = tenants.resolve(tenantId);
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(
+                TimeUnit.SECONDS.toMillis(config.getBulkRequestTimeoutSeconds()));
+
+        bulkStkPushService.submit(tenant, request.getInputStream(),
+                line -> emitter.send(line, MediaType.APPLICATION_NDJSON),
+                error -> {
+                    if (error == null) {
+                        emitter.complete();
+                    } else {
+                        emitter.completeWithError(error);
+                    }
+                });
+        return emitter;
+    }
+
+    /**
+     * Transaction Lookup Endpoint - Current State of an STK Push
+     *
+     * Answers from the in-memory TransactionStore, no database or Safaricom call involved.
+     *
+     * URL: GET http://localhost:8090/api/mpesa/transactions/ws_CO_191220191020363925
+     *
+     * @param checkoutRequestId CheckoutRequestID returned by /stkpush
+     * @return 200 with the transaction, or 404 if it is unknown or has been evicted
+     */
+    @GetMapping("/transactions/{checkoutRequestId}")
+    public ResponseEntity<TransactionView> getTransaction(@PathVariable String checkoutRequestId) {
+        TransactionView transaction = transactionStore.find(checkoutRequestId);
+        if (transaction == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(transaction);
+    }
+
+    /**
+     * Long-Poll Endpoint - Wait for the Result of an STK Push
+     *
+     * Replaces client-side polling: the request is parked until the callback for this
+     * CheckoutRequestID arrives (or the timeout passes), then answered once.
+     *
+     * URL: GET http://localhost:8090/api/mpesa/transactions/ws_CO_191220191020363925/await?timeoutSeconds=30
+     *
+     * @param checkoutRequestId CheckoutRequestID returned by /stkpush
+     * @param timeoutSeconds How long to wait (capped by mpesa.status.max-wait-seconds)
+     * @return The settled transaction; on timeout its current state, or 404 if unknown
+     */
+    @GetMapping("/transactions/{checkoutRequestId}/await")
+    public DeferredResult<ResponseEntity<TransactionView>> awaitTransaction(
+            @PathVariable String checkoutRequestId,
+            @RequestParam(defaultValue = "30") long timeoutSeconds) {
+        long waitSeconds = Math.max(1, Math.min(timeoutSeconds, config.getStatusMaxWaitSeconds()));
+        return statusNotifier.awaitSettlement(checkoutRequestId, TimeUnit.SECONDS.toMillis(waitSeconds));
+    }
+
+    /**
+     * Server-Sent Events Endpoint - Stream the Result of an STK Push
+     *
+     * Sends a "status" event with the current state (while PENDING) and a final
+     * "status" event when the transaction settles, then closes the stream.
+     *
+     * URL: GET http://localhost:8090/api/mpesa/transactions/ws_CO_191220191020363925/events
+     *
+     * @param checkoutRequestId CheckoutRequestID returned by /stkpush
+     * @return Event stream of TransactionView updates
+     */
+    @GetMapping(value = "/transactions/{checkoutRequestId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamTransaction(@PathVariable String checkoutRequestId) {
+        return statusNotifier.subscribe(checkoutRequestId,
+                TimeUnit.SECONDS.toMillis(config.getStatusSseTimeoutSeconds()));
+    }
+
+    /**
+     * Reconciliation Endpoint - Match an M-Pesa Statement Against Received Callbacks
+     *
+     * Starts a background job over a statement CSV already placed in
+     * mpesa.reconciliation.statement-dir; poll GET /reconciliations/{id} for progress.
+     *
+     * URL: POST http://localhost:8090/api/mpesa/reconciliations?statement=ORG_600100_Statement.csv
+     *
+     * @param statement File name of the statement export
+     * @return 202 with the job, 400 for a name outside the statement directory, 404 if there is no such file
+     */
+    @PostMapping("/reconciliations")
+    public ResponseEntity<ReconciliationView> startReconciliation(@RequestParam String statement) throws IOException {
+        try {
+            return ResponseEntity.accepted().body(reconciler.start(statement));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (NoSuchFileException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Reconciliation Status Endpoint - Progress and Counts of a Reconciliation Job
+     *
+     * URL: GET http://localhost:8090/api/mpesa/reconciliations/3f0c9a52-8e0b-4d55-a7a4-2d1c3b1f6e21
+     *
+     * @param id Job id returned by POST /reconciliations
+     * @return 200 with the job, or 404 if it is unknown
+     */
+    @GetMapping("/reconciliations/{id}")
+    public ResponseEntity<ReconciliationView> getReconciliation(@PathVariable String id) {
+        ReconciliationView view = reconciler.find(id);
+        if (view == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(view);
+    }
+
+    /**
+     * Schedule Endpoint - One-off or Recurring STK Push
+     *
+     * The schedule is stored and the pushes are sent by the service when due, spread over
+     * jitterSeconds and paced by mpesa.schedules.rate-per-second, instead of an external
+     * scheduler calling /stkpush for every customer at once.
+     *
+     * URL: POST http://localhost:8090/api/mpesa/schedules
+     *
+     * Request Body Example (monthly, 12 instalments):
+     * {
+     *   "phone": "254796022656",
+     *   "amount": 1500,
+     *   "reference": "LOAN-1042",
+     *   "startAt": 1756684800000,
+     *   "intervalSeconds": 2592000,
+     *   "count": 12
+     * }
+     *
+     * Optional header "X-Tenant-Id" selects the tenant, as for /stkpush.
+     *
+     * @param request The schedule
+     * @param tenantId Optional tenant id
+     * @return 201 with the schedule, or 400 with an error message for an invalid request
+     */
+    @PostMapping("/schedules")
+    public ResponseEntity<?> createSchedule(
+            @RequestBody ScheduledPushRequest request,
+            @RequestHeader(value = TENANT_HEADER, required = false) String tenantId) throws IOException {
+        Tenant tenant = tenants.resolve(tenantId);
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(scheduledPushes.create(tenant, request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Schedule Status Endpoint - Next Due Time and Remaining Runs
+     *
+     * URL: GET http://localhost:8090/api/mpesa/schedules/1042
+     *
+     * @param id Schedule id returned by POST /schedules
+     * @return 200 with the schedule, or 404 if it is unknown, deleted or finished
+     */
+    @GetMapping("/schedules/{id}")
+    public ResponseEntity<ScheduledPushView> getSchedule(@PathVariable long id) {
+        ScheduledPushView view = scheduledPushes.find(id);
+        if (view == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(view);
+    }
+
+    /**
+     * Delete Schedule Endpoint - Stops all further pushes of a schedule
+     *
+     * URL: DELETE http://localhost:8090/api/mpesa/schedules/1042
+     *
+     * @param id Schedule id returned by POST /schedules
+     * @return 204, or 404 if it is unknown, already deleted or finished
+     */
+    @DeleteMapping("/schedules/{id}")
+    public ResponseEntity<Void> deleteSchedule(@PathVariable long id) throws IOException {
+        return scheduledPushes.cancel(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
     }
 
     /**
@@ -74,23 +356,44 @@ public class MpesaController {
      *
      * URL: POST http://localhost:8090/api/mpesa/callback
      *
-     * This endpoint should:
-     * - Parse the callback payload
-     * - Update transaction status in database
-     * - Notify the customer about payment status
-     * - Log transaction details for reconciliation
+     * The payload is only queued here; parsing, journaling and state updates happen
+     * on the CallbackIngestor writer thread, so Safaricom gets its ack immediately.
+     * If the queue is full we answer 503 and let Safaricom retry later.
      *
      * @param callback JSON payload from Safaricom containing transaction results
+     * @return Acknowledgement in the format Safaricom expects
+     */
+    @PostMapping(value = "/callback", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> callback(@RequestBody String callback) {
+        // Every payload is in the callback journal; the audit log keeps a sample for debugging
+        auditLog.debug("callback.received", null, null, 0, callback);
+
+        if (!callbackIngestor.submit(callback)) {
+            auditLog.warn("callback.rejected", null, null, HttpStatus.SERVICE_UNAVAILABLE.value(), "queue full");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(CALLBACK_REJECTED);
+        }
+        return ResponseEntity.ok(CALLBACK_ACCEPTED);
+    }
+
+    /**
+     * A request named a tenant that isn't configured: 404 with the same error fields
+     * as other failures, nothing was sent to Safaricom.
+     */
+    @ExceptionHandler(UnknownTenantException.class)
+    public ResponseEntity<Map<String, String>> unknownTenant(UnknownTenantException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Map.of("error", e.getMessage(), "type", e.getClass().getSimpleName()));
+    }
+
+    /**
+     * An Idempotency-Key came back with a different request body: 422, since replaying the
+     * first push's response would confirm a payment the client didn't ask for.
      */
-    @PostMapping("/callback")
-    public void callback(@RequestBody String callback) {
-        // Log the callback for debugging and audit purposes
-        System.out.println("Callback Response: " + callback);
-
-        // TODO: In production, you should:
-        // 1. Parse the callback JSON to extract transaction details
-        // 2. Update transaction status in your database
-        // 3. Send confirmation/failure notifications to customers
-        // 4. Implement proper error handling and logging
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<Map<String, String>> idempotencyKeyReused(IdempotencyKeyReusedException e) {
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Map.of("error", e.getMessage(), "type", e.getClass().getSimpleName()));
     }
 }
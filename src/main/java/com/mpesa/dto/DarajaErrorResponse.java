@@ -0,0 +1,24 @@
+package com.mpesa.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Error body Safaricom returns with 4xx/5xx responses
+ *
+ * Example (HTTP 400):
+ * {
+ *   "requestId": "11728-2929992-1",
+ *   "errorCode": "400.002.02",
+ *   "errorMessage": "Bad Request - Invalid Amount"
+ * }
+ *
+ * Example (HTTP 500):
+ * {
+ *   "requestId": "29584-65423389-1",
+ *   "errorCode": "500.001.1001",
+ *   "errorMessage": "Unable to lock subscriber, a transaction is already in process for the current subscriber"
+ * }
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record DarajaErrorResponse(String requestId, String errorCode, String errorMessage) {
+}
@@ -9,6 +9,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  * It converts incoming JSON from clients into Java objects your code can work with.
  *
  * Simple but critical: Only 2 fields needed - phone number and amount!
+ * An optional account reference can be sent as well.
  *
  * Example client request:
  * POST /api/mpesa/stkpush
@@ -45,6 +46,18 @@ public class Mpesamapping {
     @JsonProperty("amount") // Maps JSON field "amount" to this Java property
     private int amount;
 
+    /**
+     * Optional account reference shown on the customer's M-Pesa statement
+     *
+     * - Max 12 characters (Safaricom limit)
+     * - Defaults to "TestPayment" when not provided
+     * - Part of the duplicate-push fingerprint together with phone and amount
+     *
+     * Example: "INV-1042"
+     */
+    @JsonProperty("reference") // Maps JSON field "reference" to this Java property
+    private String reference;
+
     // Default constructor - required for JSON deserialization (Jackson needs this)
     public Mpesamapping() {}
 
@@ -68,4 +81,10 @@ public class Mpesamapping {
 
     /** Set payment amount */
     public void setAmount(int amount) { this.amount = amount; }
+
+    /** Get account reference (may be null) */
+    public String getReference() { return reference; }
+
+    /** Set account reference */
+    public void setReference(String reference) { this.reference = reference; }
 }
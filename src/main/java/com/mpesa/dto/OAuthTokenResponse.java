@@ -0,0 +1,28 @@
+package com.mpesa.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Response DTO for Safaricom's OAuth endpoint (/oauth/v1/generate)
+ *
+ * Example:
+ * {
+ *   "access_token": "c9SQxWWhmdVRlyh0zh8gZDTkubVF",
+ *   "expires_in": "3599"
+ * }
+ *
+ * Note: Daraja sends expires_in as a string; Jackson coerces it to a number.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record OAuthTokenResponse(
+        @JsonProperty("access_token") String accessToken,
+        @JsonProperty("expires_in") Long expiresIn) {
+
+    /** Lifetime Safaricom documents for its tokens, used if expires_in is missing */
+    public static final long DEFAULT_EXPIRES_IN_SECONDS = 3599;
+
+    public long expiresInOrDefault() {
+        return expiresIn != null ? expiresIn : DEFAULT_EXPIRES_IN_SECONDS;
+    }
+}
@@ -0,0 +1,42 @@
+package com.mpesa.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Response DTO for the /api/mpesa/reconciliations endpoints
+ *
+ * Example:
+ * {
+ *   "id": "3f0c9a52-8e0b-4d55-a7a4-2d1c3b1f6e21",
+ *   "status": "COMPLETED",
+ *   "statement": "ORG_600100_Statement_2025-07-29.csv",
+ *   "reportDir": "data/reconciliation/3f0c9a52-8e0b-4d55-a7a4-2d1c3b1f6e21",
+ *   "rows": 1843211,
+ *   "skipped": 12004,
+ *   "matched": 1830950,
+ *   "mismatched": 41,
+ *   "missingFromJournal": 216,
+ *   "missingFromStatement": 3,
+ *   "startedAt": 1753875000000,
+ *   "finishedAt": 1753875009000
+ * }
+ *
+ * Counts grow while the job is RUNNING. finishedAt is omitted until the job ends,
+ * error is only present for FAILED jobs.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ReconciliationView(
+        String id,
+        String status,
+        String statement,
+        String reportDir,
+        long rows,
+        long skipped,
+        long matched,
+        long mismatched,
+        long missingFromJournal,
+        long missingFromStatement,
+        Long startedAt,
+        Long finishedAt,
+        String error) {
+}
@@ -0,0 +1,32 @@
+package com.mpesa.dto;
+
+/**
+ * Request DTO for POST /api/mpesa/schedules - a one-off or recurring STK Push
+ *
+ * Example (monthly instalment, 12 payments, spread over the first hour of the due time):
+ * {
+ *   "phone": "254796022656",
+ *   "amount": 1500,
+ *   "reference": "LOAN-1042",
+ *   "startAt": 1756684800000,
+ *   "intervalSeconds": 2592000,
+ *   "count": 12,
+ *   "jitterSeconds": 3600
+ * }
+ *
+ * Only phone and amount are required:
+ * - startAt: epoch millis of the first push (default: now)
+ * - intervalSeconds: time between pushes; 0 or absent for a one-off push
+ * - count: number of pushes (default: 1 for a one-off, unlimited for a recurring schedule)
+ * - jitterSeconds: each push is sent at a random point up to this long after its due time
+ *   (default mpesa.schedules.default-jitter-seconds, always less than the interval)
+ */
+public record ScheduledPushRequest(
+        String phone,
+        int amount,
+        String reference,
+        Long startAt,
+        Long intervalSeconds,
+        Integer count,
+        Integer jitterSeconds) {
+}
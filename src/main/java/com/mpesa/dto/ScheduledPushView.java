@@ -0,0 +1,35 @@
+package com.mpesa.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Response DTO for the /api/mpesa/schedules endpoints
+ *
+ * Example:
+ * {
+ *   "id": 1042,
+ *   "tenant": "default",
+ *   "phone": "254796022656",
+ *   "amount": 1500,
+ *   "reference": "LOAN-1042",
+ *   "nextRunAt": 1756684800000,
+ *   "intervalSeconds": 2592000,
+ *   "remainingRuns": 12,
+ *   "jitterSeconds": 3600
+ * }
+ *
+ * remainingRuns is omitted for schedules that repeat until they are deleted.
+ * nextRunAt is the due time; the push itself goes out up to jitterSeconds later.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ScheduledPushView(
+        long id,
+        String tenant,
+        String phone,
+        int amount,
+        String reference,
+        long nextRunAt,
+        long intervalSeconds,
+        Integer remainingRuns,
+        int jitterSeconds) {
+}
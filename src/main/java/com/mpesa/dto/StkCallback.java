@@ -0,0 +1,94 @@
+package com.mpesa.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.math.BigDecimal;
+
+/**
+ * Parsed STK Push Callback - The Final Result of a Payment Prompt
+ *
+ * Safaricom POSTs this structure to your callback URL once the customer has
+ * entered their PIN, cancelled, or the prompt timed out:
+ *
+ * {
+ *   "Body": {
+ *     "stkCallback": {
+ *       "MerchantRequestID": "29115-34620561-1",
+ *       "CheckoutRequestID": "ws_CO_191220191020363925",
+ *       "ResultCode": 0,
+ *       "ResultDesc": "The service request is processed successfully.",
+ *       "CallbackMetadata": {
+ *         "Item": [
+ *           { "Name": "Amount", "Value": 1.00 },
+ *           { "Name": "MpesaReceiptNumber", "Value": "NLJ7RT61SV" },
+ *           { "Name": "TransactionDate", "Value": 20191219102115 },
+ *           { "Name": "PhoneNumber", "Value": 254708374149 }
+ *         ]
+ *       }
+ *     }
+ *   }
+ * }
+ *
+ * CallbackMetadata is only present for successful payments (ResultCode 0), so the
+ * amount, receipt, date and phone fields are null for failures.
+ *
+ * @param receivedAt Epoch millis when our callback endpoint received the payload
+ */
+public record StkCallback(
+        String merchantRequestId,
+        String checkoutRequestId,
+        int resultCode,
+        String resultDesc,
+        BigDecimal amount,
+        String mpesaReceiptNumber,
+        String transactionDate,
+        String phoneNumber,
+        long receivedAt) {
+
+    /** ResultCode for a completed payment */
+    public static final int RESULT_SUCCESS = 0;
+
+    /** True when the customer paid */
+    @JsonIgnore
+    public boolean isSuccess() {
+        return resultCode == RESULT_SUCCESS;
+    }
+
+    /**
+     * Extracts the callback fields from Safaricom's raw payload.
+     *
+     * @throws IllegalArgumentException if the payload has no Body.stkCallback.CheckoutRequestID
+     */
+    public static StkCallback fromPayload(JsonNode root, long receivedAt) {
+        JsonNode callback = root.path("Body").path("stkCallback");
+        if (!callback.hasNonNull("CheckoutRequestID")) {
+            throw new IllegalArgumentException("Not an STK callback: missing Body.stkCallback.CheckoutRequestID");
+        }
+
+        BigDecimal amount = null;
+        String receipt = null;
+        String transactionDate = null;
+        String phone = null;
+        for (JsonNode item : callback.path("CallbackMetadata").path("Item")) {
+            JsonNode value = item.get("Value");
+            if (value == null || value.isNull()) {
+                continue;
+            }
+            switch (item.path("Name").asText()) {
+                case "Amount" -> amount = value.decimalValue();
+                case "MpesaReceiptNumber" -> receipt = value.asText();
+                case "TransactionDate" -> transactionDate = value.asText();
+                case "PhoneNumber" -> phone = value.asText();
+                default -> { }
+            }
+        }
+
+        return new StkCallback(
+                callback.path("MerchantRequestID").asText(null),
+                callback.get("CheckoutRequestID").asText(),
+                callback.path("ResultCode").asInt(-1),
+                callback.path("ResultDesc").asText(null),
+                amount, receipt, transactionDate, phone, receivedAt);
+    }
+}
@@ -1,7 +1,9 @@
 package com.mpesa.dto;
 
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
 /**
  * STK Push Request DTO for Safaricom Daraja API
@@ -11,8 +13,18 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  *
  * Critical Success Factor: Field name casing MUST match Safaricom's documentation exactly,
  * otherwise you'll get "Invalid BusinessShortCode" or similar errors.
+ *
+ * Jackson only looks at the annotated fields: the getters (getBusinessShortCode -> "businessShortCode")
+ * would otherwise add a second, lower-camel-case copy of every field to the JSON.
+ * The property order is pinned because StkPushRequestEncoder writes the same bytes by hand.
  */
 @JsonInclude(JsonInclude.Include.NON_NULL) // Only include non-null fields in JSON output
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        setterVisibility = JsonAutoDetect.Visibility.NONE)
+@JsonPropertyOrder({"BusinessShortCode", "Password", "Timestamp", "TransactionType", "Amount", "PartyA",
+        "PartyB", "PhoneNumber", "CallBackURL", "AccountReference", "TransactionDesc"})
 public class StkPushRequest {
 
     /** Business Short Code - Your M-Pesa paybill/till number (e.g., "174379" for sandbox) */
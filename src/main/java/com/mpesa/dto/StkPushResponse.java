@@ -0,0 +1,38 @@
+package com.mpesa.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Response DTO for a successful STK Push call (HTTP 200 from /mpesa/stkpush/v1/processrequest)
+ *
+ * Example:
+ * {
+ *   "MerchantRequestID": "29115-34620561-1",
+ *   "CheckoutRequestID": "ws_CO_191220191020363925",
+ *   "ResponseCode": "0",
+ *   "ResponseDescription": "Success. Request accepted for processing",
+ *   "CustomerMessage": "Success. Request accepted for processing"
+ * }
+ *
+ * ResponseCode "0" means the prompt was sent to the customer's phone; the payment
+ * result arrives later on the callback URL.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record StkPushResponse(
+        @JsonProperty("MerchantRequestID") String merchantRequestId,
+        @JsonProperty("CheckoutRequestID") String checkoutRequestId,
+        @JsonProperty("ResponseCode") String responseCode,
+        @JsonProperty("ResponseDescription") String responseDescription,
+        @JsonProperty("CustomerMessage") String customerMessage) {
+
+    /** ResponseCode for a push Safaricom accepted */
+    public static final String RESPONSE_ACCEPTED = "0";
+
+    /** True when Safaricom accepted the push and a CheckoutRequestID was issued */
+    @JsonIgnore
+    public boolean isAccepted() {
+        return RESPONSE_ACCEPTED.equals(responseCode) && checkoutRequestId != null;
+    }
+}
@@ -0,0 +1,38 @@
+package com.mpesa.dto;
+
+/**
+ * Lifecycle of an STK Push transaction
+ *
+ * PENDING   - Safaricom accepted the push, waiting for the customer / callback
+ * COMPLETED - Customer paid (ResultCode 0)
+ * FAILED    - Customer cancelled, insufficient funds, wrong PIN, etc.
+ * TIMEOUT   - The prompt expired or the callback never arrived
+ */
+public enum TransactionStatus {
+    PENDING,
+    COMPLETED,
+    FAILED,
+    TIMEOUT;
+
+    /** ResultCode 1037: "DS timeout user cannot be reached" */
+    private static final int RESULT_USER_UNREACHABLE = 1037;
+
+    /** ResultCode 1019: "Transaction has expired" */
+    private static final int RESULT_EXPIRED = 1019;
+
+    /** Maps a callback ResultCode to the final status */
+    public static TransactionStatus fromResultCode(int resultCode) {
+        if (resultCode == StkCallback.RESULT_SUCCESS) {
+            return COMPLETED;
+        }
+        if (resultCode == RESULT_USER_UNREACHABLE || resultCode == RESULT_EXPIRED) {
+            return TIMEOUT;
+        }
+        return FAILED;
+    }
+
+    /** True once the transaction will not change any more */
+    public boolean isSettled() {
+        return this != PENDING;
+    }
+}
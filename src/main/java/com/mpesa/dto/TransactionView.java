@@ -0,0 +1,34 @@
+package com.mpesa.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Response DTO for GET /api/mpesa/transactions/{checkoutRequestId}
+ *
+ * Example:
+ * {
+ *   "checkoutRequestId": "ws_CO_191220191020363925",
+ *   "merchantRequestId": "29115-34620561-1",
+ *   "status": "COMPLETED",
+ *   "phone": "254708374149",
+ *   "amount": 1,
+ *   "resultCode": 0,
+ *   "mpesaReceiptNumber": "NLJ7RT61SV",
+ *   "createdAt": 1753875000000,
+ *   "settledAt": 1753875021000
+ * }
+ *
+ * resultCode, mpesaReceiptNumber and settledAt are omitted while the transaction is PENDING.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TransactionView(
+        String checkoutRequestId,
+        String merchantRequestId,
+        TransactionStatus status,
+        String phone,
+        Integer amount,
+        Integer resultCode,
+        String mpesaReceiptNumber,
+        Long createdAt,
+        Long settledAt) {
+}
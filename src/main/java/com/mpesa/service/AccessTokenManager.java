@@ -0,0 +1,335 @@
+package com.mpesa.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.OAuthTokenResponse;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OAuth Access Token Manager - Caches Daraja tokens between pushes
+ *
+ * Safaricom tokens are valid for about an hour (expires_in = 3599), so there is no need
+ * to call /oauth/v1/generate before every STK Push. This component keeps the current token
+ * in memory and hands it out until it is close to expiry.
+ *
+ * How it works:
+ * - Cache hit: a valid token is returned straight from memory (no network call)
+ * - Cache miss: the caller joins the single in-flight refresh, so N concurrent callers
+ *   trigger exactly one OAuth request instead of N
+ * - Proactive refresh: after every successful fetch a background refresh is scheduled
+ *   mpesa.token.refresh-skew-seconds before expiry (replacing the one scheduled for the
+ *   previous token), so request threads rarely see a miss
+ *
+ * Each Tenant has its own manager, created by the TenantRegistry, so one paybill's
+ * token (or failing credentials) never affects another's.
+ */
+public class AccessTokenManager {
+
+    /** Tokens this close to expiry are treated as expired so they don't die mid-request */
+    private static final long EXPIRY_MARGIN_MILLIS = 5_000;
+
+    /** Delay before retrying a failed background refresh */
+    private static final long RETRY_DELAY_MILLIS = 10_000;
+
+    private final MpesaConfig config;
+    private final String shortCode;
+    private final String consumerKey;
+    private final String consumerSecret;
+    private final MpesaMetrics metrics;
+    private final UpstreamGuard guard;
+    private final RetryPolicy retryPolicy;
+    private final AuditLog auditLog;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mpesa-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicReference<CompletableFuture<AccessToken>> inFlight = new AtomicReference<>();
+    private volatile AccessToken current;
+    /** The one scheduled background refresh; guarded by this */
+    private ScheduledFuture<?> pendingRefresh;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    /**
+     * Manager for the credentials configured in mpesa.consumer-key / mpesa.consumer-secret.
+     */
+    public AccessTokenManager(MpesaConfig config, MpesaMetrics metrics, UpstreamGuards guards,
+                              RetryPolicy retryPolicy, AuditLog auditLog) {
+        this(config, config.getShortCode(), config.getConsumerKey(), config.getConsumerSecret(),
+                DarajaHttpClients.newHttpClient(config), metrics, guards.oauth(), retryPolicy, auditLog);
+    }
+
+    /**
+     * @param shortCode the tenant's paybill/till, tagged on the mpesa.oauth.request timer
+     */
+    public AccessTokenManager(MpesaConfig config, String shortCode, String consumerKey, String consumerSecret,
+                              HttpClient httpClient, MpesaMetrics metrics, UpstreamGuard guard,
+                              RetryPolicy retryPolicy, AuditLog auditLog) {
+        this.config = config;
+        this.shortCode = shortCode;
+        this.consumerKey = consumerKey.trim();
+        this.consumerSecret = consumerSecret.trim();
+        this.metrics = metrics;
+        this.guard = guard;
+        this.retryPolicy = retryPolicy;
+        this.auditLog = auditLog;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Returns a valid access token, fetching one only when the cached token is missing or expired.
+     */
+    public String getAccessToken() throws Exception {
+        return getAccessToken(null);
+    }
+
+    /**
+     * Blocking variant of {@link #getAccessTokenAsync(RetryPolicy.Budget)}.
+     */
+    public String getAccessToken(RetryPolicy.Budget budget) throws Exception {
+        try {
+            return getAccessTokenAsync(budget).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #getAccessToken()} for the async STK Push pipeline.
+     * A cache hit returns an already-completed future.
+     */
+    public CompletableFuture<String> getAccessTokenAsync() {
+        return getAccessTokenAsync(null);
+    }
+
+    /**
+     * Token for a call that is retried by the caller's RetryPolicy: a fetch it starts is a
+     * single attempt within that budget, so a failing OAuth endpoint is retried in one place
+     * and never past the caller's deadline. Without a budget the fetch retries on its own.
+     */
+    public CompletableFuture<String> getAccessTokenAsync(RetryPolicy.Budget budget) {
+        AccessToken token = current;
+        if (token != null && token.isUsable(System.currentTimeMillis())) {
+            hits.increment();
+            return CompletableFuture.completedFuture(token.value());
+        }
+        misses.increment();
+        return refresh(token, budget).thenApply(AccessToken::value);
+    }
+
+    /**
+     * Drops the cached token, e.g. after Safaricom rejects it with 401.
+     * The next caller will fetch a fresh one.
+     */
+    public void invalidate() {
+        current = null;
+    }
+
+    /**
+     * Starts a refresh, or returns the one already in flight (single-flight).
+     *
+     * @param stale  the token the caller considers out of date (may be null)
+     * @param budget the caller's retry budget, or null to retry the fetch here
+     */
+    CompletableFuture<AccessToken> refresh(AccessToken stale, RetryPolicy.Budget budget) {
+        while (true) {
+            CompletableFuture<AccessToken> existing = inFlight.get();
+            if (existing != null) {
+                return existing;
+            }
+            CompletableFuture<AccessToken> mine = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, mine)) {
+                // Another refresh may have finished between our cache check and the CAS
+                AccessToken token = current;
+                if (token != null && token != stale && token.isUsable(System.currentTimeMillis())) {
+                    inFlight.set(null);
+                    mine.complete(token);
+                } else {
+                    fetchInto(mine, budget);
+                }
+                return mine;
+            }
+        }
+    }
+
+    private void fetchInto(CompletableFuture<AccessToken> future, RetryPolicy.Budget budget) {
+        CompletableFuture<AccessToken> fetch;
+        try {
+            fetch = budget != null ? fetchTokenOnce(budget) : fetchToken();
+        } catch (RuntimeException e) {
+            fetch = CompletableFuture.failedFuture(e);
+        }
+        fetch.whenComplete((token, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                auditLog.warn("oauth.failed", null, AuditLog.mask(consumerKey), 0, cause.getMessage());
+                refreshFailures.increment();
+                inFlight.set(null);
+                future.completeExceptionally(cause);
+                return;
+            }
+            current = token;
+            refreshes.increment();
+            scheduleRefresh(token);
+            inFlight.set(null);
+            future.complete(token);
+        });
+    }
+
+    private void scheduleRefresh(AccessToken token) {
+        long skewMillis = TimeUnit.SECONDS.toMillis(config.getTokenRefreshSkewSeconds());
+        scheduleBackgroundRefresh(token, Math.max(1_000, token.expiresAtMillis() - skewMillis - System.currentTimeMillis()));
+    }
+
+    /**
+     * Replaces the pending background refresh, so there is at most one per manager however
+     * many foreground fetches (misses, 401s) happened in between.
+     */
+    private synchronized void scheduleBackgroundRefresh(AccessToken scheduledFor, long delayMillis) {
+        if (refresher.isShutdown()) {
+            return;
+        }
+        if (pendingRefresh != null) {
+            pendingRefresh.cancel(false);
+        }
+        pendingRefresh = refresher.schedule(() -> backgroundRefresh(scheduledFor), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void backgroundRefresh(AccessToken scheduledFor) {
+        // The token was invalidated or replaced since: whoever replaced it scheduled its own refresh
+        if (current != scheduledFor) {
+            return;
+        }
+        refresh(scheduledFor, null).whenComplete((token, error) -> {
+            if (error != null && current == scheduledFor) {
+                scheduleBackgroundRefresh(scheduledFor, RETRY_DELAY_MILLIS);
+            }
+        });
+    }
+
+    /**
+     * Calls Safaricom's OAuth endpoint with Basic auth (ConsumerKey:ConsumerSecret).
+     * The GET is idempotent, so timeouts are retried as well as 5xx and connection errors.
+     */
+    private CompletableFuture<AccessToken> fetchToken() {
+        return retryPolicy.executeAsync(this::fetchTokenOnce);
+    }
+
+    private CompletableFuture<AccessToken> fetchTokenOnce(RetryPolicy.Budget budget) {
+        String credentials = consumerKey + ":" + consumerSecret;
+        String encodedCredentials = Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(config.getBaseUrl() + "/oauth/v1/generate?grant_type=client_credentials"))
+                .header("Authorization", "Basic " + encodedCredentials)
+                .GET();
+        Duration timeout = budget.requestTimeout();
+        if (timeout != null) {
+            builder.timeout(timeout);
+        }
+        HttpRequest request = builder.build();
+
+        long start = System.nanoTime();
+        return guard.sendAsync(() -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()))
+                .handle((response, error) -> {
+                    if (error != null) {
+                        metrics.recordOAuth(start, shortCode, false, 0);
+                        throw new CompletionException(DarajaException.classify(error, true));
+                    }
+                    try {
+                        AccessToken token = parseTokenResponse(response, consumerKey);
+                        metrics.recordOAuth(start, shortCode, true, response.statusCode());
+                        return token;
+                    } catch (RuntimeException e) {
+                        metrics.recordOAuth(start, shortCode, false, response.statusCode());
+                        throw e;
+                    }
+                });
+    }
+
+    private AccessToken parseTokenResponse(HttpResponse<String> response, String consumerKey) {
+        // The access token in the body is masked by the audit log writer
+        auditLog.debug("oauth.response", null, AuditLog.mask(consumerKey), response.statusCode(), response.body());
+
+        if (response.statusCode() == 400) {
+            throw new DarajaException(DarajaException.Kind.REJECTED,
+                    "CREDENTIALS EXPIRED! Get new sandbox credentials from: https://developer.safaricom.co.ke/",
+                    400, null, null, null);
+        } else if (response.statusCode() != 200) {
+            DarajaException error = DarajaException.fromResponse(response.statusCode(), response.body());
+            // 401 here means bad consumer key/secret, which no retry will fix
+            DarajaException.Kind kind = response.statusCode() == 401 ? DarajaException.Kind.REJECTED : error.getKind();
+            throw new DarajaException(kind,
+                    "OAuth failed (Status: " + response.statusCode() + "): " + response.body(),
+                    response.statusCode(), error.getErrorCode(), error.getRequestId(), null);
+        }
+
+        OAuthTokenResponse token;
+        try {
+            long start = System.nanoTime();
+            token = objectMapper.readValue(response.body(), OAuthTokenResponse.class);
+            metrics.recordDecode("oauth.response", start);
+        } catch (JsonProcessingException e) {
+            throw new DarajaException(DarajaException.Kind.REJECTED, "Invalid OAuth response: " + response.body(),
+                    response.statusCode(), null, null, e);
+        }
+        if (token.accessToken() == null) {
+            throw new DarajaException(DarajaException.Kind.REJECTED, "Invalid OAuth response: " + response.body(),
+                    response.statusCode(), null, null, null);
+        }
+
+        return new AccessToken(token.accessToken(),
+                System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(token.expiresInOrDefault()));
+    }
+
+    /** Number of calls served from the cached token */
+    public long getHitCount() { return hits.sum(); }
+
+    /** Number of calls that found no usable token and had to wait for a refresh */
+    public long getMissCount() { return misses.sum(); }
+
+    /** Number of successful token fetches from Safaricom (foreground and background) */
+    public long getRefreshCount() { return refreshes.sum(); }
+
+    /** Number of failed token fetches */
+    public long getRefreshFailureCount() { return refreshFailures.sum(); }
+
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /** A token plus the wall-clock time it stops being valid */
+    record AccessToken(String value, long expiresAtMillis) {
+        boolean isUsable(long nowMillis) {
+            return nowMillis < expiresAtMillis - EXPIRY_MARGIN_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.mpesa.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adaptive Concurrency Limit - How many calls to an upstream may be in flight
+ *
+ * Gradient-style limit driven by observed round-trip time:
+ * - a slow-moving baseline RTT (what the upstream looks like unloaded) and a fast-moving
+ *   recent RTT are tracked as exponentially weighted averages
+ * - while recent RTT stays within rttTolerance x baseline the limit grows by about
+ *   sqrt(limit) per sample, so it probes for more capacity
+ * - once recent RTT exceeds that, the limit shrinks proportionally (queueing upstream)
+ * - a failed call (5xx, 429, timeout) cuts the limit by backoffRatio (AIMD-style)
+ *
+ * Calls over the limit are rejected immediately instead of queueing, so callers see
+ * a fast error rather than a thread stuck behind a degraded upstream.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final double RECENT_ALPHA = 0.1;
+    private static final double BASELINE_ALPHA = 0.01;
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile double limit;
+    private double recentRtt;    // guarded by this
+    private double baselineRtt;  // guarded by this
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit,
+                                    double rttTolerance, double backoffRatio) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.rttTolerance = Math.max(1.0, rttTolerance);
+        this.backoffRatio = Math.min(1.0, Math.max(0.1, backoffRatio));
+        this.limit = clamp(initialLimit);
+    }
+
+    /**
+     * Takes a slot if one is free.
+     *
+     * @return false when the limit is reached; the caller must not make the call
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns a slot and feeds the call's outcome into the limit.
+     *
+     * @param rttNanos how long the call took
+     * @param dropped  true if the upstream failed or timed out
+     */
+    public void release(long rttNanos, boolean dropped) {
+        int inFlightAtRelease = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (dropped) {
+                limit = clamp(limit * backoffRatio);
+                return;
+            }
+            double rtt = Math.max(1, rttNanos);
+            if (baselineRtt == 0) {
+                baselineRtt = recentRtt = rtt;
+                return;
+            }
+            recentRtt += RECENT_ALPHA * (rtt - recentRtt);
+            baselineRtt += BASELINE_ALPHA * (rtt - baselineRtt);
+            // Let the baseline follow latency down immediately so a quiet upstream resets it
+            baselineRtt = Math.min(baselineRtt, recentRtt);
+
+            double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, rttTolerance * baselineRtt / recentRtt));
+            double target = limit * gradient + Math.sqrt(limit);
+            if (target > limit && inFlightAtRelease < limit / 2) {
+                return; // Not using the current limit - no evidence it is too low
+            }
+            limit = clamp(limit * (1 - SMOOTHING) + target * SMOOTHING);
+        }
+    }
+
+    /** Returns a slot without a sample, for calls that never reached the upstream */
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+
+    /** Current limit (whole calls) */
+    public int getLimit() { return (int) limit; }
+
+    /** Calls currently in flight */
+    public int getInFlight() { return inFlight.get(); }
+
+    /** Calls refused because the limit was reached */
+    public long getRejectedCount() { return rejected.sum(); }
+}
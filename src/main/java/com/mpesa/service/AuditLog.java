@@ -0,0 +1,357 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Audit Log - Structured events written off the request path
+ *
+ * Request threads never touch the console or a file. An event is copied into a slot of a
+ * ring buffer preallocated at startup (mpesa.audit.buffer-size slots, each with the same
+ * fields: time, level, event, tenant, key, status, detail); a single writer thread drains
+ * the published slots in batches and appends them as JSON lines to numbered files in
+ * mpesa.audit.dir:
+ *   audit-00000001.log, audit-00000002.log, ...
+ * A new file is started once the active one passes mpesa.audit.max-file-bytes, and only
+ * the newest mpesa.audit.max-files are kept.
+ *
+ * - Credentials never reach the file: values of password, token, secret and key fields and
+ *   Basic/Bearer authorization values in the detail are replaced with ****
+ * - DEBUG events are sampled: only mpesa.audit.debug-sample-rate of them are recorded
+ * - When the buffer is full the event is dropped and counted; the caller never waits
+ *
+ * With mpesa.audit.enabled=false every call returns immediately.
+ */
+@Component
+public class AuditLog {
+
+    public enum Level { DEBUG, INFO, WARN }
+
+    private static final String FILE_PREFIX = "audit-";
+    private static final String FILE_SUFFIX = ".log";
+    private static final int MAX_DETAIL_CHARS = 8_192;
+    private static final int MAX_BATCH = 1_024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final Pattern CREDENTIAL_FIELD = Pattern.compile(
+            "(\"?[\\w-]*(?:password|passkey|secret|token|credential|consumer[_-]?key)[\\w-]*\"?\\s*[:=]\\s*\"?)([^\",&\\s}]+)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern AUTHORIZATION = Pattern.compile("\\b(Basic|Bearer)\\s+[A-Za-z0-9+/=._-]+");
+
+    /** One preallocated event; published once sequence holds the sequence it was filled for */
+    private static final class Slot {
+        volatile long sequence = -1;
+        long timestamp;
+        Level level;
+        String event;
+        String tenant;
+        String key;
+        int status;
+        String detail;
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final double debugSampleRate;
+    private final Slot[] slots;
+    private final int mask;
+
+    /** Next sequence a producer may claim */
+    private final AtomicLong claimed = new AtomicLong();
+    /** Every slot below this sequence has been copied out by the writer and may be reused */
+    private volatile long consumed;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private volatile boolean running;
+    private Thread writer;
+    private BufferedWriter out;
+    private long activeIndex;
+    private long activeBytes;
+
+    public AuditLog(MpesaConfig config) {
+        this.enabled = config.isAuditEnabled();
+        this.directory = Path.of(config.getAuditDir() == null ? "data/audit" : config.getAuditDir());
+        this.maxFileBytes = Math.max(1, config.getAuditMaxFileBytes());
+        this.maxFiles = Math.max(1, config.getAuditMaxFiles());
+        this.debugSampleRate = config.getAuditDebugSampleRate();
+        int capacity = Integer.highestOneBit(Math.max(2, config.getAuditBufferSize()) * 2 - 1);
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Opens the newest audit file for appending and starts the writer thread.
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (!enabled || running) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Path> files = files();
+        openFile(files.isEmpty() ? 1 : fileIndex(files.get(files.size() - 1)));
+        running = true;
+        writer = new Thread(this::runWriter, "mpesa-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void debug(String event, String tenant, String key, int status, String detail) {
+        if (!enabled) {
+            return;
+        }
+        if (debugSampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= debugSampleRate) {
+            sampledOut.increment();
+            return;
+        }
+        record(Level.DEBUG, event, tenant, key, status, detail);
+    }
+
+    public void info(String event, String tenant, String key, int status, String detail) {
+        record(Level.INFO, event, tenant, key, status, detail);
+    }
+
+    public void warn(String event, String tenant, String key, int status, String detail) {
+        record(Level.WARN, event, tenant, key, status, detail);
+    }
+
+    /**
+     * Claims a slot and fills it in; no locks, no allocation beyond the caller's strings.
+     * The detail is masked by the writer, so it may hold raw payloads.
+     */
+    public void record(Level level, String event, String tenant, String key, int status, String detail) {
+        if (!enabled) {
+            return;
+        }
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.timestamp = System.currentTimeMillis();
+        slot.level = level;
+        slot.event = event;
+        slot.tenant = tenant;
+        slot.key = key;
+        slot.status = status;
+        slot.detail = detail;
+        slot.sequence = sequence; // Publishes the fields above to the writer
+    }
+
+    private void runWriter() {
+        StringBuilder lines = new StringBuilder(64 * 1024);
+        while (true) {
+            boolean stopping = !running;
+            long next = consumed;
+            int count = 0;
+            Slot slot;
+            while (count < MAX_BATCH && (slot = slots[(int) next & mask]).sequence == next) {
+                format(slot, lines);
+                slot.event = null;
+                slot.tenant = null;
+                slot.key = null;
+                slot.detail = null;
+                next++;
+                count++;
+            }
+            if (count > 0) {
+                consumed = next;
+                write(lines, count);
+                lines.setLength(0);
+            } else if (stopping) {
+                break;
+            } else {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.err.println("❌ Audit log close failed: " + e.getMessage());
+        }
+    }
+
+    private void write(StringBuilder lines, int count) {
+        try {
+            if (activeBytes > 0 && activeBytes + lines.length() > maxFileBytes) {
+                out.close();
+                openFile(activeIndex + 1);
+                prune();
+            }
+            out.append(lines);
+            out.flush();
+            activeBytes += lines.length();
+            written.add(count);
+        } catch (IOException e) {
+            failed.add(count);
+            System.err.println("❌ Audit log write of " + count + " events failed: " + e.getMessage());
+        }
+    }
+
+    private void format(Slot slot, StringBuilder line) {
+        line.append("{\"ts\":\"").append(Instant.ofEpochMilli(slot.timestamp))
+                .append("\",\"level\":\"").append(slot.level)
+                .append("\",\"event\":");
+        appendString(line, slot.event);
+        if (slot.tenant != null) {
+            line.append(",\"tenant\":");
+            appendString(line, slot.tenant);
+        }
+        if (slot.key != null) {
+            line.append(",\"key\":");
+            appendString(line, slot.key);
+        }
+        if (slot.status != 0) {
+            line.append(",\"status\":").append(slot.status);
+        }
+        if (slot.detail != null) {
+            String detail = slot.detail.length() > MAX_DETAIL_CHARS
+                    ? slot.detail.substring(0, MAX_DETAIL_CHARS) + "..." : slot.detail;
+            line.append(",\"detail\":");
+            appendString(line, maskCredentials(detail));
+        }
+        line.append("}\n");
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Replaces credential values in free text (JSON bodies, key=value pairs, headers) with ****.
+     */
+    static String maskCredentials(String text) {
+        String masked = AUTHORIZATION.matcher(text).replaceAll("$1 ****");
+        return CREDENTIAL_FIELD.matcher(masked).replaceAll("$1****");
+    }
+
+    /**
+     * First four characters of an identifying secret (e.g. a consumer key) followed by ****,
+     * enough to tell credentials apart in the log without revealing them.
+     */
+    public static String mask(String secret) {
+        if (secret == null) {
+            return null;
+        }
+        return secret.length() <= 8 ? "****" : secret.substring(0, 4) + "****";
+    }
+
+    private void openFile(long index) throws IOException {
+        Path file = directory.resolve(String.format("%s%08d%s", FILE_PREFIX, index, FILE_SUFFIX));
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        activeIndex = index;
+        activeBytes = Files.size(file);
+    }
+
+    /** Deletes the oldest files beyond mpesa.audit.max-files */
+    private void prune() throws IOException {
+        List<Path> files = files();
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries
+                    .filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long fileIndex(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+    }
+
+    /** Events appended to the audit file */
+    public long getWrittenCount() { return written.sum(); }
+
+    /** Events dropped because the ring buffer was full */
+    public long getDroppedCount() { return dropped.sum(); }
+
+    /** DEBUG events skipped by sampling */
+    public long getSampledOutCount() { return sampledOut.sum(); }
+
+    /** Events lost to failed file writes */
+    public long getFailedCount() { return failed.sum(); }
+
+    /** Events waiting for the writer */
+    public long getBufferDepth() { return claimed.get() - consumed; }
+
+    /**
+     * Writes the events still buffered and closes the file.
+     */
+    @PreDestroy
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = writer;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.mpesa.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.Mpesamapping;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Bulk STK Push Service - Fans a stream of payment requests out to Safaricom
+ *
+ * Input: a JSON array or newline-delimited JSON (NDJSON) of Mpesamapping objects.
+ * Output: one NDJSON result line per item, written as soon as that item finishes
+ * (so results are NOT necessarily in input order - use "index" to correlate).
+ *
+ * Memory stays flat regardless of batch size:
+ * - items are read one at a time from the request stream
+ * - at most mpesa.bulk.max-concurrency pushes are in flight; the reader waits for a
+ *   free slot before parsing the next item
+ * - pushes per tenant are paced by a token bucket (mpesa.bulk.rate-per-second), and
+ *   still count against the tenant's own STK Push rate; bulk only uses
+ *   mpesa.bulk.tenant-rate-share of that rate, so interactive checkouts of the same
+ *   tenant are not refused with rate_limit during a batch
+ * - pushes are queued in the batch lane of the PushScheduler, so interactive checkouts
+ *   are dispatched ahead of a running batch
+ *
+ * Result line example:
+ * {"index":0,"phone":"254796022656","response":{"ResponseCode":"0",...}}
+ */
+@Service
+public class BulkStkPushService {
+
+    /** Receives result lines; implementations must tolerate calls from multiple threads */
+    @FunctionalInterface
+    public interface ResultSink {
+        void accept(byte[] line) throws IOException;
+    }
+
+    private static final byte NEWLINE = '\n';
+
+    private final MpesaService mpesaService;
+    private final MpesaConfig config;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectReader itemReader = objectMapper.readerFor(Mpesamapping.class);
+    // Weak keys: a tenant retired by a reload takes its bucket with it once its batches finish
+    private final Map<Tenant, TokenBucket> rateLimiters = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // Each batch parks a reader thread on the semaphore; virtual threads make that free
+    private final ExecutorService batchExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("mpesa-bulk-", 0).factory());
+
+    public BulkStkPushService(MpesaService mpesaService, MpesaConfig config) {
+        this.mpesaService = mpesaService;
+        this.config = config;
+    }
+
+    /**
+     * Runs {@link #process(Tenant, InputStream, ResultSink)} on a background thread.
+     *
+     * @param onDone called with null on success or the failure that stopped the batch
+     */
+    public void submit(Tenant tenant, InputStream items, ResultSink sink, Consumer<Throwable> onDone) {
+        batchExecutor.execute(() -> {
+            try {
+                process(tenant, items, sink);
+                onDone.accept(null);
+            } catch (Throwable e) {
+                onDone.accept(e);
+            }
+        });
+    }
+
+    /**
+     * Streams items from the input, pushes them with bounded concurrency and writes
+     * one result line per item. Returns after every started push has reported back.
+     */
+    public void process(Tenant tenant, InputStream items, ResultSink sink) throws IOException {
+        int maxConcurrency = Math.max(1, config.getBulkMaxConcurrency());
+        Semaphore slots = new Semaphore(maxConcurrency);
+        TokenBucket rateLimiter = rateLimiterFor(tenant);
+        AtomicReference<IOException> sinkFailure = new AtomicReference<>();
+
+        long index = 0;
+        try (MappingIterator<Mpesamapping> iterator = itemReader.readValues(items)) {
+            while (sinkFailure.get() == null && iterator.hasNextValue()) {
+                Mpesamapping mapping = iterator.nextValue();
+                slots.acquire();
+                rateLimiter.acquire();
+
+                long itemIndex = index++;
+                mpesaService.submitStkPush(tenant, PushScheduler.Lane.BATCH, mapping).whenComplete((response, error) -> {
+                    try {
+                        writeResult(sink, itemIndex, mapping, response);
+                    } catch (IOException e) {
+                        sinkFailure.compareAndSet(null, e);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Bulk STK Push interrupted after " + index + " items");
+        } finally {
+            // Wait for in-flight pushes so every accepted item gets a result line
+            slots.acquireUninterruptibly(maxConcurrency);
+        }
+
+        if (sinkFailure.get() != null) {
+            throw sinkFailure.get();
+        }
+    }
+
+    private void writeResult(ResultSink sink, long index, Mpesamapping mapping, String response) throws IOException {
+        ObjectNode line = objectMapper.createObjectNode();
+        line.put("index", index);
+        line.put("phone", mapping.getPhone());
+        line.set("response", parseResponse(response));
+
+        byte[] json = objectMapper.writeValueAsBytes(line);
+        byte[] withNewline = new byte[json.length + 1];
+        System.arraycopy(json, 0, withNewline, 0, json.length);
+        withNewline[json.length] = NEWLINE;
+        sink.accept(withNewline);
+    }
+
+    /** Embeds Safaricom's JSON as-is; anything that isn't JSON (e.g. an HTML error page) becomes a string */
+    private JsonNode parseResponse(String response) {
+        if (response == null) {
+            return objectMapper.nullNode();
+        }
+        try {
+            return objectMapper.readTree(response);
+        } catch (IOException e) {
+            return objectMapper.getNodeFactory().textNode(response);
+        }
+    }
+
+    /**
+     * Bulk pacing for a tenant: mpesa.bulk.rate-per-second, lowered to the tenant-rate-share
+     * of the tenant's own rate when that is smaller. The tenant's token bucket is shared with
+     * interactive checkouts, which must still find tokens while a batch runs.
+     */
+    private TokenBucket rateLimiterFor(Tenant tenant) {
+        Tenant.Settings settings = tenant.getSettings();
+        double bulkRate = config.getBulkRatePerSecond();
+        double share = config.getBulkTenantRateShare() > 0 ? Math.min(1.0, config.getBulkTenantRateShare()) : 1.0;
+        double tenantRate = settings.ratePerSecond() * share;
+        boolean tenantSlower = settings.ratePerSecond() > 0
+                && (bulkRate <= 0 || tenantRate < bulkRate);
+        double rate = tenantSlower ? tenantRate : bulkRate;
+        int burst = tenantSlower
+                ? Math.min(Math.max(1, (int) (settings.burst() * share)), config.getBulkBurst())
+                : config.getBulkBurst();
+        // A reload that changes the tenant's settings builds a new Tenant, and so a new bucket
+        return rateLimiters.computeIfAbsent(tenant, key -> new TokenBucket(rate, burst));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchExecutor.shutdownNow();
+    }
+}
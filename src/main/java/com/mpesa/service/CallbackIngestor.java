@@ -0,0 +1,222 @@
+package com.mpesa.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.StkCallback;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Callback Ingestion Pipeline - Acknowledge fast, process in the background
+ *
+ * Safaricom retries callbacks that are acknowledged slowly, so the HTTP thread does
+ * nothing but drop the raw payload into a bounded in-memory queue. A single writer
+ * thread then:
+ * 1. Drains up to mpesa.journal.batch-size payloads at a time
+ * 2. Parses them into StkCallback records
+ * 3. Appends the whole batch to the CallbackJournal with one fsync (group commit)
+ * 4. Hands each record to the registered CallbackListeners
+ *
+ * At startup the journal segments written within mpesa.transactions.settled-ttl-seconds
+ * are replayed through the same listeners, so in-memory state survives restarts.
+ */
+@Service
+public class CallbackIngestor {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final CallbackJournal journal;
+    private final MpesaMetrics metrics;
+    private final AuditLog auditLog;
+    private final ObjectProvider<CallbackListener> listenerProvider;
+    private final int batchSize;
+    private final long settledTtlMillis;
+    private final BlockingQueue<PendingCallback> queue;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder journaled = new LongAdder();
+    private final LongAdder parseFailures = new LongAdder();
+    private final LongAdder journalFailures = new LongAdder();
+
+    private List<CallbackListener> listeners = List.of();
+    private volatile boolean running;
+    private Thread writer;
+
+    public CallbackIngestor(CallbackJournal journal, ObjectProvider<CallbackListener> listenerProvider,
+                            MpesaConfig config, MpesaMetrics metrics, AuditLog auditLog) {
+        this.journal = journal;
+        this.metrics = metrics;
+        this.auditLog = auditLog;
+        this.listenerProvider = listenerProvider;
+        this.batchSize = Math.max(1, config.getJournalBatchSize());
+        this.settledTtlMillis = TimeUnit.SECONDS.toMillis(config.getTransactionsSettledTtlSeconds());
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, config.getCallbackQueueCapacity()));
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        listeners = listenerProvider.orderedStream().toList();
+
+        // Older callbacks would be ignored by the TransactionStore anyway
+        long since = settledTtlMillis > 0 ? System.currentTimeMillis() - settledTtlMillis : 0;
+        long[] replayed = {0};
+        journal.replay(callback -> {
+            dispatch(callback);
+            replayed[0]++;
+        }, since);
+        if (replayed[0] > 0) {
+            auditLog.info("callback.replayed", null, null, 0, replayed[0] + " callbacks");
+        }
+
+        running = true;
+        writer = new Thread(this::runWriter, "mpesa-callback-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a raw callback payload for journaling. Never blocks.
+     *
+     * @return false if the queue is full and the callback should be refused (Safaricom will retry)
+     */
+    public boolean submit(String payload) {
+        return enqueue(new PendingCallback(payload, null, System.currentTimeMillis()));
+    }
+
+    /**
+     * Queues a result obtained some other way (e.g. an STK Push Query) so it is
+     * journaled and dispatched exactly like a callback from Safaricom.
+     */
+    public boolean submit(StkCallback callback) {
+        return enqueue(new PendingCallback(null, callback, callback.receivedAt()));
+    }
+
+    private boolean enqueue(PendingCallback pending) {
+        if (queue.offer(pending)) {
+            accepted.increment();
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    private void runWriter() {
+        List<PendingCallback> batch = new ArrayList<>(batchSize);
+        List<StkCallback> parsed = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingCallback first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                for (PendingCallback pending : batch) {
+                    StkCallback callback = parse(pending);
+                    if (callback != null) {
+                        parsed.add(callback);
+                    }
+                }
+                writeBatch(parsed);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+                parsed.clear();
+            }
+        }
+    }
+
+    private StkCallback parse(PendingCallback pending) {
+        if (pending.parsed() != null) {
+            return pending.parsed();
+        }
+        try {
+            long start = System.nanoTime();
+            StkCallback callback = StkCallback.fromPayload(objectMapper.readTree(pending.payload()), pending.receivedAt());
+            metrics.recordDecode("callback", start);
+            return callback;
+        } catch (Exception e) {
+            parseFailures.increment();
+            auditLog.warn("callback.unparseable", null, null, 0, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeBatch(List<StkCallback> callbacks) {
+        if (callbacks.isEmpty()) {
+            return;
+        }
+        try {
+            journal.append(callbacks);
+            journaled.add(callbacks.size());
+        } catch (IOException e) {
+            // Still update in-memory state; the callbacks just won't survive a restart
+            journalFailures.add(callbacks.size());
+            auditLog.warn("callback.journal.failed", null, null, 0,
+                    callbacks.size() + " callbacks not journaled: " + e.getMessage());
+        }
+        for (StkCallback callback : callbacks) {
+            dispatch(callback);
+            metrics.recordCallbackHandling(callback.resultCode(), System.currentTimeMillis() - callback.receivedAt());
+        }
+    }
+
+    private void dispatch(StkCallback callback) {
+        for (CallbackListener listener : listeners) {
+            try {
+                listener.onCallback(callback);
+            } catch (RuntimeException e) {
+                auditLog.warn("callback.listener.failed", null, callback.checkoutRequestId(), 0,
+                        listener.getClass().getSimpleName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Payloads waiting to be journaled */
+    public int getQueueDepth() { return queue.size(); }
+
+    /** Callbacks accepted onto the queue */
+    public long getAcceptedCount() { return accepted.sum(); }
+
+    /** Callbacks refused because the queue was full */
+    public long getRejectedCount() { return rejected.sum(); }
+
+    /** Callbacks durably written to the journal */
+    public long getJournaledCount() { return journaled.sum(); }
+
+    /** Payloads that could not be parsed as STK callbacks */
+    public long getParseFailureCount() { return parseFailures.sum(); }
+
+    /** Callbacks that could not be written to the journal */
+    public long getJournalFailureCount() { return journalFailures.sum(); }
+
+    /**
+     * Stops accepting work and waits for the writer to flush what is already queued.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /** Either a raw payload from Safaricom or an already-parsed result */
+    private record PendingCallback(String payload, StkCallback parsed, long receivedAt) {
+    }
+}
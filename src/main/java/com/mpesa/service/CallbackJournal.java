@@ -0,0 +1,245 @@
+package com.mpesa.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.StkCallback;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Callback Journal - Append-only, crash-safe log of every STK callback
+ *
+ * Records are appended to numbered segment files in mpesa.journal.dir:
+ *   callbacks-00000001.journal, callbacks-00000002.journal, ...
+ * A new segment is started once the active one would grow past mpesa.journal.segment-bytes.
+ *
+ * Record layout (big-endian):
+ *   [int length][int crc32 of payload][payload = StkCallback as JSON]
+ *
+ * Durability uses group commit: a whole batch of records is written with one
+ * channel write and made durable with a single fsync, so the cost of force()
+ * is shared by every callback in the batch.
+ *
+ * A crash can leave a half-written record at the end of the active segment;
+ * it is detected by its length/CRC and truncated when the journal is opened.
+ *
+ * Retention: when the journal is opened and whenever a segment is rotated, closed
+ * segments last written more than mpesa.journal.retention-seconds ago are deleted
+ * (0 keeps them forever). Statement reconciliation reads the whole retained journal, so
+ * the default covers a monthly statement. Startup replay only needs what the
+ * TransactionStore still keeps and skips segments last written before its settled TTL.
+ */
+@Component
+public class CallbackJournal {
+
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+    private static final String SEGMENT_PREFIX = "callbacks-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long retentionMillis;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private FileChannel active;
+    private long activeIndex;
+
+    public CallbackJournal(MpesaConfig config) {
+        this.directory = Path.of(config.getJournalDir());
+        this.segmentBytes = config.getJournalSegmentBytes();
+        this.retentionMillis = TimeUnit.SECONDS.toMillis(config.getJournalRetentionSeconds());
+    }
+
+    /**
+     * Opens the newest segment for appending, cutting off any torn record left by a crash,
+     * and deletes segments past retention.
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> segments = segments();
+        if (!segments.isEmpty()) {
+            deleteExpired(segments.subList(0, segments.size() - 1));
+            segments = segments();
+        }
+        if (segments.isEmpty()) {
+            openSegment(1);
+            return;
+        }
+
+        Path last = segments.get(segments.size() - 1);
+        long validBytes = scan(last, null);
+        openSegment(segmentIndex(last));
+        if (validBytes < active.size()) {
+            System.err.println("Callback journal: truncating torn tail of " + last.getFileName()
+                    + " at byte " + validBytes);
+            active.truncate(validBytes);
+        }
+        active.position(validBytes);
+    }
+
+    /**
+     * Appends a batch of callbacks and forces them to disk before returning.
+     */
+    public synchronized void append(List<StkCallback> callbacks) throws IOException {
+        if (callbacks.isEmpty()) {
+            return;
+        }
+
+        List<byte[]> payloads = new ArrayList<>(callbacks.size());
+        int total = 0;
+        for (StkCallback callback : callbacks) {
+            byte[] payload = objectMapper.writeValueAsBytes(callback);
+            payloads.add(payload);
+            total += HEADER_BYTES + payload.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        CRC32 crc = new CRC32();
+        for (byte[] payload : payloads) {
+            crc.reset();
+            crc.update(payload);
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        }
+        buffer.flip();
+
+        if (active.position() > 0 && active.position() + total > segmentBytes) {
+            active.close();
+            openSegment(activeIndex + 1);
+            List<Path> segments = segments();
+            deleteExpired(segments.subList(0, segments.size() - 1));
+        }
+        while (buffer.hasRemaining()) {
+            active.write(buffer);
+        }
+        active.force(false);
+    }
+
+    /**
+     * Reads every intact record, oldest first. Safe to call while the journal is being appended to;
+     * records written after the read reaches the end of a segment are simply not seen.
+     */
+    public void replay(Consumer<StkCallback> consumer) throws IOException {
+        replay(consumer, 0);
+    }
+
+    /**
+     * Like {@link #replay(Consumer)}, skipping closed segments last written before sinceMillis.
+     * Records in the segments read may still be older than that.
+     */
+    public void replay(Consumer<StkCallback> consumer, long sinceMillis) throws IOException {
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            try {
+                if (i < segments.size() - 1 && Files.getLastModifiedTime(segment).toMillis() < sinceMillis) {
+                    continue;
+                }
+                scan(segment, consumer);
+            } catch (NoSuchFileException expired) {
+                // Deleted by retention after it was listed
+            }
+        }
+    }
+
+    /**
+     * Deletes the given closed segments that were last written before the retention window.
+     */
+    private void deleteExpired(List<Path> closed) throws IOException {
+        if (retentionMillis <= 0) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        for (Path segment : closed) {
+            if (Files.getLastModifiedTime(segment).toMillis() < cutoff) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    /**
+     * Walks one segment, passing each valid record to the consumer (if any).
+     *
+     * @return offset just past the last valid record
+     */
+    private long scan(Path segment, Consumer<StkCallback> consumer) throws IOException {
+        long valid = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 1 << 16))) {
+            while (true) {
+                int length = in.readInt();
+                int expectedCrc = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+                if (consumer != null) {
+                    consumer.accept(objectMapper.readValue(payload, StkCallback.class));
+                }
+                valid += HEADER_BYTES + length;
+            }
+        } catch (EOFException endOfSegment) {
+            // Clean end or torn final record - either way 'valid' marks the end of good data
+        }
+        return valid;
+    }
+
+    private List<Path> segments() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private void openSegment(long index) throws IOException {
+        Path path = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        active = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        active.position(active.size());
+        activeIndex = index;
+    }
+
+    private static long segmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (active != null && active.isOpen()) {
+            active.force(true);
+            active.close();
+        }
+    }
+}
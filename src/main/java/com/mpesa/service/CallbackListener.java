@@ -0,0 +1,15 @@
+package com.mpesa.service;
+
+import com.mpesa.dto.StkCallback;
+
+/**
+ * Receives STK callbacks after they have been durably written to the callback journal.
+ *
+ * Listeners are invoked on the journal writer thread, both for live callbacks and
+ * for records replayed from the journal at startup, so implementations must be fast
+ * and idempotent. Use @Order to control the invocation order between listeners.
+ */
+public interface CallbackListener {
+
+    void onCallback(StkCallback callback);
+}
@@ -0,0 +1,140 @@
+package com.mpesa.service;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit Breaker - Stops calling an upstream that keeps failing
+ *
+ * CLOSED:    calls go through; the outcome of the last windowSize calls is kept, and once
+ *            at least minimumCalls were made a failure rate at or above the threshold opens it
+ * OPEN:      calls fail fast for openMillis
+ * HALF_OPEN: up to halfOpenCalls trial calls go through; all succeeding closes the circuit,
+ *            any failing opens it again
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openMillis;
+    private final int halfOpenCalls;
+    private final LongSupplier clock;
+    private final LongAdder rejected = new LongAdder();
+
+    // All guarded by this
+    private State state = State.CLOSED;
+    private int next;
+    private int recorded;
+    private int failures;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold,
+                          long openMillis, int halfOpenCalls) {
+        this(windowSize, minimumCalls, failureRateThreshold, openMillis, halfOpenCalls, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold,
+                   long openMillis, int halfOpenCalls, LongSupplier clock) {
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.clock = clock;
+    }
+
+    /**
+     * @return false while the circuit is open (or all trial calls are taken); the caller must not call
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            halfOpenPermits = halfOpenCalls;
+            halfOpenSuccesses = 0;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (halfOpenPermits > 0) {
+                    halfOpenPermits--;
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /** Records the outcome of a call that {@link #tryAcquire()} allowed */
+    public synchronized void onResult(boolean success) {
+        switch (state) {
+            case HALF_OPEN:
+                if (!success) {
+                    open();
+                } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                    close();
+                }
+                break;
+            case CLOSED:
+                record(success);
+                if (recorded >= minimumCalls && failures * 100.0 >= failureRateThreshold * recorded) {
+                    open();
+                }
+                break;
+            default:
+                break; // Late result of a call made before the circuit opened
+        }
+    }
+
+    /** Gives back a permit for a call that was allowed but never made */
+    public synchronized void cancel() {
+        if (state == State.HALF_OPEN) {
+            halfOpenPermits++;
+        }
+    }
+
+    private void record(boolean success) {
+        if (recorded == window.length) {
+            if (!window[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[next] = success;
+        if (!success) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+    }
+
+    /** Milliseconds until trial calls are allowed, 0 unless the circuit is open */
+    public synchronized long getRetryAfterMillis() {
+        return state == State.OPEN ? Math.max(0, openedAt + openMillis - clock.getAsLong()) : 0;
+    }
+
+    public synchronized State getState() { return state; }
+
+    /** Calls refused because the circuit was open */
+    public long getRejectedCount() { return rejected.sum(); }
+}
@@ -0,0 +1,186 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Daraja Connection Warmer - Makes the first pushes after a deploy as fast as the rest
+ *
+ * A fresh instance has no access tokens, no pooled connections and no TLS sessions, so
+ * its first pushes pay for an OAuth call, DNS lookups and full TLS handshakes on top of
+ * the push itself. Before the application takes traffic, every tenant:
+ * - fetches its access token (which also opens the first connection and TLS session)
+ * - with HTTP/1.1, then sends mpesa.http.warmup.connections concurrent HEAD requests to
+ *   mpesa.base-url, which open further pooled connections resuming that TLS session
+ * With HTTP/2 all requests to a host are multiplexed onto a single connection, so the one
+ * opened by the token fetch is all there is to warm up and no HEAD requests are sent.
+ * Startup waits for this at most mpesa.http.warmup.timeout-millis; failures are recorded
+ * in the audit log and the application starts anyway.
+ *
+ * Pooled connections are closed after the HttpClient's idle timeout (and by load
+ * balancers along the way), so every mpesa.http.keep-alive-probe-seconds the tenants
+ * without a single Daraja call since the last check get a HEAD probe. Busy tenants keep
+ * their connections open by themselves and are left alone. Tenants added by a reload of
+ * the tenant file are warmed up on the next check.
+ */
+@Component
+public class DarajaConnectionWarmer {
+
+    private final MpesaConfig config;
+    private final TenantRegistry tenants;
+    private final AuditLog auditLog;
+    private final ScheduledExecutorService prober = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mpesa-http-keepalive");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Request count of each known tenant's client at the last check */
+    private final Map<Tenant, Long> lastRequestCounts = new ConcurrentHashMap<>();
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder probeFailures = new LongAdder();
+
+    public DarajaConnectionWarmer(MpesaConfig config, TenantRegistry tenants, AuditLog auditLog) {
+        this.config = config;
+        this.tenants = tenants;
+        this.auditLog = auditLog;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (config.isHttpWarmupEnabled()) {
+            warmUp();
+        }
+        long interval = config.getHttpKeepAliveProbeSeconds();
+        if (interval > 0) {
+            prober.scheduleWithFixedDelay(this::probeIdleTenants, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Warms up every tenant concurrently and waits for them, up to the warm-up timeout.
+     */
+    public void warmUp() {
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> warming = new ArrayList<>();
+        for (Tenant tenant : tenants.all()) {
+            warming.add(warmUp(tenant));
+        }
+        try {
+            CompletableFuture.allOf(warming.toArray(CompletableFuture[]::new))
+                    .get(config.getHttpWarmupTimeoutMillis(), TimeUnit.MILLISECONDS);
+            auditLog.info("http.warmup.done", null, null, 0, warming.size() + " tenant(s) in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        } catch (TimeoutException e) {
+            auditLog.warn("http.warmup.timeout", null, null, 0, "still running after "
+                    + config.getHttpWarmupTimeoutMillis() + " ms, starting anyway");
+        } catch (ExecutionException e) {
+            auditLog.warn("http.warmup.failed", null, null, 0, String.valueOf(e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fetches the tenant's token, then opens the extra HTTP/1.1 connections. Never completes
+     * exceptionally: failures are logged, a cold tenant still works.
+     */
+    CompletableFuture<Void> warmUp(Tenant tenant) {
+        lastRequestCounts.put(tenant, requestCount(tenant));
+        return tenant.getTokenManager().getAccessTokenAsync()
+                .handle((token, error) -> {
+                    if (error != null) {
+                        auditLog.warn("http.warmup.failed", tenant.getId(), null, 0,
+                                "token fetch failed: " + error.getMessage());
+                    }
+                    return null;
+                })
+                .thenCompose(ignored -> {
+                    int connections = tenant.getHttpClient().version() == HttpClient.Version.HTTP_1_1
+                            ? Math.max(0, config.getHttpWarmupConnections()) : 0;
+                    CompletableFuture<?>[] probing = new CompletableFuture<?>[connections];
+                    for (int i = 0; i < connections; i++) {
+                        probing[i] = probe(tenant);
+                    }
+                    return CompletableFuture.allOf(probing);
+                });
+    }
+
+    /**
+     * One keep-alive check: probes tenants that were idle since the last one and warms up
+     * tenants it hasn't seen yet.
+     */
+    void probeIdleTenants() {
+        try {
+            List<Tenant> current = new ArrayList<>(tenants.all());
+            lastRequestCounts.keySet().retainAll(current);
+            for (Tenant tenant : current) {
+                Long last = lastRequestCounts.get(tenant);
+                if (last == null) {
+                    warmUp(tenant);
+                } else if (last == requestCount(tenant)) {
+                    probe(tenant);
+                }
+                // Counted after the probe, so the probe itself doesn't look like traffic
+                lastRequestCounts.put(tenant, requestCount(tenant));
+            }
+        } catch (RuntimeException e) {
+            auditLog.warn("http.probe.failed", null, null, 0, e.getMessage());
+        }
+    }
+
+    /**
+     * HEAD of the probe path. Any HTTP response means the connection is alive.
+     */
+    private CompletableFuture<Void> probe(Tenant tenant) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(config.getBaseUrl() + config.getHttpProbePath()))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody());
+        if (config.getHttpRequestTimeoutMillis() > 0) {
+            request.timeout(Duration.ofMillis(config.getHttpRequestTimeoutMillis()));
+        }
+        return tenant.getHttpClient().sendAsync(request.build(), HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> {
+                    if (error != null) {
+                        probeFailures.increment();
+                    } else {
+                        probes.increment();
+                    }
+                    return null;
+                });
+    }
+
+    private static long requestCount(Tenant tenant) {
+        return tenant.getHttpClient() instanceof MeteredHttpClient http ? http.getRequestCount() : -1;
+    }
+
+    /** Probes answered with any HTTP response */
+    public long getProbeCount() { return probes.sum(); }
+
+    /** Probes that failed to connect or timed out */
+    public long getProbeFailureCount() { return probeFailures.sum(); }
+
+    @PreDestroy
+    public void shutdown() {
+        prober.shutdownNow();
+    }
+}
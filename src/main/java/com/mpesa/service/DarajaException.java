@@ -0,0 +1,127 @@
+package com.mpesa.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpesa.dto.DarajaErrorResponse;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Typed failure of a call to Safaricom
+ *
+ * The Kind tells callers (and RetryPolicy) whether trying again can help, and whether
+ * Safaricom might already have acted on the request.
+ */
+public class DarajaException extends RuntimeException {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    public enum Kind {
+        /** Safaricom refused the request as invalid (4xx); sending it again won't help */
+        REJECTED,
+        /** Safaricom answered 5xx/429, or no connection could be made; nothing was accepted */
+        TRANSIENT,
+        /** The access token was refused (401); a fresh token fixes it */
+        UNAUTHORIZED,
+        /** The request was sent but no answer came back; Safaricom may or may not have accepted it */
+        OUTCOME_UNKNOWN,
+        /** Refused locally by the circuit breaker or concurrency limit; nothing was sent */
+        UNAVAILABLE
+    }
+
+    private final Kind kind;
+    private final int httpStatus;
+    private final String errorCode;
+    private final String requestId;
+
+    public DarajaException(Kind kind, String message, int httpStatus, String errorCode, String requestId,
+                           Throwable cause) {
+        super(message, cause);
+        this.kind = kind;
+        this.httpStatus = httpStatus;
+        this.errorCode = errorCode;
+        this.requestId = requestId;
+    }
+
+    /**
+     * Builds the error for a non-200 reply, reading Safaricom's error body when there is one.
+     */
+    public static DarajaException fromResponse(int httpStatus, String body) {
+        DarajaErrorResponse error = null;
+        try {
+            error = OBJECT_MAPPER.readValue(body, DarajaErrorResponse.class);
+        } catch (Exception e) {
+            // Not JSON (e.g. a gateway HTML page) - status alone decides
+        }
+        String message = error != null && error.errorMessage() != null
+                ? error.errorMessage()
+                : "Safaricom returned HTTP " + httpStatus;
+        return new DarajaException(kindForStatus(httpStatus), message, httpStatus,
+                error != null ? error.errorCode() : null, error != null ? error.requestId() : null, null);
+    }
+
+    public static Kind kindForStatus(int httpStatus) {
+        if (httpStatus == 401) {
+            return Kind.UNAUTHORIZED;
+        }
+        if (httpStatus == 429 || httpStatus >= 500) {
+            return Kind.TRANSIENT;
+        }
+        return Kind.REJECTED;
+    }
+
+    /**
+     * Maps an HTTP client failure onto a Kind. Other exceptions are returned unchanged.
+     *
+     * @param idempotent whether the request may safely be sent twice (true for OAuth, false
+     *                   for STK Push: a request that timed out after being sent may still
+     *                   have prompted the customer)
+     */
+    public static Throwable classify(Throwable error, boolean idempotent) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof DarajaException) {
+            return cause;
+        }
+        if (cause instanceof HttpConnectTimeoutException || cause instanceof ConnectException) {
+            return new DarajaException(Kind.TRANSIENT, "Could not connect to Safaricom: " + cause.getMessage(),
+                    0, null, null, cause);
+        }
+        if (cause instanceof HttpTimeoutException || cause instanceof IOException) {
+            Kind kind = idempotent ? Kind.TRANSIENT : Kind.OUTCOME_UNKNOWN;
+            String what = cause instanceof HttpTimeoutException ? "timed out" : "failed";
+            return new DarajaException(kind, "Safaricom request " + what + ": " + cause.getMessage(),
+                    0, null, null, cause);
+        }
+        return cause;
+    }
+
+    /** Strips CompletionException/ExecutionException wrappers added by futures */
+    public static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /** Whether sending the same request again may succeed and cannot cause a duplicate */
+    public boolean isRetryable() {
+        return kind == Kind.TRANSIENT || kind == Kind.UNAUTHORIZED;
+    }
+
+    public Kind getKind() { return kind; }
+
+    /** HTTP status from Safaricom, 0 if no response was received */
+    public int getHttpStatus() { return httpStatus; }
+
+    /** Safaricom's errorCode (e.g. "400.002.02"), null if none */
+    public String getErrorCode() { return errorCode; }
+
+    /** Safaricom's requestId for support tickets, null if none */
+    public String getRequestId() { return requestId; }
+}
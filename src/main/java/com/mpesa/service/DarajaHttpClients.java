@@ -0,0 +1,99 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SSLContext;
+import java.net.http.HttpClient;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Daraja HTTP Clients - How every call to Safaricom gets its HttpClient
+ *
+ * Each tenant gets its own client, and so its own connection pool, but all of them share:
+ * - one executor for completing async requests: a virtual thread per task, or a fixed
+ *   pool of mpesa.http.executor-threads daemon threads (instead of the JDK's default
+ *   cached pool per client)
+ * - the JVM's default TLS context, and with it the TLS session cache, so a connection
+ *   opened by one tenant lets the others resume the session instead of a full handshake
+ * - the HTTP version policy (mpesa.http.version) and connect timeout
+ *
+ * Clients are returned as MeteredHttpClient, which counts requests and new TLS
+ * connections, so the share of requests served on a reused connection can be watched.
+ */
+@Component
+public class DarajaHttpClients {
+
+    private final MpesaConfig config;
+    private final ExecutorService executor;
+
+    public DarajaHttpClients(MpesaConfig config) {
+        this.config = config;
+        int threads = config.getHttpExecutorThreads();
+        if (threads > 0) {
+            AtomicInteger count = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "mpesa-http-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mpesa-http-", 1).factory());
+        }
+    }
+
+    /**
+     * A new client with its own connection pool, for one tenant.
+     */
+    public MeteredHttpClient create() {
+        try {
+            return new MeteredHttpClient(newBuilder(config).executor(executor),
+                    SSLContext.getDefault());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No default TLS context available", e);
+        }
+    }
+
+    /**
+     * Client for code running outside the TenantRegistry (uses the JDK's own executor).
+     */
+    static HttpClient newHttpClient(MpesaConfig config) {
+        return newBuilder(config).build();
+    }
+
+    /** Builder with mpesa.http.version and mpesa.http.connect-timeout-millis applied */
+    static HttpClient.Builder newBuilder(MpesaConfig config) {
+        HttpClient.Builder builder = HttpClient.newBuilder().version(version(config.getHttpVersion()));
+        if (config.getHttpConnectTimeoutMillis() > 0) {
+            builder.connectTimeout(Duration.ofMillis(config.getHttpConnectTimeoutMillis()));
+        }
+        return builder;
+    }
+
+    /**
+     * Parses mpesa.http.version; accepts HTTP_2, HTTP_1_1 and the spellings HTTP/2 and HTTP/1.1.
+     */
+    static HttpClient.Version version(String value) {
+        if (value == null || value.isBlank()) {
+            return HttpClient.Version.HTTP_2;
+        }
+        String name = value.trim().toUpperCase(Locale.ROOT).replace('/', '_').replace('.', '_');
+        try {
+            return HttpClient.Version.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid mpesa.http.version '" + value
+                    + "' (expected HTTP_2 or HTTP_1_1)");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,136 @@
+package com.mpesa.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Hashed Timing Wheel - O(1) scheduling for large numbers of coarse timeouts
+ *
+ * Time is divided into ticks of tickMillis; the wheel has wheelSize buckets and
+ * a timeout lands in bucket (deadlineTick % wheelSize) with a count of full
+ * rotations still to wait. Scheduling is a lock-free queue append from any
+ * thread; a single worker moves new timeouts into their bucket and fires the
+ * expired ones once per tick. Precision is one tick, which is plenty for delays
+ * measured in seconds.
+ *
+ * Timeouts cannot be cancelled: the handler is expected to check whether the
+ * item is still relevant when it fires.
+ *
+ * @param <T> the scheduled item
+ */
+public class HashedTimingWheel<T> implements AutoCloseable {
+
+    private final long tickNanos;
+    private final int mask;
+    private final List<List<Timeout<T>>> buckets;
+    private final Queue<Timeout<T>> incoming = new ConcurrentLinkedQueue<>();
+    private final Consumer<T> handler;
+    private final AtomicInteger size = new AtomicInteger();
+    private final long startNanos;
+    private final Thread worker;
+
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * @param wheelSize number of buckets, rounded up to a power of two
+     * @param handler   invoked on the worker thread for every expired item
+     */
+    public HashedTimingWheel(String name, long tickMillis, int wheelSize, Consumer<T> handler) {
+        int buckets = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.mask = buckets - 1;
+        this.buckets = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            this.buckets.add(new ArrayList<>());
+        }
+        this.handler = handler;
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedules the item to be handed to the handler after the delay. Thread-safe, O(1).
+     */
+    public void schedule(T item, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startNanos + unit.toNanos(delay);
+        incoming.add(new Timeout<>(item, deadline));
+        size.incrementAndGet();
+    }
+
+    /** Items scheduled but not yet fired */
+    public int size() {
+        return size.get();
+    }
+
+    private void run() {
+        while (running) {
+            long tickDeadline = tickNanos * (tick + 1);
+            long sleepNanos = tickDeadline - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            transferIncoming();
+            expire(buckets.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    private void transferIncoming() {
+        Timeout<T> timeout;
+        while ((timeout = incoming.poll()) != null) {
+            long deadlineTick = timeout.deadlineNanos / tickNanos;
+            timeout.remainingRounds = (deadlineTick - tick) / buckets.size();
+            // Already overdue: fire on the current tick rather than a past bucket
+            long targetTick = Math.max(deadlineTick, tick);
+            buckets.get((int) (targetTick & mask)).add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout<T>> bucket) {
+        int kept = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            Timeout<T> timeout = bucket.get(i);
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                bucket.set(kept++, timeout);
+                continue;
+            }
+            size.decrementAndGet();
+            try {
+                handler.accept(timeout.item);
+            } catch (RuntimeException e) {
+                System.err.println(worker.getName() + ": timeout handler failed: " + e.getMessage());
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private static final class Timeout<T> {
+        final T item;
+        final long deadlineNanos;
+        long remainingRounds;
+
+        Timeout(T item, long deadlineNanos) {
+            this.item = item;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.mpesa.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical Timing Wheel - O(1) scheduling for deadlines days or months away
+ *
+ * The HashedTimingWheel keeps far timeouts in its single wheel and counts their rotations
+ * down on every pass, so each tick touches every item in its bucket. Here a stack of
+ * wheels covers the range instead: level 0 has wheelSize buckets of one tick, level 1
+ * wheelSize buckets of wheelSize ticks, and so on. An item goes to the lowest level whose
+ * span covers its deadline; whenever a lower level completes a rotation, the next bucket
+ * of the level above is emptied into the levels below (cascading). Scheduling is a
+ * lock-free queue append, a tick only touches the items that are due, and every item is
+ * moved at most once per level.
+ *
+ * Deadlines are wall-clock epoch milliseconds, so deadlines restored from disk after a
+ * restart keep their meaning; anything already due fires on the next tick. Deadlines
+ * beyond the top level's span wait in its farthest bucket and are placed again when it
+ * cascades. Items never fire before their deadline and at most one tick after it.
+ *
+ * Like the HashedTimingWheel, timeouts cannot be cancelled: the handler is expected to
+ * check whether the item is still relevant when it fires.
+ *
+ * @param <T> the scheduled item
+ */
+public class HierarchicalTimingWheel<T> implements AutoCloseable {
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final List<List<List<Timeout<T>>>> levels;
+    private final Queue<Timeout<T>> incoming = new ConcurrentLinkedQueue<>();
+    private final Consumer<T> handler;
+    private final AuditLog auditLog;
+    private final AtomicInteger size = new AtomicInteger();
+    private final Thread worker;
+
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * @param wheelSize buckets per level, rounded up to a power of two
+     * @param levels    number of wheels; they span tickMillis x wheelSize^levels together
+     * @param handler   invoked on the worker thread for every expired item
+     * @param auditLog  where handler failures are recorded (timer.handler.failed)
+     */
+    public HierarchicalTimingWheel(String name, long tickMillis, int wheelSize, int levels, Consumer<T> handler,
+                                   AuditLog auditLog) {
+        int buckets = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.tickMillis = Math.max(1, tickMillis);
+        this.bits = Integer.numberOfTrailingZeros(buckets);
+        this.mask = buckets - 1;
+        // Keep the top level's span within a long
+        int levelCount = Math.max(1, Math.min(levels, 62 / bits));
+        this.levels = new ArrayList<>(levelCount);
+        for (int level = 0; level < levelCount; level++) {
+            List<List<Timeout<T>>> wheel = new ArrayList<>(buckets);
+            for (int i = 0; i < buckets; i++) {
+                wheel.add(new ArrayList<>());
+            }
+            this.levels.add(wheel);
+        }
+        this.handler = handler;
+        this.auditLog = auditLog;
+        this.tick = System.currentTimeMillis() / this.tickMillis;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedules the item to be handed to the handler at the deadline. Thread-safe, O(1).
+     */
+    public void schedule(T item, long deadlineEpochMillis) {
+        // Rounded up, so an item never fires before its deadline
+        long deadlineTick = Math.floorDiv(deadlineEpochMillis + tickMillis - 1, tickMillis);
+        incoming.add(new Timeout<>(item, deadlineTick));
+        size.incrementAndGet();
+    }
+
+    /** Items scheduled but not yet fired */
+    public int size() {
+        return size.get();
+    }
+
+    private void run() {
+        while (running) {
+            long sleepMillis = tick * tickMillis - System.currentTimeMillis();
+            if (sleepMillis > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            transferIncoming();
+            cascade();
+            expire(levels.get(0).get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    private void transferIncoming() {
+        Timeout<T> timeout;
+        while ((timeout = incoming.poll()) != null) {
+            place(timeout);
+        }
+    }
+
+    /**
+     * Empties the bucket of every level whose lower levels just completed a rotation,
+     * top level first, so items can fall through several levels in one tick.
+     */
+    private void cascade() {
+        for (int level = levels.size() - 1; level > 0; level--) {
+            int shift = bits * level;
+            if ((tick & ((1L << shift) - 1)) != 0) {
+                continue;
+            }
+            List<Timeout<T>> bucket = levels.get(level).get((int) ((tick >>> shift) & mask));
+            if (bucket.isEmpty()) {
+                continue;
+            }
+            List<Timeout<T>> moving = new ArrayList<>(bucket);
+            bucket.clear();
+            for (Timeout<T> timeout : moving) {
+                place(timeout);
+            }
+        }
+    }
+
+    /** Puts the timeout into the lowest level whose span reaches its deadline */
+    private void place(Timeout<T> timeout) {
+        long deadline = timeout.deadlineTick;
+        if (deadline <= tick) {
+            // Due or overdue: fire on the current tick rather than a past bucket
+            levels.get(0).get((int) (tick & mask)).add(timeout);
+            return;
+        }
+        long delta = deadline - tick;
+        for (int level = 0; level < levels.size(); level++) {
+            if ((delta >>> (bits * (level + 1))) == 0) {
+                levels.get(level).get((int) ((deadline >>> (bits * level)) & mask)).add(timeout);
+                return;
+            }
+        }
+        // Beyond the top level: park in its farthest bucket until that cascades
+        int top = levels.size() - 1;
+        long farthest = tick + (1L << (bits * levels.size())) - 1;
+        levels.get(top).get((int) ((farthest >>> (bits * top)) & mask)).add(timeout);
+    }
+
+    private void expire(List<Timeout<T>> bucket) {
+        for (Timeout<T> timeout : bucket) {
+            size.decrementAndGet();
+            try {
+                handler.accept(timeout.item);
+            } catch (RuntimeException e) {
+                auditLog.warn("timer.handler.failed", null, worker.getName(), 0, e.getMessage());
+            }
+        }
+        bucket.clear();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private static final class Timeout<T> {
+        final T item;
+        final long deadlineTick;
+
+        Timeout(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.mpesa.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.Mpesamapping;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency Cache - Suppresses duplicate STK Pushes
+ *
+ * Double taps and client retries would otherwise send the customer a second PIN prompt.
+ * Each push is identified by:
+ * - the Idempotency-Key request header, remembered for mpesa.idempotency.key-ttl-seconds, or
+ * - without a header, a phone + amount + reference fingerprint, remembered for
+ *   mpesa.idempotency.fingerprint-window-seconds
+ *
+ * Keys and fingerprints are scoped to the tenant, so two merchants can't collide.
+ *
+ * Duplicates that arrive while the first push is still in flight attach to the same
+ * upstream call; later duplicates get the cached response. Only pushes Safaricom
+ * accepted (ResponseCode "0") stay cached, so a failed attempt can be retried.
+ * A key sent again with a different phone, amount or reference is refused with
+ * {@link IdempotencyKeyReusedException} rather than answered with another push's response.
+ *
+ * The cache holds at most mpesa.idempotency.max-entries; when full, new pushes go
+ * straight through uncached until the sweeper has removed expired entries.
+ */
+@Service
+public class IdempotencyCache {
+
+    private static final long SWEEP_INTERVAL_SECONDS = 30;
+
+    private final MpesaConfig config;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mpesa-idempotency-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+
+    public IdempotencyCache(MpesaConfig config) {
+        this.config = config;
+        sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Runs a push for the default tenant; see {@link #execute(String, String, Mpesamapping, Supplier)}.
+     */
+    public CompletableFuture<String> execute(String idempotencyKey, Mpesamapping mapping,
+                                             Supplier<CompletableFuture<String>> push) {
+        return execute(null, idempotencyKey, mapping, push);
+    }
+
+    /**
+     * Runs the push unless an equivalent one is in flight or was recently accepted.
+     *
+     * @param tenantId       tenant the push is for (null for the default tenant)
+     * @param idempotencyKey value of the Idempotency-Key header, or null
+     * @param mapping        the push request, used for the fingerprint when there is no key
+     * @param push           performs the actual push
+     * @throws IdempotencyKeyReusedException if the key is cached for a different request
+     */
+    public CompletableFuture<String> execute(String tenantId, String idempotencyKey, Mpesamapping mapping,
+                                             Supplier<CompletableFuture<String>> push) {
+        if (!config.isIdempotencyEnabled()) {
+            return push.get();
+        }
+
+        boolean explicitKey = idempotencyKey != null && !idempotencyKey.isBlank();
+        String scope = tenantId == null ? "" : tenantId + '|';
+        String fingerprint = mapping.getPhone() + ':' + mapping.getAmount() + ':' + mapping.getReference();
+        String key = explicitKey ? scope + "key:" + idempotencyKey.trim() : scope + "fp:" + fingerprint;
+        long ttlSeconds = explicitKey ? config.getIdempotencyKeyTtlSeconds() : config.getIdempotencyFingerprintWindowSeconds();
+
+        long now = System.currentTimeMillis();
+        Entry existing = entries.get(key);
+        if (existing != null && !existing.isExpired(now)) {
+            return replay(existing, fingerprint, idempotencyKey);
+        }
+        if (entries.size() >= config.getIdempotencyMaxEntries()) {
+            bypassed.increment();
+            return push.get();
+        }
+
+        Entry mine = new Entry(new CompletableFuture<>(), fingerprint, now + TimeUnit.SECONDS.toMillis(ttlSeconds));
+        Entry winner = entries.compute(key, (k, current) ->
+                current == null || current.isExpired(now) ? mine : current);
+        if (winner != mine) {
+            return replay(winner, fingerprint, idempotencyKey);
+        }
+
+        misses.increment();
+        CompletableFuture<String> upstream;
+        try {
+            upstream = push.get();
+        } catch (RuntimeException e) {
+            upstream = CompletableFuture.failedFuture(e);
+        }
+        upstream.whenComplete((response, error) -> {
+            if (error != null || !isAccepted(response)) {
+                entries.remove(key, mine);
+            }
+            if (error != null) {
+                mine.response.completeExceptionally(error);
+            } else {
+                mine.response.complete(response);
+            }
+        });
+        return mine.response;
+    }
+
+    private CompletableFuture<String> replay(Entry entry, String fingerprint, String idempotencyKey) {
+        if (!entry.fingerprint.equals(fingerprint)) {
+            throw new IdempotencyKeyReusedException(idempotencyKey.trim());
+        }
+        hits.increment();
+        return entry.response;
+    }
+
+    private boolean isAccepted(String response) {
+        try {
+            return "0".equals(objectMapper.readTree(response).path("ResponseCode").asText());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    void sweep() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.isExpired(now) && entry.response.isDone());
+    }
+
+    /** Requests answered from the cache or attached to an in-flight push */
+    public long getHitCount() { return hits.sum(); }
+
+    /** Requests that triggered an upstream push */
+    public long getMissCount() { return misses.sum(); }
+
+    /** Requests not deduplicated because the cache was full */
+    public long getBypassedCount() { return bypassed.sum(); }
+
+    /** Entries currently cached */
+    public int size() { return entries.size(); }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    private record Entry(CompletableFuture<String> response, String fingerprint, long expiresAt) {
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
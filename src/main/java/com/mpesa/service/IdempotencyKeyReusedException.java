@@ -0,0 +1,17 @@
+package com.mpesa.service;
+
+/**
+ * Thrown when an Idempotency-Key is sent again with a different phone, amount or reference
+ * than the push it was first used for. Nothing was sent to Safaricom.
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    private final String idempotencyKey;
+
+    public IdempotencyKeyReusedException(String idempotencyKey) {
+        super("Idempotency-Key " + idempotencyKey + " was already used for a different request");
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String getIdempotencyKey() { return idempotencyKey; }
+}
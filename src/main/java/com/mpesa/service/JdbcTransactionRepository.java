@@ -0,0 +1,424 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.TransactionStatus;
+import com.mpesa.dto.TransactionView;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JDBC Transaction Repository - Write-behind persistence of transactions
+ *
+ * save() only puts the transaction into a bounded buffer; a single writer thread turns
+ * the buffer into batched JDBC statements, so neither initiateStkPush nor the callback
+ * path waits for the database:
+ * - a batch is written once mpesa.persistence.batch-size transactions are buffered, or
+ *   mpesa.persistence.flush-interval-millis after its first one arrived, whichever is first
+ * - saves of the same transaction within a batch are merged, and the batch is written as
+ *   batched UPDATEs plus one batched INSERT for new rows, with a single commit
+ * - a PENDING save never overwrites a settled row, so saves may arrive in any order
+ * - when the buffer (mpesa.persistence.buffer-capacity) is full, save() blocks for up to
+ *   mpesa.persistence.offer-timeout-millis, slowing producers down to what the database
+ *   sustains; after that the transaction is dropped and counted (the callback journal
+ *   still has every result)
+ *
+ * The default URL is an embedded H2 file database, so nothing has to be installed; any
+ * database with a JDBC driver can be used instead.
+ */
+public class JdbcTransactionRepository implements TransactionRepository {
+
+    static final String TABLE = "mpesa_transaction";
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+            + "checkout_request_id VARCHAR(64) PRIMARY KEY, "
+            + "merchant_request_id VARCHAR(64), "
+            + "status VARCHAR(16) NOT NULL, "
+            + "phone VARCHAR(16), "
+            + "amount INT, "
+            + "result_code INT, "
+            + "receipt VARCHAR(32), "
+            + "created_at BIGINT, "
+            + "settled_at BIGINT)";
+
+    private static final String COLUMNS = "checkout_request_id, merchant_request_id, status, phone, amount, "
+            + "result_code, receipt, created_at, settled_at";
+
+    private static final String INSERT = "INSERT INTO " + TABLE + " (" + COLUMNS + ") "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /** A PENDING save only fills in push details: the row may already hold the callback */
+    private static final String UPDATE_PENDING = "UPDATE " + TABLE + " SET "
+            + "merchant_request_id = COALESCE(merchant_request_id, ?), phone = COALESCE(phone, ?), "
+            + "amount = COALESCE(amount, ?), created_at = ? WHERE checkout_request_id = ?";
+
+    /** A settled save wins over PENDING and keeps the push details already stored */
+    private static final String UPDATE_SETTLED = "UPDATE " + TABLE + " SET "
+            + "status = ?, result_code = ?, receipt = ?, settled_at = ?, "
+            + "phone = COALESCE(phone, ?), amount = COALESCE(amount, ?) WHERE checkout_request_id = ?";
+
+    private static final String SELECT = "SELECT " + COLUMNS + " FROM " + TABLE + " WHERE checkout_request_id = ?";
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final long offerTimeoutMillis;
+    private final BlockingQueue<TransactionView> buffer;
+    private final Connection readConnection;
+    private final Thread writer;
+
+    private final AuditLog auditLog;
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private long saved;      // guarded by this; transactions accepted into the buffer
+    private long processed;  // guarded by this; transactions written, or given up on
+    private volatile boolean running = true;
+
+    public JdbcTransactionRepository(MpesaConfig config, AuditLog auditLog) throws SQLException {
+        this.auditLog = auditLog;
+        this.url = config.getPersistenceJdbcUrl();
+        this.username = config.getPersistenceUsername();
+        this.password = config.getPersistencePassword();
+        this.batchSize = Math.max(1, config.getPersistenceBatchSize());
+        this.flushIntervalMillis = Math.max(1, config.getPersistenceFlushIntervalMillis());
+        this.offerTimeoutMillis = Math.max(0, config.getPersistenceOfferTimeoutMillis());
+        this.buffer = new ArrayBlockingQueue<>(Math.max(batchSize, config.getPersistenceBufferCapacity()));
+
+        this.readConnection = connect();
+        try (Statement statement = readConnection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+        }
+
+        writer = new Thread(this::runWriter, "mpesa-transaction-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(url, username, password);
+    }
+
+    /**
+     * Buffers the transaction for the writer thread; blocks only while the buffer is full.
+     */
+    @Override
+    public void save(TransactionView transaction) {
+        try {
+            // Counted first, so flush() never sees a transaction written before it was counted
+            synchronized (this) {
+                saved++;
+            }
+            if (buffer.offer(transaction, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dropped.increment();
+        markProcessed(1);
+    }
+
+    /**
+     * Reads the stored state. Transactions still in the buffer are not visible yet; the
+     * TransactionStore answers for those from memory.
+     */
+    @Override
+    public TransactionView find(String checkoutRequestId) {
+        synchronized (readConnection) {
+            try (PreparedStatement select = readConnection.prepareStatement(SELECT)) {
+                select.setString(1, checkoutRequestId);
+                try (ResultSet row = select.executeQuery()) {
+                    return row.next() ? toView(row) : null;
+                }
+            } catch (SQLException e) {
+                auditLog.warn("transaction.lookup.failed", null, checkoutRequestId, 0, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Waits until everything saved before this call has been written (or dropped).
+     *
+     * @return false if that took longer than timeoutMillis
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            long target = saved;
+            while (processed < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    private void runWriter() {
+        List<TransactionView> batch = new ArrayList<>(batchSize);
+        Connection connection = null;
+        while (running || !buffer.isEmpty()) {
+            try {
+                TransactionView first = poll(TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis));
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Fill the batch until it is full or the oldest transaction has waited long enough
+                long flushAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < batchSize) {
+                    if (buffer.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = flushAt - System.nanoTime();
+                    TransactionView next = remaining > 0 && running ? poll(remaining) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                if (connection == null || connection.isClosed()) {
+                    connection = connect();
+                    connection.setAutoCommit(false);
+                }
+                writeBatch(connection, batch);
+            } catch (SQLException e) {
+                failed.add(batch.size());
+                System.err.println("❌ Transaction write of " + batch.size() + " rows failed: " + e.getMessage());
+                connection = rollbackOrDiscard(connection);
+            } finally {
+                markProcessed(batch.size());
+                batch.clear();
+            }
+        }
+        closeQuietly(connection);
+    }
+
+    /** Next buffered transaction; an interrupt stops the writer once the buffer is written */
+    private TransactionView poll(long timeoutNanos) {
+        try {
+            return buffer.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            running = false;
+            return buffer.poll();
+        }
+    }
+
+    /**
+     * Writes one batch in one database transaction: the batch is first merged per
+     * CheckoutRequestID, then existing rows are updated in two JDBC batches and the
+     * rows no update touched are inserted in a third. Plain INSERT/UPDATE keeps this
+     * portable; with a single writer thread no other writer can race between them.
+     */
+    private void writeBatch(Connection connection, List<TransactionView> batch) throws SQLException {
+        Map<String, TransactionView> merged = new LinkedHashMap<>();
+        for (TransactionView transaction : batch) {
+            merged.merge(transaction.checkoutRequestId(), transaction, JdbcTransactionRepository::merge);
+        }
+        List<TransactionView> pending = new ArrayList<>();
+        List<TransactionView> settled = new ArrayList<>();
+        for (TransactionView transaction : merged.values()) {
+            (transaction.status().isSettled() ? settled : pending).add(transaction);
+        }
+
+        List<TransactionView> missing = new ArrayList<>();
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_PENDING)) {
+            for (TransactionView transaction : pending) {
+                update.setString(1, transaction.merchantRequestId());
+                update.setString(2, transaction.phone());
+                setInt(update, 3, transaction.amount());
+                setLong(update, 4, transaction.createdAt());
+                update.setString(5, transaction.checkoutRequestId());
+                update.addBatch();
+            }
+            collectMissing(pending, update, missing);
+        }
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_SETTLED)) {
+            for (TransactionView transaction : settled) {
+                update.setString(1, transaction.status().name());
+                setInt(update, 2, transaction.resultCode());
+                update.setString(3, transaction.mpesaReceiptNumber());
+                setLong(update, 4, transaction.settledAt());
+                update.setString(5, transaction.phone());
+                setInt(update, 6, transaction.amount());
+                update.setString(7, transaction.checkoutRequestId());
+                update.addBatch();
+            }
+            collectMissing(settled, update, missing);
+        }
+        if (!missing.isEmpty()) {
+            try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                for (TransactionView transaction : missing) {
+                    bind(insert, transaction);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+        connection.commit();
+        written.add(batch.size());
+        batches.increment();
+    }
+
+    /** Runs the update batch and adds the transactions whose row doesn't exist yet */
+    private static void collectMissing(List<TransactionView> transactions, PreparedStatement update,
+                                       List<TransactionView> missing) throws SQLException {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        int[] counts = update.executeBatch();
+        for (int i = 0; i < counts.length; i++) {
+            // SUCCESS_NO_INFO means the driver can't tell; assume the row exists
+            if (counts[i] == 0) {
+                missing.add(transactions.get(i));
+            }
+        }
+    }
+
+    /**
+     * Two saves of one transaction in the same batch: the settled state wins, with the
+     * push details (creation time, merchant id, phone, amount) of the PENDING one.
+     */
+    private static TransactionView merge(TransactionView first, TransactionView second) {
+        if (first.status().isSettled() && second.status().isSettled()) {
+            // A later save completes an earlier one (e.g. the receipt after a query result)
+            return second;
+        }
+        if (first.status().isSettled() == second.status().isSettled()) {
+            return first;
+        }
+        TransactionView pending = first.status().isSettled() ? second : first;
+        TransactionView settled = first.status().isSettled() ? first : second;
+        return new TransactionView(settled.checkoutRequestId(),
+                pending.merchantRequestId() != null ? pending.merchantRequestId() : settled.merchantRequestId(),
+                settled.status(),
+                pending.phone() != null ? pending.phone() : settled.phone(),
+                pending.amount() != null ? pending.amount() : settled.amount(),
+                settled.resultCode(),
+                settled.mpesaReceiptNumber(),
+                pending.createdAt(),
+                settled.settledAt());
+    }
+
+    private static void bind(PreparedStatement statement, TransactionView transaction) throws SQLException {
+        statement.setString(1, transaction.checkoutRequestId());
+        statement.setString(2, transaction.merchantRequestId());
+        statement.setString(3, transaction.status().name());
+        statement.setString(4, transaction.phone());
+        setInt(statement, 5, transaction.amount());
+        setInt(statement, 6, transaction.resultCode());
+        statement.setString(7, transaction.mpesaReceiptNumber());
+        setLong(statement, 8, transaction.createdAt());
+        setLong(statement, 9, transaction.settledAt());
+    }
+
+    private static void setInt(PreparedStatement statement, int index, Integer value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.INTEGER);
+        } else {
+            statement.setInt(index, value);
+        }
+    }
+
+    private static void setLong(PreparedStatement statement, int index, Long value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.BIGINT);
+        } else {
+            statement.setLong(index, value);
+        }
+    }
+
+    private static TransactionView toView(ResultSet row) throws SQLException {
+        return new TransactionView(
+                row.getString("checkout_request_id"),
+                row.getString("merchant_request_id"),
+                TransactionStatus.valueOf(row.getString("status")),
+                row.getString("phone"),
+                row.getObject("amount", Integer.class),
+                row.getObject("result_code", Integer.class),
+                row.getString("receipt"),
+                row.getObject("created_at", Long.class),
+                row.getObject("settled_at", Long.class));
+    }
+
+    private synchronized void markProcessed(int count) {
+        processed += count;
+        notifyAll();
+    }
+
+    /** Rolls back a failed batch; a connection that can't even do that is replaced */
+    private static Connection rollbackOrDiscard(Connection connection) {
+        if (connection == null) {
+            return null;
+        }
+        try {
+            connection.rollback();
+            return connection;
+        } catch (SQLException e) {
+            closeQuietly(connection);
+            return null;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // Nothing left to do with it
+            }
+        }
+    }
+
+    /** Transactions committed to the database */
+    public long getWrittenCount() { return written.sum(); }
+
+    /** Transactions dropped because the buffer stayed full */
+    public long getDroppedCount() { return dropped.sum(); }
+
+    /** Transactions lost to failed batch writes */
+    public long getFailedCount() { return failed.sum(); }
+
+    /** Committed batches */
+    public long getBatchCount() { return batches.sum(); }
+
+    public int getBufferDepth() { return buffer.size(); }
+
+    /**
+     * Writes what is still buffered, then closes the connections.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (readConnection) {
+            closeQuietly(readConnection);
+        }
+    }
+}
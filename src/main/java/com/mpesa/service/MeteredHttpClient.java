@@ -0,0 +1,171 @@
+package com.mpesa.service;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metered HttpClient - An HttpClient that counts its requests and new TLS connections
+ *
+ * The JDK client doesn't report whether a request went out on a pooled connection. It
+ * does create one SSLEngine per new TLS connection, through the client's SSLContext, so
+ * the client is built with an SSLContext that counts those and otherwise delegates to
+ * the real one. requests - connections is then the number of requests that reused a
+ * connection (over HTTP/2 many requests share one connection at the same time).
+ *
+ * Everything else is delegated to the wrapped client unchanged.
+ */
+public class MeteredHttpClient extends HttpClient {
+
+    private final HttpClient delegate;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+
+    /**
+     * @param builder builder with everything but the TLS context set
+     * @param tls     the TLS context connections are opened with
+     */
+    MeteredHttpClient(HttpClient.Builder builder, SSLContext tls) {
+        this.delegate = builder.sslContext(new CountingSSLContext(tls, connections)).build();
+    }
+
+    /** Requests sent, on new or reused connections */
+    public long getRequestCount() { return requests.sum(); }
+
+    /** TLS connections opened (each one a handshake, full or resumed) */
+    public long getConnectionCount() { return connections.sum(); }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        requests.increment();
+        return delegate.send(request, handler);
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        requests.increment();
+        return delegate.sendAsync(request, handler);
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                                            HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+        requests.increment();
+        return delegate.sendAsync(request, handler, pushPromiseHandler);
+    }
+
+    @Override
+    public Optional<CookieHandler> cookieHandler() { return delegate.cookieHandler(); }
+
+    @Override
+    public Optional<Duration> connectTimeout() { return delegate.connectTimeout(); }
+
+    @Override
+    public Redirect followRedirects() { return delegate.followRedirects(); }
+
+    @Override
+    public Optional<ProxySelector> proxy() { return delegate.proxy(); }
+
+    @Override
+    public SSLContext sslContext() { return delegate.sslContext(); }
+
+    @Override
+    public SSLParameters sslParameters() { return delegate.sslParameters(); }
+
+    @Override
+    public Optional<Authenticator> authenticator() { return delegate.authenticator(); }
+
+    @Override
+    public Version version() { return delegate.version(); }
+
+    @Override
+    public Optional<Executor> executor() { return delegate.executor(); }
+
+    @Override
+    public void shutdown() { delegate.shutdown(); }
+
+    @Override
+    public boolean awaitTermination(Duration duration) throws InterruptedException {
+        return delegate.awaitTermination(duration);
+    }
+
+    @Override
+    public boolean isTerminated() { return delegate.isTerminated(); }
+
+    @Override
+    public void shutdownNow() { delegate.shutdownNow(); }
+
+    @Override
+    public void close() { delegate.close(); }
+
+    /** Delegating SSLContext that counts the engines created for client connections */
+    private static final class CountingSSLContext extends SSLContext {
+        CountingSSLContext(SSLContext tls, LongAdder connections) {
+            super(new CountingSpi(tls, connections), tls.getProvider(), tls.getProtocol());
+        }
+    }
+
+    private static final class CountingSpi extends SSLContextSpi {
+        private final SSLContext tls;
+        private final LongAdder connections;
+
+        CountingSpi(SSLContext tls, LongAdder connections) {
+            this.tls = tls;
+            this.connections = connections;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom random)
+                throws KeyManagementException {
+            throw new KeyManagementException("Wraps an already initialized context");
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            connections.increment();
+            return tls.createSSLEngine(host, port);
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() { return tls.createSSLEngine(); }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() { return tls.getSocketFactory(); }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() { return tls.getServerSocketFactory(); }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() { return tls.getServerSessionContext(); }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() { return tls.getClientSessionContext(); }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() { return tls.getDefaultSSLParameters(); }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() { return tls.getSupportedSSLParameters(); }
+    }
+}
@@ -0,0 +1,122 @@
+package com.mpesa.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes the counters the services already keep (callback queue, transaction index,
+ * idempotency cache, status queries, retries, the push scheduler, scheduled pushes, the
+ * audit log, keep-alive probes and, with mpesa.persistence.type=jdbc, the transaction
+ * write-behind buffer) as Micrometer meters.
+ * Per-tenant token cache, connection and upstream guard meters are bound by the TenantRegistry,
+ * since tenants come and go on reload.
+ *
+ * The counts stay in the services; the registry reads them when it is scraped.
+ */
+@Component
+public class MpesaMeterBinder implements MeterBinder {
+
+    private final CallbackIngestor callbackIngestor;
+    private final TransactionStore transactionStore;
+    private final TransactionStatusNotifier statusNotifier;
+    private final IdempotencyCache idempotencyCache;
+    private final StkPushQueryScheduler queryScheduler;
+    private final RetryPolicy retryPolicy;
+    private final PushScheduler pushScheduler;
+    private final TransactionRepository transactionRepository;
+    private final AuditLog auditLog;
+    private final ScheduledPushService scheduledPushes;
+    private final DarajaConnectionWarmer connectionWarmer;
+
+    public MpesaMeterBinder(CallbackIngestor callbackIngestor, TransactionStore transactionStore,
+                            TransactionStatusNotifier statusNotifier, IdempotencyCache idempotencyCache,
+                            StkPushQueryScheduler queryScheduler, RetryPolicy retryPolicy,
+                            PushScheduler pushScheduler, TransactionRepository transactionRepository,
+                            AuditLog auditLog, ScheduledPushService scheduledPushes,
+                            DarajaConnectionWarmer connectionWarmer) {
+        this.callbackIngestor = callbackIngestor;
+        this.transactionStore = transactionStore;
+        this.statusNotifier = statusNotifier;
+        this.idempotencyCache = idempotencyCache;
+        this.queryScheduler = queryScheduler;
+        this.retryPolicy = retryPolicy;
+        this.pushScheduler = pushScheduler;
+        this.transactionRepository = transactionRepository;
+        this.auditLog = auditLog;
+        this.scheduledPushes = scheduledPushes;
+        this.connectionWarmer = connectionWarmer;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        gauge(registry, "mpesa.callback.queue.depth", callbackIngestor, CallbackIngestor::getQueueDepth);
+        counter(registry, "mpesa.callback.ingested", callbackIngestor, CallbackIngestor::getAcceptedCount, "outcome", "accepted");
+        counter(registry, "mpesa.callback.ingested", callbackIngestor, CallbackIngestor::getRejectedCount, "outcome", "rejected");
+        counter(registry, "mpesa.callback.ingested", callbackIngestor, CallbackIngestor::getParseFailureCount, "outcome", "unparseable");
+        counter(registry, "mpesa.callback.journal.writes", callbackIngestor, CallbackIngestor::getJournaledCount, "outcome", "success");
+        counter(registry, "mpesa.callback.journal.writes", callbackIngestor, CallbackIngestor::getJournalFailureCount, "outcome", "failure");
+
+        gauge(registry, "mpesa.transactions.tracked", transactionStore, TransactionStore::size);
+        counter(registry, "mpesa.transactions.untracked", transactionStore, TransactionStore::getUntrackedCount);
+        gauge(registry, "mpesa.transactions.waiters", statusNotifier, TransactionStatusNotifier::getWaiterCount);
+
+        gauge(registry, "mpesa.idempotency.entries", idempotencyCache, IdempotencyCache::size);
+        counter(registry, "mpesa.idempotency.lookups", idempotencyCache, IdempotencyCache::getHitCount, "result", "hit");
+        counter(registry, "mpesa.idempotency.lookups", idempotencyCache, IdempotencyCache::getMissCount, "result", "miss");
+        counter(registry, "mpesa.idempotency.lookups", idempotencyCache, IdempotencyCache::getBypassedCount, "result", "bypassed");
+
+        gauge(registry, "mpesa.query.scheduled", queryScheduler, StkPushQueryScheduler::getScheduledCount);
+        counter(registry, "mpesa.query.requests", queryScheduler, StkPushQueryScheduler::getQueriesSent, "outcome", "sent");
+        counter(registry, "mpesa.query.requests", queryScheduler, StkPushQueryScheduler::getQueriesResolved, "outcome", "resolved");
+        counter(registry, "mpesa.query.requests", queryScheduler, StkPushQueryScheduler::getQueriesFailed, "outcome", "failed");
+
+        counter(registry, "mpesa.upstream.retries", retryPolicy, RetryPolicy::getRetryCount);
+
+        for (PushScheduler.Lane lane : PushScheduler.Lane.values()) {
+            gauge(registry, "mpesa.scheduler.queue.depth", pushScheduler, s -> s.getQueued(lane),
+                    "lane", lane.name().toLowerCase());
+        }
+        gauge(registry, "mpesa.scheduler.inflight", pushScheduler, PushScheduler::getInFlight);
+        counter(registry, "mpesa.scheduler.rejected", pushScheduler, PushScheduler::getRejectedCount,
+                "reason", UpstreamUnavailableException.QUEUE_FULL);
+        counter(registry, "mpesa.scheduler.rejected", pushScheduler, PushScheduler::getExpiredCount,
+                "reason", UpstreamUnavailableException.QUEUE_TIMEOUT);
+
+        if (transactionRepository instanceof JdbcTransactionRepository jdbc) {
+            gauge(registry, "mpesa.persistence.buffer.depth", jdbc, JdbcTransactionRepository::getBufferDepth);
+            counter(registry, "mpesa.persistence.writes", jdbc, JdbcTransactionRepository::getWrittenCount, "outcome", "written");
+            counter(registry, "mpesa.persistence.writes", jdbc, JdbcTransactionRepository::getDroppedCount, "outcome", "dropped");
+            counter(registry, "mpesa.persistence.writes", jdbc, JdbcTransactionRepository::getFailedCount, "outcome", "failed");
+            counter(registry, "mpesa.persistence.batches", jdbc, JdbcTransactionRepository::getBatchCount);
+        }
+
+        gauge(registry, "mpesa.schedules.active", scheduledPushes, ScheduledPushService::getActiveCount);
+        gauge(registry, "mpesa.schedules.due", scheduledPushes, ScheduledPushService::getDueCount);
+        counter(registry, "mpesa.schedules.runs", scheduledPushes, ScheduledPushService::getDispatchedCount, "outcome", "dispatched");
+        counter(registry, "mpesa.schedules.runs", scheduledPushes, ScheduledPushService::getSkippedCount, "outcome", "skipped");
+
+        gauge(registry, "mpesa.audit.buffer.depth", auditLog, AuditLog::getBufferDepth);
+        counter(registry, "mpesa.audit.events", auditLog, AuditLog::getWrittenCount, "outcome", "written");
+        counter(registry, "mpesa.audit.events", auditLog, AuditLog::getDroppedCount, "outcome", "dropped");
+        counter(registry, "mpesa.audit.events", auditLog, AuditLog::getSampledOutCount, "outcome", "sampled_out");
+        counter(registry, "mpesa.audit.events", auditLog, AuditLog::getFailedCount, "outcome", "failed");
+
+        counter(registry, "mpesa.http.keepalive.probes", connectionWarmer, DarajaConnectionWarmer::getProbeCount, "outcome", "success");
+        counter(registry, "mpesa.http.keepalive.probes", connectionWarmer, DarajaConnectionWarmer::getProbeFailureCount, "outcome", "failure");
+    }
+
+    private static <T> void counter(MeterRegistry registry, String name, T source, ToDoubleFunction<T> count,
+                                    String... tags) {
+        FunctionCounter.builder(name, source, count).tags(tags).register(registry);
+    }
+
+    private static <T> void gauge(MeterRegistry registry, String name, T source, ToDoubleFunction<T> value,
+                                  String... tags) {
+        Gauge.builder(name, source, value).tags(tags).register(registry);
+    }
+}
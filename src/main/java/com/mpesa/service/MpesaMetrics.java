@@ -0,0 +1,92 @@
+package com.mpesa.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer timers for the Daraja integration
+ *
+ * All timers publish percentile histograms, so Prometheus can compute p50/p99 across
+ * instances (histogram_quantile over the _bucket series):
+ * - mpesa.oauth.request           OAuth token fetch (tags: shortcode, outcome, status)
+ * - mpesa.stkpush.upstream        STK Push HTTP round trip (tags: shortcode, status, response.code)
+ * - mpesa.json.encode / decode    JSON work on the hot path (tag: type)
+ * - mpesa.callback.handling       Callback receipt to listeners done (tag: result.code)
+ * - mpesa.push.to.callback        Push accepted to callback received, matched by
+ *                                 CheckoutRequestID (tags: shortcode, result.code)
+ * - mpesa.scheduler.wait          Time a push waited in the PushScheduler (tags: tenant, lane)
+ *
+ * Callers pass System.nanoTime() start marks rather than Timer.Sample objects so the
+ * async paths don't need to carry anything but a long.
+ */
+@Component
+public class MpesaMetrics {
+
+    /** Tag value for calls that failed before an HTTP status or result code existed */
+    public static final String NONE = "none";
+
+    private final MeterRegistry registry;
+
+    public MpesaMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void recordOAuth(long startNanos, String shortCode, boolean success, int status) {
+        timer("mpesa.oauth.request", "OAuth token requests to Safaricom",
+                "shortcode", shortCode != null ? shortCode : NONE,
+                "outcome", success ? "success" : "failure",
+                "status", status > 0 ? Integer.toString(status) : NONE)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordStkPush(long startNanos, String shortCode, int status, String responseCode) {
+        timer("mpesa.stkpush.upstream", "STK Push requests to Safaricom",
+                "shortcode", shortCode,
+                "status", status > 0 ? Integer.toString(status) : NONE,
+                "response.code", responseCode != null ? responseCode : NONE)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordEncode(String type, long startNanos) {
+        timer("mpesa.json.encode", "JSON encoding on the request path", "type", type)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDecode(String type, long startNanos) {
+        timer("mpesa.json.decode", "JSON decoding on the response and callback paths", "type", type)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCallbackHandling(int resultCode, long millis) {
+        timer("mpesa.callback.handling", "Callback receipt until all listeners have run",
+                "result.code", Integer.toString(resultCode))
+                .record(Duration.ofMillis(Math.max(0, millis)));
+    }
+
+    public void recordPushToCallback(String shortCode, int resultCode, long millis) {
+        timer("mpesa.push.to.callback", "STK Push acceptance until its callback arrived",
+                "shortcode", shortCode != null ? shortCode : NONE,
+                "result.code", Integer.toString(resultCode))
+                .record(Duration.ofMillis(Math.max(0, millis)));
+    }
+
+    public void recordSchedulerWait(String tenantId, String lane, long waitedNanos) {
+        timer("mpesa.scheduler.wait", "Time an STK Push waited for a dispatch slot",
+                "tenant", tenantId,
+                "lane", lane)
+                .record(waitedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** The registry caches meters by name and tags, so this is a lookup after the first call */
+    private Timer timer(String name, String description, String... tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
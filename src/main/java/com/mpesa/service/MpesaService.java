@@ -1,110 +1,285 @@
 package com.mpesa.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.mpesa.config.MpesaConfig;
 import com.mpesa.dto.Mpesamapping;
-import com.mpesa.dto.StkPushRequest;
+import com.mpesa.dto.StkPushResponse;
 import org.springframework.stereotype.Service;
 
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
-import java.util.Base64;
-import java.util.Date;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * M-Pesa Service - Handles STK Push operations
+ *
+ * Two execution styles are available (see mpesa.execution-mode):
+ * - initiateStkPush: blocking, the calling thread waits for Safaricom
+ * - initiateStkPushAsync: non-blocking, built on HttpClient.sendAsync
+ *
+ * Every push belongs to a Tenant: its shortcode, passkey and callback URL go into the
+ * request, and its token cache, upstream guard, HttpClient and rate limiter are used, so
+ * one merchant's load or failures don't reach the others. The variants without a tenant
+ * use the default tenant (the shortcode in mpesa.*).
+ *
+ * submitStkPush queues the push in the PushScheduler first, so API and bulk traffic of
+ * all tenants shares the upstream fairly; the initiate* methods send right away.
  */
 @Service
 public class MpesaService {
 
+    /** AccountReference used when the client doesn't send one */
+    private static final String DEFAULT_ACCOUNT_REFERENCE = "TestPayment";
+
+    /** Suggested wait after a push was refused by its tenant's rate limit */
+    private static final long TENANT_RATE_RETRY_AFTER_MILLIS = 1_000;
+
     private final MpesaConfig config;
+    private final TenantRegistry tenants;
+    private final TransactionStore transactionStore;
+    private final StkPasswordGenerator passwordGenerator;
+    private final StkPushRequestEncoder requestEncoder;
+    private final StkPushQueryScheduler queryScheduler;
+    private final MpesaMetrics metrics;
+    private final RetryPolicy retryPolicy;
+    private final PushScheduler pushScheduler;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final HttpClient httpClient = HttpClient.newHttpClient();
 
-    public MpesaService(MpesaConfig config) {
+    public MpesaService(MpesaConfig config, TenantRegistry tenants, TransactionStore transactionStore,
+                        StkPasswordGenerator passwordGenerator, StkPushRequestEncoder requestEncoder,
+                        StkPushQueryScheduler queryScheduler, MpesaMetrics metrics, RetryPolicy retryPolicy,
+                        PushScheduler pushScheduler) {
         this.config = config;
+        this.tenants = tenants;
+        this.transactionStore = transactionStore;
+        this.passwordGenerator = passwordGenerator;
+        this.requestEncoder = requestEncoder;
+        this.queryScheduler = queryScheduler;
+        this.metrics = metrics;
+        this.retryPolicy = retryPolicy;
+        this.pushScheduler = pushScheduler;
     }
 
     /**
-     * Get OAuth2 access token from Safaricom - DEFINITIVE FIX
+     * Get OAuth2 access token from Safaricom (served from the token cache when possible)
      */
     public String getAccessToken() throws Exception {
-        try {
-            // Clean credentials
-            String consumerKey = config.getConsumerKey().trim();
-            String consumerSecret = config.getConsumerSecret().trim();
-
-            String credentials = consumerKey + ":" + consumerSecret;
-            String encodedCredentials = Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(config.getBaseUrl() + "/oauth/v1/generate?grant_type=client_credentials"))
-                    .header("Authorization", "Basic " + encodedCredentials)
-                    .GET()
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-            System.out.println("=== OAUTH DEBUG ===");
-            System.out.println("Status: " + response.statusCode());
-            System.out.println("Response: " + response.body());
-            System.out.println("Consumer Key: " + consumerKey.substring(0, 10) + "...");
-            System.out.println("==================");
-
-            if (response.statusCode() == 400) {
-                throw new RuntimeException("CREDENTIALS EXPIRED! Get new sandbox credentials from: https://developer.safaricom.co.ke/");
-            } else if (response.statusCode() != 200) {
-                throw new RuntimeException("OAuth failed (Status: " + response.statusCode() + "): " + response.body());
-            }
+        return tenants.getDefault().getTokenManager().getAccessToken();
+    }
 
-            var jsonResponse = objectMapper.readTree(response.body());
-            if (!jsonResponse.has("access_token")) {
-                throw new RuntimeException("Invalid OAuth response: " + response.body());
-            }
+    /**
+     * Initiate STK Push payment request for the default tenant
+     */
+    public String initiateStkPush(Mpesamapping mapping) {
+        return initiateStkPush(tenants.getDefault(), mapping);
+    }
 
-            return jsonResponse.get("access_token").asText();
+    /**
+     * Initiate STK Push payment request
+     *
+     * Transient failures (5xx, 429, connection errors, an expired token) are retried
+     * within mpesa.retry.deadline-millis; see RetryPolicy.
+     */
+    public String initiateStkPush(Tenant tenant, Mpesamapping mapping) {
+        try {
+            admit(tenant);
+            byte[] jsonBody = buildStkPushBody(tenant, mapping);
+            return retryPolicy.execute(budget -> sendStkPush(tenant, mapping, jsonBody, budget));
+        } catch (Exception e) {
+            return errorJson(e);
+        }
+    }
 
+    /**
+     * Non-blocking STK Push for the default tenant
+     */
+    public CompletableFuture<String> initiateStkPushAsync(Mpesamapping mapping) {
+        return initiateStkPushAsync(tenants.getDefault(), mapping);
+    }
+
+    /**
+     * Initiate STK Push payment request without blocking the calling thread
+     *
+     * The returned future always completes normally: failures are mapped to the
+     * same error JSON as {@link #initiateStkPush(Tenant, Mpesamapping)} returns.
+     */
+    public CompletableFuture<String> initiateStkPushAsync(Tenant tenant, Mpesamapping mapping) {
+        byte[] jsonBody;
+        try {
+            admit(tenant);
+            jsonBody = buildStkPushBody(tenant, mapping);
         } catch (Exception e) {
-            System.err.println("❌ OAuth Failed: " + e.getMessage());
-            throw e;
+            return CompletableFuture.completedFuture(errorJson(e));
         }
+
+        return retryPolicy.executeAsync(budget -> tenant.getTokenManager().getAccessTokenAsync(budget)
+                        .thenCompose(token -> sendStkPushAsync(tenant, mapping,
+                                buildStkPushRequest(token, jsonBody, budget))))
+                .exceptionally(e -> errorJson(DarajaException.unwrap(e)));
     }
 
     /**
-     * Initiate STK Push payment request
+     * Queues an STK Push in the given scheduler lane and sends it, in the configured
+     * execution mode, once the scheduler dispatches it.
+     *
+     * Like initiateStkPushAsync the future always completes normally; a push the scheduler
+     * refused or dropped gets the usual error JSON with reason queue_full / queue_timeout.
      */
-    public String initiateStkPush(Mpesamapping mapping) {
+    public CompletableFuture<String> submitStkPush(Tenant tenant, PushScheduler.Lane lane, Mpesamapping mapping) {
+        return pushScheduler.submit(tenant, lane, () -> config.isAsyncExecution()
+                        ? initiateStkPushAsync(tenant, mapping)
+                        : CompletableFuture.completedFuture(initiateStkPush(tenant, mapping)))
+                .exceptionally(e -> errorJson(DarajaException.unwrap(e)));
+    }
+
+    /**
+     * Applies the tenant's STK Push rate; a push over it is refused before anything is sent.
+     */
+    private static void admit(Tenant tenant) {
+        if (!tenant.getRateLimiter().tryAcquire()) {
+            throw UpstreamUnavailableException.rateLimited(tenant.getId(), TENANT_RATE_RETRY_AFTER_MILLIS);
+        }
+    }
+
+    private byte[] buildStkPushBody(Tenant tenant, Mpesamapping mapping) throws Exception {
+        StkPasswordGenerator.StkPassword password =
+                passwordGenerator.generate(tenant.getShortCode(), tenant.getPasskey());
+
+        long start = System.nanoTime();
+        byte[] body = requestEncoder.encode(tenant.getShortCode(), tenant.getCallbackUrl(), password,
+                mapping.getAmount(), mapping.getPhone(), accountReference(mapping));
+        metrics.recordEncode("stkpush.request", start);
+        return body;
+    }
+
+    /** One blocking attempt */
+    private String sendStkPush(Tenant tenant, Mpesamapping mapping, byte[] jsonBody, RetryPolicy.Budget budget)
+            throws Exception {
+        HttpRequest request = buildStkPushRequest(tenant.getTokenManager().getAccessToken(budget), jsonBody, budget);
+        HttpClient httpClient = tenant.getHttpClient();
+        long start = System.nanoTime();
+        HttpResponse<String> response;
         try {
-            String timestamp = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
-            String password = Base64.getEncoder().encodeToString(
-                    (config.getShortCode() + config.getPasskey() + timestamp).getBytes(StandardCharsets.UTF_8)
-            );
-
-            StkPushRequest stkRequest = new StkPushRequest(
-                    config.getShortCode(), password, timestamp, "CustomerPayBillOnline",
-                    String.valueOf(mapping.getAmount()), mapping.getPhone(), config.getShortCode(),
-                    mapping.getPhone(), config.getCallbackUrl(),
-                    "TestPayment", "Payment for goods"
-            );
-
-            String jsonBody = objectMapper.writeValueAsString(stkRequest);
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(config.getBaseUrl() + "/mpesa/stkpush/v1/processrequest"))
-                    .header("Authorization", "Bearer " + getAccessToken())
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            return response.body();
+            response = tenant.getGuards().stkPush()
+                    .send(() -> httpClient.send(request, HttpResponse.BodyHandlers.ofString()));
+        } catch (Exception e) {
+            metrics.recordStkPush(start, tenant.getShortCode(), 0, null);
+            Throwable classified = DarajaException.classify(e, false);
+            throw classified instanceof Exception exception ? exception : e;
+        }
+        return handleResponse(tenant, mapping, response, start);
+    }
+
+    /** One non-blocking attempt */
+    private CompletableFuture<String> sendStkPushAsync(Tenant tenant, Mpesamapping mapping, HttpRequest request) {
+        HttpClient httpClient = tenant.getHttpClient();
+        long start = System.nanoTime();
+        return tenant.getGuards().stkPush()
+                .sendAsync(() -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()))
+                .handle((response, error) -> {
+                    if (error != null) {
+                        metrics.recordStkPush(start, tenant.getShortCode(), 0, null);
+                        throw new CompletionException(DarajaException.classify(error, false));
+                    }
+                    return handleResponse(tenant, mapping, response, start);
+                });
+    }
+
+    /**
+     * Returns the body of a 200 reply; anything else becomes a DarajaException.
+     * A 401 drops the cached token so the retry fetches a fresh one.
+     */
+    private String handleResponse(Tenant tenant, Mpesamapping mapping, HttpResponse<String> response, long start) {
+        if (response.statusCode() != 200) {
+            DarajaException error = DarajaException.fromResponse(response.statusCode(), response.body());
+            metrics.recordStkPush(start, tenant.getShortCode(), response.statusCode(), error.getErrorCode());
+            if (error.getKind() == DarajaException.Kind.UNAUTHORIZED) {
+                tenant.getTokenManager().invalidate();
+            }
+            throw error;
+        }
+        StkPushResponse accepted = recordAccepted(tenant, mapping, response.body());
+        metrics.recordStkPush(start, tenant.getShortCode(), response.statusCode(),
+                accepted != null ? accepted.responseCode() : null);
+        return response.body();
+    }
+
+    private static String accountReference(Mpesamapping mapping) {
+        String reference = mapping.getReference();
+        return reference == null || reference.isBlank() ? DEFAULT_ACCOUNT_REFERENCE : reference;
+    }
 
+    private HttpRequest buildStkPushRequest(String accessToken, byte[] jsonBody, RetryPolicy.Budget budget) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(config.getBaseUrl() + "/mpesa/stkpush/v1/processrequest"))
+                .header("Authorization", "Bearer " + accessToken)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(jsonBody));
+        Duration timeout = budget.requestTimeout();
+        if (timeout != null) {
+            builder.timeout(timeout);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Tracks the push as PENDING if Safaricom accepted it (ResponseCode "0")
+     * and arms the status query in case the callback never arrives
+     *
+     * @return the parsed reply, null if the body isn't the expected JSON
+     */
+    private StkPushResponse recordAccepted(Tenant tenant, Mpesamapping mapping, String responseBody) {
+        StkPushResponse response;
+        try {
+            long start = System.nanoTime();
+            response = objectMapper.readValue(responseBody, StkPushResponse.class);
+            metrics.recordDecode("stkpush.response", start);
         } catch (Exception e) {
-            return "{\"error\":\"" + e.getMessage() + "\",\"type\":\"" + e.getClass().getSimpleName() + "\"}";
+            // Not JSON (e.g. an HTML error page) - nothing to track
+            return null;
+        }
+        if (response.isAccepted()) {
+            transactionStore.recordPending(response.checkoutRequestId(), response.merchantRequestId(),
+                    mapping.getPhone(), mapping.getAmount(), tenant.getShortCode());
+            queryScheduler.track(response.checkoutRequestId(), tenant);
+        }
+        return response;
+    }
+
+    /**
+     * Error JSON returned to API clients:
+     * - error / type: message and exception class (unchanged for existing clients)
+     * - kind / retryable: for Safaricom failures, whether sending the same push again is safe
+     * - httpStatus / errorCode / requestId: Safaricom's reply, when there was one
+     * - reason / retryAfterSeconds: when the call was refused locally (circuit breaker, limiter,
+     *   tenant rate limit)
+     */
+    private String errorJson(Throwable e) {
+        ObjectNode error = objectMapper.createObjectNode();
+        error.put("error", e.getMessage());
+        error.put("type", e.getClass().getSimpleName());
+        if (e instanceof DarajaException daraja) {
+            error.put("kind", daraja.getKind().name());
+            error.put("retryable", daraja.isRetryable() || daraja instanceof UpstreamUnavailableException);
+            if (daraja.getHttpStatus() > 0) {
+                error.put("httpStatus", daraja.getHttpStatus());
+            }
+            if (daraja.getErrorCode() != null) {
+                error.put("errorCode", daraja.getErrorCode());
+            }
+            if (daraja.getRequestId() != null) {
+                error.put("requestId", daraja.getRequestId());
+            }
+        }
+        if (e instanceof UpstreamUnavailableException unavailable) {
+            error.put("reason", unavailable.getReason());
+            error.put("retryAfterSeconds", Math.max(1, (unavailable.getRetryAfterMillis() + 999) / 1000));
         }
+        return error.toString();
     }
 }
@@ -0,0 +1,217 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Push Scheduler - Outbound scheduling stage in front of the Daraja call
+ *
+ * Pushes are queued per tenant and lane and drained by weighted fair queuing:
+ * - INTERACTIVE: checkouts a customer is waiting on (/stkpush)
+ * - BATCH: bulk collections (/stkpush/bulk)
+ *
+ * Each (tenant, lane) queue is a flow with weight tenant weight x lane weight
+ * (mpesa.scheduler.interactive-weight / batch-weight, <tenant-id>.weight). A queued push
+ * gets a virtual finish tag of max(virtual time, flow's last tag) + 1 / weight, and the
+ * push with the smallest tag is dispatched next. With the default 8:1 lane weights an
+ * interactive push overtakes a bulk backlog almost immediately, while bulk still gets
+ * one slot in nine, and one tenant's flood can't starve the others.
+ *
+ * At most mpesa.scheduler.max-in-flight pushes are dispatched at once; the rest wait here
+ * rather than in the upstream guards, which would refuse them. A flow holding more than
+ * mpesa.scheduler.max-queued-per-tenant pushes refuses new ones, and a push that waited
+ * longer than mpesa.scheduler.max-wait-millis is failed instead of sent.
+ *
+ * Dispatched pushes run on virtual threads, so a blocking (sync mode) push never holds
+ * the thread that completed the previous one.
+ */
+@Service
+public class PushScheduler {
+
+    public enum Lane { INTERACTIVE, BATCH }
+
+    private final boolean enabled;
+    private final int maxInFlight;
+    private final int maxQueuedPerFlow;
+    private final long maxWaitNanos;
+    private final Map<Lane, Integer> laneWeights = new EnumMap<>(Lane.class);
+    private final MpesaMetrics metrics;
+
+    private final ExecutorService dispatcher = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("mpesa-push-", 0).factory());
+
+    // All guarded by this
+    private final Map<String, Flow> flows = new HashMap<>();
+    private final PriorityQueue<Flow> backlogged = new PriorityQueue<>(
+            Comparator.comparingDouble(flow -> flow.queue.peek().finishTag));
+    private final Map<Lane, Integer> queued = new EnumMap<>(Lane.class);
+    private double virtualTime;
+    private int inFlight;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    public PushScheduler(MpesaConfig config, MpesaMetrics metrics) {
+        this.enabled = config.isSchedulerEnabled();
+        this.maxInFlight = Math.max(1, config.getSchedulerMaxInFlight());
+        this.maxQueuedPerFlow = Math.max(1, config.getSchedulerMaxQueuedPerTenant());
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(config.getSchedulerMaxWaitMillis());
+        this.laneWeights.put(Lane.INTERACTIVE, Math.max(1, config.getSchedulerInteractiveWeight()));
+        this.laneWeights.put(Lane.BATCH, Math.max(1, config.getSchedulerBatchWeight()));
+        this.metrics = metrics;
+        for (Lane lane : Lane.values()) {
+            queued.put(lane, 0);
+        }
+    }
+
+    /**
+     * Queues a push and runs it when the scheduler picks it.
+     *
+     * @param push starts the Daraja call; its future is what the returned one completes with
+     * @return completes with the push's result, or exceptionally with an
+     *         UpstreamUnavailableException if the push was refused or waited too long
+     */
+    public CompletableFuture<String> submit(Tenant tenant, Lane lane, Supplier<CompletableFuture<String>> push) {
+        return submit(tenant.getId(), tenant.getWeight(), lane, push);
+    }
+
+    CompletableFuture<String> submit(String tenantId, int tenantWeight, Lane lane,
+                                     Supplier<CompletableFuture<String>> push) {
+        if (!enabled) {
+            return start(push);
+        }
+
+        Job job = new Job(tenantId, lane, push);
+        synchronized (this) {
+            Flow flow = flows.computeIfAbsent(job.flowKey, key -> new Flow());
+            if (flow.queue.size() >= maxQueuedPerFlow) {
+                rejected.increment();
+                return CompletableFuture.failedFuture(
+                        UpstreamUnavailableException.queueFull(tenantId, lane.name().toLowerCase()));
+            }
+            double weight = (double) Math.max(1, tenantWeight) * laneWeights.get(lane);
+            job.finishTag = Math.max(virtualTime, flow.lastFinishTag) + 1.0 / weight;
+            flow.lastFinishTag = job.finishTag;
+            flow.queue.add(job);
+            if (flow.queue.size() == 1) {
+                backlogged.add(flow); // the head only changes while the flow is out of the heap
+            }
+            queued.merge(lane, 1, Integer::sum);
+        }
+        drain();
+        return job.result;
+    }
+
+    /** Dispatches queued pushes while slots are free */
+    private void drain() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                if (inFlight >= maxInFlight || backlogged.isEmpty()) {
+                    return;
+                }
+                Flow flow = backlogged.poll();
+                job = flow.queue.poll();
+                if (!flow.queue.isEmpty()) {
+                    backlogged.add(flow);
+                } else {
+                    // Idle flows are dropped; a new one starts at the virtual time anyway
+                    flows.remove(job.flowKey);
+                }
+                virtualTime = job.finishTag;
+                queued.merge(job.lane, -1, Integer::sum);
+                inFlight++;
+            }
+            dispatch(job);
+        }
+    }
+
+    private void dispatch(Job job) {
+        long waitedNanos = System.nanoTime() - job.enqueuedNanos;
+        metrics.recordSchedulerWait(job.tenantId, job.lane.name().toLowerCase(), waitedNanos);
+        if (maxWaitNanos > 0 && waitedNanos > maxWaitNanos) {
+            expired.increment();
+            job.result.completeExceptionally(UpstreamUnavailableException.queueTimeout(job.tenantId,
+                    job.lane.name().toLowerCase(), TimeUnit.NANOSECONDS.toMillis(maxWaitNanos)));
+            freeSlot(); // called from drain(), which picks the next push itself
+            return;
+        }
+
+        dispatcher.execute(() -> start(job.push).whenComplete((response, error) -> {
+            if (error != null) {
+                job.result.completeExceptionally(error);
+            } else {
+                job.result.complete(response);
+            }
+            release();
+        }));
+    }
+
+    private void release() {
+        freeSlot();
+        drain();
+    }
+
+    private synchronized void freeSlot() {
+        inFlight--;
+    }
+
+    private static CompletableFuture<String> start(Supplier<CompletableFuture<String>> push) {
+        try {
+            return push.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public synchronized int getQueued(Lane lane) { return queued.get(lane); }
+
+    public synchronized int getInFlight() { return inFlight; }
+
+    /** Pushes refused because their flow's queue was full */
+    public long getRejectedCount() { return rejected.sum(); }
+
+    /** Pushes failed because they waited longer than mpesa.scheduler.max-wait-millis */
+    public long getExpiredCount() { return expired.sum(); }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdown();
+    }
+
+    private static final class Flow {
+        final ArrayDeque<Job> queue = new ArrayDeque<>();
+        double lastFinishTag;
+    }
+
+    private static final class Job {
+        final String tenantId;
+        final Lane lane;
+        final String flowKey;
+        final Supplier<CompletableFuture<String>> push;
+        final long enqueuedNanos = System.nanoTime();
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        double finishTag;
+
+        Job(String tenantId, Lane lane, Supplier<CompletableFuture<String>> push) {
+            this.tenantId = tenantId;
+            this.lane = lane;
+            this.flowKey = tenantId + '|' + lane;
+            this.push = push;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Retry Policy - Bounded retries for calls to Safaricom
+ *
+ * Only failures that are {@link DarajaException#isRetryable() retryable} are retried:
+ * 5xx/429 replies, connection failures, 401 (after the token is dropped) and local
+ * concurrency-limit refusals. A push Safaricom answered with 200 is never retried, and
+ * neither is one whose outcome is unknown (sent, then timed out), so a retry can never
+ * put a second prompt on the customer's phone.
+ *
+ * Delays use decorrelated jitter: each delay is random between the base delay and three
+ * times the previous one, capped at max-delay. All attempts of one call share a deadline
+ * (mpesa.retry.deadline-millis); no attempt starts that couldn't finish before it, and each
+ * attempt's request timeout is cut to what is left of it.
+ */
+@Component
+public class RetryPolicy {
+
+    /** An attempt needs at least this much budget left to be worth starting */
+    private static final long MIN_ATTEMPT_MILLIS = 50;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long deadlineMillis;
+    private final Duration requestTimeout;
+
+    private final LongAdder retries = new LongAdder();
+
+    public RetryPolicy(MpesaConfig config) {
+        this.maxAttempts = Math.max(1, config.getRetryMaxAttempts());
+        this.baseDelayMillis = Math.max(1, config.getRetryBaseDelayMillis());
+        this.maxDelayMillis = Math.max(baseDelayMillis, config.getRetryMaxDelayMillis());
+        this.deadlineMillis = config.getRetryDeadlineMillis();
+        this.requestTimeout = config.getHttpRequestTimeoutMillis() > 0
+                ? Duration.ofMillis(config.getHttpRequestTimeoutMillis()) : null;
+    }
+
+    /** One attempt of a blocking call */
+    @FunctionalInterface
+    public interface Attempt<T> {
+        T call(Budget budget) throws Exception;
+    }
+
+    /**
+     * Runs a blocking call, sleeping between retries.
+     */
+    public <T> T execute(Attempt<T> attempt) throws Exception {
+        Budget budget = new Budget();
+        while (true) {
+            try {
+                return attempt.call(budget);
+            } catch (Exception e) {
+                long delay = budget.nextDelayMillis(e);
+                if (delay < 0) {
+                    throw e;
+                }
+                retries.increment();
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Runs a non-blocking call; retries are scheduled without holding a thread.
+     */
+    public <T> CompletableFuture<T> executeAsync(Function<Budget, CompletableFuture<T>> attempt) {
+        return attemptAsync(new Budget(), attempt);
+    }
+
+    private <T> CompletableFuture<T> attemptAsync(Budget budget, Function<Budget, CompletableFuture<T>> attempt) {
+        CompletableFuture<T> result;
+        try {
+            result = attempt.apply(budget);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return result.handle((value, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(value);
+            }
+            Throwable cause = DarajaException.unwrap(error);
+            long delay = budget.nextDelayMillis(cause);
+            if (delay < 0) {
+                return CompletableFuture.<T>failedFuture(cause);
+            }
+            retries.increment();
+            return CompletableFuture.runAsync(() -> { },
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> attemptAsync(budget, attempt));
+        }).thenCompose(Function.identity());
+    }
+
+    /** Retries performed (not counting first attempts) */
+    public long getRetryCount() { return retries.sum(); }
+
+    /**
+     * Attempts, previous delay and deadline of one logical call. Attempts of a call run
+     * one after another, so no synchronization is needed.
+     */
+    public final class Budget {
+
+        private final long deadlineNanos;
+        private int attempts;
+        private long previousDelayMillis = baseDelayMillis;
+
+        private Budget() {
+            this.deadlineNanos = deadlineMillis > 0
+                    ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis)
+                    : Long.MAX_VALUE;
+        }
+
+        /**
+         * Request timeout for the next attempt: the configured timeout, cut to the
+         * remaining budget. Null means no timeout.
+         */
+        public Duration requestTimeout() {
+            if (deadlineNanos == Long.MAX_VALUE) {
+                return requestTimeout;
+            }
+            Duration remaining = Duration.ofNanos(Math.max(
+                    TimeUnit.MILLISECONDS.toNanos(MIN_ATTEMPT_MILLIS), deadlineNanos - System.nanoTime()));
+            return requestTimeout == null || remaining.compareTo(requestTimeout) < 0 ? remaining : requestTimeout;
+        }
+
+        /**
+         * Records a failed attempt.
+         *
+         * @return delay before the next attempt, or -1 if the failure must be returned to the caller
+         */
+        long nextDelayMillis(Throwable failure) {
+            attempts++;
+            if (!(failure instanceof DarajaException daraja) || !daraja.isRetryable() || attempts >= maxAttempts) {
+                return -1;
+            }
+            long upper = previousDelayMillis * 3;
+            long delay = Math.min(maxDelayMillis, ThreadLocalRandom.current().nextLong(baseDelayMillis, upper + 1));
+            if (deadlineNanos != Long.MAX_VALUE) {
+                long startsAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay + MIN_ATTEMPT_MILLIS);
+                if (startsAt - deadlineNanos > 0) {
+                    return -1;
+                }
+            }
+            previousDelayMillis = delay;
+            return delay;
+        }
+    }
+}
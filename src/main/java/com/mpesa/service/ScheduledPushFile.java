@@ -0,0 +1,190 @@
+package com.mpesa.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Scheduled Push File - Fixed-size records of every active schedule
+ *
+ * Each schedule owns one 104-byte slot, so creating, advancing or deleting a schedule is
+ * a single positional write, and a million schedules take about 100 MB. Slots of deleted
+ * schedules are reused. Record layout (big-endian):
+ *
+ *   [byte state (0 free, 1 active)][long id][long nextRunAt][int intervalSeconds]
+ *   [int remainingRuns (-1 = unlimited)][int jitterSeconds][long phone][int amount]
+ *   [byte length + 32 bytes tenant id][byte length + 24 bytes reference][int crc32]
+ *
+ * Freeing a slot only clears its state byte, so the ids of deleted schedules are still
+ * seen on load and never handed out again. A record torn by a crash fails its CRC and is
+ * treated as a free slot when loaded.
+ */
+final class ScheduledPushFile implements AutoCloseable {
+
+    static final int RECORD_BYTES = 104;
+    static final int TENANT_BYTES = 32;
+    static final int REFERENCE_BYTES = 24;
+
+    private static final int CRC_OFFSET = 99;
+    private static final byte FREE = 0;
+    private static final byte ACTIVE = 1;
+
+    private final FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private int damaged;
+    /** One String per tenant id among the loaded records, instead of one per record */
+    private final Map<String, String> tenantIds = new HashMap<>();
+    private int slotCount;
+
+    ScheduledPushFile(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Reads every active record, remembering the free slots for reuse.
+     *
+     * @return the highest schedule id in the file, active or deleted (0 if none)
+     */
+    synchronized long load(Consumer<ScheduledPushService.Schedule> consumer) throws IOException {
+        slotCount = (int) (channel.size() / RECORD_BYTES);
+        freeSlots.clear();
+        damaged = 0;
+        ByteBuffer chunk = ByteBuffer.allocate(RECORD_BYTES * 1024);
+        long position = 0;
+        int slot = 0;
+        long maxId = 0;
+        while (slot < slotCount) {
+            chunk.clear();
+            int read = channel.read(chunk, position);
+            if (read <= 0) {
+                break;
+            }
+            position += read;
+            chunk.flip();
+            while (chunk.remaining() >= RECORD_BYTES && slot < slotCount) {
+                maxId = Math.max(maxId, chunk.getLong(chunk.position() + 1));
+                ScheduledPushService.Schedule schedule = decode(chunk, slot);
+                if (schedule == null) {
+                    freeSlots.push(slot);
+                } else {
+                    consumer.accept(schedule);
+                }
+                slot++;
+            }
+            // A partial record at the end of the chunk is read again with the next one
+            position -= chunk.remaining();
+        }
+        return maxId;
+    }
+
+    /** Records discarded by the last load() because their CRC did not match */
+    synchronized int getDamagedCount() {
+        return damaged;
+    }
+
+    /** A slot for a new schedule: a freed one if there is one, otherwise a new one at the end */
+    synchronized int allocate() {
+        Integer slot = freeSlots.poll();
+        return slot != null ? slot : slotCount++;
+    }
+
+    synchronized void write(ScheduledPushService.Schedule schedule) throws IOException {
+        record.clear();
+        record.put(ACTIVE)
+                .putLong(schedule.id)
+                .putLong(schedule.nextRunAt)
+                .putInt(schedule.intervalSeconds)
+                .putInt(schedule.remainingRuns)
+                .putInt(schedule.jitterSeconds)
+                .putLong(Long.parseLong(schedule.phone))
+                .putInt(schedule.amount);
+        putString(schedule.tenantId, TENANT_BYTES);
+        putString(schedule.reference == null ? "" : schedule.reference, REFERENCE_BYTES);
+        crc.reset();
+        crc.update(record.array(), 0, CRC_OFFSET);
+        record.putInt(CRC_OFFSET, (int) crc.getValue());
+        record.clear();
+        writeFully(schedule.slot);
+    }
+
+    /** Marks the slot free; it is reused by the next allocate() */
+    synchronized void free(int slot) throws IOException {
+        record.clear().put(FREE).flip();
+        writeFully(slot);
+        freeSlots.push(slot);
+    }
+
+    /** Makes the writes so far durable */
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    private void writeFully(int slot) throws IOException {
+        long position = (long) slot * RECORD_BYTES;
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+    }
+
+    private void putString(String value, int maxBytes) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        record.put((byte) bytes.length).put(bytes).put(new byte[maxBytes - bytes.length]);
+    }
+
+    private ScheduledPushService.Schedule decode(ByteBuffer chunk, int slot) {
+        int start = chunk.position();
+        byte state = chunk.get(start);
+        if (state != ACTIVE) {
+            chunk.position(start + RECORD_BYTES);
+            return null;
+        }
+        crc.reset();
+        crc.update(chunk.array(), start, CRC_OFFSET);
+        if ((int) crc.getValue() != chunk.getInt(start + CRC_OFFSET)) {
+            damaged++;
+            chunk.position(start + RECORD_BYTES);
+            return null;
+        }
+        chunk.get();
+        long id = chunk.getLong();
+        long nextRunAt = chunk.getLong();
+        int intervalSeconds = chunk.getInt();
+        int remainingRuns = chunk.getInt();
+        int jitterSeconds = chunk.getInt();
+        String phone = Long.toString(chunk.getLong());
+        int amount = chunk.getInt();
+        String tenantId = tenantIds.computeIfAbsent(getString(chunk, TENANT_BYTES), t -> t);
+        String reference = getString(chunk, REFERENCE_BYTES);
+        chunk.position(start + RECORD_BYTES);
+        return new ScheduledPushService.Schedule(id, slot, tenantId, phone, amount,
+                reference.isEmpty() ? null : reference, nextRunAt, intervalSeconds, remainingRuns, jitterSeconds);
+    }
+
+    private static String getString(ByteBuffer chunk, int maxBytes) {
+        int length = Math.min(chunk.get() & 0xFF, maxBytes);
+        String value = new String(chunk.array(), chunk.position(), length, StandardCharsets.UTF_8);
+        chunk.position(chunk.position() + maxBytes);
+        return value;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
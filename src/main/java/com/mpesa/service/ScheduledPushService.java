@@ -0,0 +1,382 @@
+package com.mpesa.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.Mpesamapping;
+import com.mpesa.dto.ScheduledPushRequest;
+import com.mpesa.dto.ScheduledPushView;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Scheduled Push Service - One-off and recurring STK Pushes run in-process
+ *
+ * Subscription and instalment billing used to call /stkpush for every due customer at the
+ * top of the hour, all at once. Schedules registered here are instead:
+ * - persisted in a ScheduledPushFile (mpesa.schedules.file), one fixed-size record each,
+ *   and reloaded on startup
+ * - held in a HierarchicalTimingWheel until due, so millions of schedules cost O(1) to add
+ *   and a tick only touches the ones that are due
+ * - spread out: every run fires at a random point within jitterSeconds after its due time,
+ *   derived from the schedule id so it stays the same across restarts
+ * - sent by one dispatcher thread at mpesa.schedules.rate-per-second through the batch
+ *   lane of the PushScheduler (MpesaService.submitStkPush), so checkouts still go first
+ *
+ * A run is written to the file (next due time, or the schedule deleted) before its push is
+ * sent, so a crash can skip one run but never charge twice. Runs missed while the service
+ * was down are sent once on startup, then the schedule continues at its next future due time.
+ * Results are recorded in the audit log: schedule.pushed when Safaricom accepted the push,
+ * schedule.skipped when it was refused (queue_full, queue_timeout, rate_limit, an open
+ * circuit) or rejected. A skipped run is not retried; the schedule continues with its next run.
+ */
+@Service
+public class ScheduledPushService {
+
+    /** Sends one push; the future completes with the response JSON */
+    @FunctionalInterface
+    interface Pusher {
+        CompletableFuture<String> push(String tenantId, Mpesamapping mapping);
+    }
+
+    private static final Pattern PHONE = Pattern.compile("[1-9][0-9]{8,14}");
+    private static final int MAX_REFERENCE_CHARS = 12;
+    private static final int WHEEL_LEVELS = 4;
+
+    private final MpesaConfig config;
+    private final Pusher pusher;
+    private final AuditLog auditLog;
+    private final Path path;
+    private final TokenBucket rateLimiter;
+    private final HierarchicalTimingWheel<Schedule> wheel;
+    private final BlockingQueue<Schedule> due = new LinkedBlockingQueue<>();
+    private final Map<Long, Schedule> schedules = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    private ScheduledPushFile file;
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    @Autowired
+    public ScheduledPushService(MpesaConfig config, MpesaService mpesaService, TenantRegistry tenants,
+                                AuditLog auditLog) {
+        this(config, (tenantId, mapping) -> mpesaService.submitStkPush(tenants.resolve(tenantId),
+                PushScheduler.Lane.BATCH, mapping), auditLog);
+    }
+
+    ScheduledPushService(MpesaConfig config, Pusher pusher, AuditLog auditLog) {
+        this.config = config;
+        this.pusher = pusher;
+        this.auditLog = auditLog;
+        this.path = Path.of(config.getSchedulesFile());
+        this.rateLimiter = new TokenBucket(config.getSchedulesRatePerSecond(), config.getSchedulesBurst());
+        this.wheel = new HierarchicalTimingWheel<>("mpesa-schedule-wheel", config.getSchedulesTickMillis(),
+                config.getSchedulesWheelSize(), WHEEL_LEVELS, due::add, auditLog);
+    }
+
+    /**
+     * Loads the persisted schedules into the wheel and starts the dispatcher.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        file = new ScheduledPushFile(path);
+        long maxId = file.load(schedule -> {
+            schedules.put(schedule.id, schedule);
+            wheel.schedule(schedule, firesAt(schedule));
+        });
+        nextId.set(maxId + 1);
+        if (file.getDamagedCount() > 0) {
+            auditLog.warn("schedule.damaged", null, null, 0,
+                    "discarded " + file.getDamagedCount() + " damaged records in " + path);
+        }
+        if (!schedules.isEmpty()) {
+            auditLog.info("schedule.loaded", null, null, 0, "loaded " + schedules.size() + " schedules from " + path);
+        }
+        running = true;
+        dispatcher = new Thread(this::runDispatcher, "mpesa-schedule-dispatch");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Registers a schedule for the tenant; it is on disk before this returns.
+     *
+     * @throws IllegalArgumentException if the request is invalid
+     */
+    public ScheduledPushView create(Tenant tenant, ScheduledPushRequest request) throws IOException {
+        Schedule schedule = validate(tenant.getId(), request);
+        synchronized (schedule) {
+            file.write(schedule);
+            file.force();
+            schedules.put(schedule.id, schedule);
+            wheel.schedule(schedule, firesAt(schedule));
+            return schedule.toView();
+        }
+    }
+
+    /** The schedule, or null if it is unknown, deleted or finished */
+    public ScheduledPushView find(long id) {
+        Schedule schedule = schedules.get(id);
+        if (schedule == null) {
+            return null;
+        }
+        synchronized (schedule) {
+            return schedule.cancelled ? null : schedule.toView();
+        }
+    }
+
+    /**
+     * Deletes the schedule; a run already handed to the dispatcher is not sent.
+     *
+     * @return false if there was no such schedule
+     */
+    public boolean cancel(long id) throws IOException {
+        Schedule schedule = schedules.get(id);
+        if (schedule == null) {
+            return false;
+        }
+        synchronized (schedule) {
+            if (schedule.cancelled) {
+                return false;
+            }
+            remove(schedule);
+            file.force();
+            return true;
+        }
+    }
+
+    private Schedule validate(String tenantId, ScheduledPushRequest request) {
+        if (request.phone() == null || !PHONE.matcher(request.phone()).matches()) {
+            throw new IllegalArgumentException("phone must be in international format, e.g. 254796022656");
+        }
+        if (request.amount() <= 0) {
+            throw new IllegalArgumentException("amount must be positive");
+        }
+        String reference = request.reference();
+        if (reference != null && (reference.length() > MAX_REFERENCE_CHARS
+                || reference.getBytes(StandardCharsets.UTF_8).length > ScheduledPushFile.REFERENCE_BYTES)) {
+            throw new IllegalArgumentException("reference must be at most " + MAX_REFERENCE_CHARS + " characters");
+        }
+        if (tenantId.getBytes(StandardCharsets.UTF_8).length > ScheduledPushFile.TENANT_BYTES) {
+            throw new IllegalArgumentException("tenant id must be at most " + ScheduledPushFile.TENANT_BYTES
+                    + " bytes to be scheduled");
+        }
+        long interval = request.intervalSeconds() == null ? 0 : request.intervalSeconds();
+        if (interval < 0 || interval > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("intervalSeconds must be between 0 and " + Integer.MAX_VALUE);
+        }
+        int count = request.count() != null ? request.count() : interval == 0 ? 1 : -1;
+        if (count == 0 || count < -1 || (interval == 0 && count != 1)) {
+            throw new IllegalArgumentException("count must be positive, and 1 for a one-off push");
+        }
+        int jitter = request.jitterSeconds() != null ? request.jitterSeconds() : config.getSchedulesDefaultJitterSeconds();
+        if (jitter < 0) {
+            throw new IllegalArgumentException("jitterSeconds must not be negative");
+        }
+        if (interval > 0) {
+            // A run must not be pushed after the next one is due
+            jitter = (int) Math.min(jitter, interval - 1);
+        }
+        long startAt = request.startAt() != null ? request.startAt() : System.currentTimeMillis();
+        return new Schedule(nextId.getAndIncrement(), file.allocate(), tenantId, request.phone(), request.amount(),
+                reference, startAt, (int) interval, count, jitter);
+    }
+
+    private void runDispatcher() {
+        while (running) {
+            Schedule schedule;
+            try {
+                schedule = due.take();
+                if (schedule.cancelled) {
+                    continue;
+                }
+                rateLimiter.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                dispatch(schedule);
+            } catch (IOException | RuntimeException e) {
+                skipped.increment();
+                auditLog.warn("schedule.skipped", schedule.tenantId, String.valueOf(schedule.id), 0, e.getMessage());
+            }
+        }
+    }
+
+    private void dispatch(Schedule schedule) throws IOException {
+        Mpesamapping mapping;
+        synchronized (schedule) {
+            if (schedule.cancelled) {
+                return;
+            }
+            mapping = new Mpesamapping(schedule.phone, schedule.amount);
+            mapping.setReference(schedule.reference);
+            if (!advance(schedule, System.currentTimeMillis())) {
+                remove(schedule);
+            } else {
+                file.write(schedule);
+                wheel.schedule(schedule, firesAt(schedule));
+            }
+            file.force();
+        }
+
+        String key = String.valueOf(schedule.id);
+        CompletableFuture<String> push;
+        try {
+            push = pusher.push(schedule.tenantId, mapping);
+        } catch (UnknownTenantException e) {
+            skipped.increment();
+            auditLog.warn("schedule.skipped", schedule.tenantId, key, 404, e.getMessage());
+            return;
+        }
+        push.whenComplete((response, error) -> {
+            if (error != null) {
+                skipped.increment();
+                auditLog.warn("schedule.skipped", schedule.tenantId, key, 0, String.valueOf(error.getMessage()));
+                return;
+            }
+            if (isAccepted(response)) {
+                dispatched.increment();
+                auditLog.info("schedule.pushed", schedule.tenantId, key, 0, response);
+            } else {
+                skipped.increment();
+                auditLog.warn("schedule.skipped", schedule.tenantId, key, 0, response);
+            }
+        });
+    }
+
+    private boolean isAccepted(String response) {
+        try {
+            return "0".equals(objectMapper.readTree(response).path("ResponseCode").asText());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Moves the schedule past the run being sent: the next due time after now, skipping
+     * runs missed while the service was down.
+     *
+     * @return false if that was the last run
+     */
+    static boolean advance(Schedule schedule, long now) {
+        if (schedule.remainingRuns > 0) {
+            schedule.remainingRuns--;
+        }
+        if (schedule.intervalSeconds == 0 || schedule.remainingRuns == 0) {
+            return false;
+        }
+        long intervalMillis = TimeUnit.SECONDS.toMillis(schedule.intervalSeconds);
+        long periods = Math.max(1, (now - schedule.nextRunAt) / intervalMillis + 1);
+        schedule.nextRunAt += periods * intervalMillis;
+        return true;
+    }
+
+    /**
+     * Due time plus a jitter in [0, jitterSeconds) that depends only on the schedule id and
+     * the due time, so pushes due at the same moment spread over the window.
+     */
+    static long firesAt(Schedule schedule) {
+        long jitterMillis = TimeUnit.SECONDS.toMillis(schedule.jitterSeconds);
+        if (jitterMillis == 0) {
+            return schedule.nextRunAt;
+        }
+        long h = schedule.id * 0x9E3779B97F4A7C15L ^ schedule.nextRunAt;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return schedule.nextRunAt + Math.floorMod(h, jitterMillis);
+    }
+
+    /** Caller holds the schedule's lock */
+    private void remove(Schedule schedule) throws IOException {
+        schedule.cancelled = true;
+        schedules.remove(schedule.id);
+        file.free(schedule.slot);
+    }
+
+    /** Schedules that will push again */
+    public int getActiveCount() { return schedules.size(); }
+
+    /** Runs that are due and waiting for the dispatch rate */
+    public int getDueCount() { return due.size(); }
+
+    /** Runs Safaricom accepted */
+    public long getDispatchedCount() { return dispatched.sum(); }
+
+    /** Runs not pushed: unknown tenant, a failed file write, or refused or rejected upstream */
+    public long getSkippedCount() { return skipped.sum(); }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        wheel.close();
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+            try {
+                dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                auditLog.warn("schedule.file.failed", null, null, 0, "close failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /** A schedule as held in memory; mutable fields are guarded by the instance */
+    static final class Schedule {
+        final long id;
+        final int slot;
+        final String tenantId;
+        final String phone;
+        final int amount;
+        final String reference;
+        final int intervalSeconds;
+        final int jitterSeconds;
+        long nextRunAt;
+        int remainingRuns;
+        volatile boolean cancelled;
+
+        Schedule(long id, int slot, String tenantId, String phone, int amount, String reference, long nextRunAt,
+                 int intervalSeconds, int remainingRuns, int jitterSeconds) {
+            this.id = id;
+            this.slot = slot;
+            this.tenantId = tenantId;
+            this.phone = phone;
+            this.amount = amount;
+            this.reference = reference;
+            this.nextRunAt = nextRunAt;
+            this.intervalSeconds = intervalSeconds;
+            this.remainingRuns = remainingRuns;
+            this.jitterSeconds = jitterSeconds;
+        }
+
+        ScheduledPushView toView() {
+            return new ScheduledPushView(id, tenantId, phone, amount, reference, nextRunAt, intervalSeconds,
+                    remainingRuns < 0 ? null : remainingRuns, jitterSeconds);
+        }
+    }
+}
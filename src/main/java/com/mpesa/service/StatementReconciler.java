@@ -0,0 +1,667 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.ReconciliationView;
+import com.mpesa.dto.StkCallback;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statement Reconciler - Matches M-Pesa statement exports against the callback journal
+ *
+ * Input: a statement CSV as exported from the M-Pesa org portal, dropped into
+ * mpesa.reconciliation.statement-dir. Preamble lines are skipped up to the header row;
+ * the columns used are found by name:
+ * - receipt: "Receipt No." (required)
+ * - amount: "Paid In" (required; rows without money paid in, e.g. charges, are skipped)
+ * - status: "Transaction Status" (rows that aren't Completed are skipped)
+ * - time: "Completion Time" (bounds which journal entries are expected on the statement)
+ * - checkout: "CheckoutRequestID", if the export carries it; matched before the receipt
+ *
+ * Each row is looked up in an index of the callback journal (by CheckoutRequestID, else by
+ * MpesaReceiptNumber) and written to one of three reports in <report-dir>/<job id>/:
+ * - matched.csv: same receipt and amount as the successful callback
+ * - mismatched.csv: found, but the amount, receipt or result differs, or the receipt is listed twice
+ * - missing.csv: paid on the statement but no callback received (missing_from=journal), or a
+ *   successful callback within the statement's time range not on the statement
+ *   (missing_from=statement, written once the whole file is read)
+ *
+ * The statement is never held in memory: it is cut into mpesa.reconciliation.chunk-bytes
+ * ranges that worker threads claim one at a time, memory-map and parse in place. A chunk owns
+ * the lines that start inside it and reads past its end only to finish its last line. Report
+ * lines are buffered per chunk and appended as they are produced, so memory depends on chunk
+ * size and thread count, not on file size; only the journal index grows with the number of
+ * callbacks received.
+ *
+ * Jobs run one at a time in the background; their progress is kept for the last MAX_JOBS runs.
+ */
+@Service
+public class StatementReconciler {
+
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    private static final int MAX_JOBS = 100;
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+    private static final int HEADER_SCAN_BYTES = 1 << 20;
+    private static final int REPORT_FLUSH_CHARS = 64 * 1024;
+
+    private static final List<String> RECEIPT_COLUMNS = List.of("receipt no.", "receipt no", "receipt", "mpesareceiptnumber");
+    private static final List<String> AMOUNT_COLUMNS = List.of("paid in", "amount");
+    private static final List<String> STATUS_COLUMNS = List.of("transaction status", "status");
+    private static final List<String> TIME_COLUMNS = List.of("completion time", "transaction date", "transactiondate");
+    private static final List<String> CHECKOUT_COLUMNS = List.of("checkoutrequestid", "checkout request id");
+
+    private static final String MATCHED_HEADER = "receipt,checkout_request_id,amount,completion_time";
+    private static final String MISMATCHED_HEADER = "receipt,checkout_request_id,reason,statement_amount,journal_amount,journal_result_code";
+    private static final String MISSING_HEADER = "missing_from,receipt,checkout_request_id,amount,time";
+
+    private final CallbackJournal journal;
+    private final Path statementDir;
+    private final Path reportRoot;
+    private final long chunkBytes;
+    private final int parallelism;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "mpesa-reconciliation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService workers;
+
+    public StatementReconciler(MpesaConfig config, CallbackJournal journal) {
+        this.journal = journal;
+        this.statementDir = Path.of(config.getReconciliationStatementDir()).toAbsolutePath().normalize();
+        this.reportRoot = Path.of(config.getReconciliationReportDir());
+        this.chunkBytes = Math.max(MAX_LINE_BYTES, config.getReconciliationChunkBytes());
+        this.parallelism = config.getReconciliationParallelism() > 0
+                ? config.getReconciliationParallelism() : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "mpesa-reconciliation-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts reconciling a statement in the background.
+     *
+     * @param statementName file name inside mpesa.reconciliation.statement-dir
+     * @throws IllegalArgumentException if the name points outside the statement directory
+     * @throws NoSuchFileException if there is no such statement
+     */
+    public ReconciliationView start(String statementName) throws IOException {
+        Path statement = statementDir.resolve(statementName).normalize();
+        if (!statement.getParent().equals(statementDir)) {
+            throw new IllegalArgumentException("Statement must be a file name in " + statementDir);
+        }
+        if (!Files.isRegularFile(statement)) {
+            throw new NoSuchFileException(statement.toString());
+        }
+
+        String id = UUID.randomUUID().toString();
+        Job job = new Job(id, statement.getFileName().toString(), reportRoot.resolve(id));
+        jobs.put(id, job);
+        trimJobs();
+        runner.execute(() -> run(job, statement));
+        return job.view();
+    }
+
+    /** Progress or result of a job, or null if unknown */
+    public ReconciliationView find(String id) {
+        Job job = jobs.get(id);
+        return job != null ? job.view() : null;
+    }
+
+    private void run(Job job, Path statement) {
+        try {
+            JournalIndex index = new JournalIndex();
+            journal.replay(index::add);
+            reconcile(statement, job.reportDir, index, job.counts);
+            job.finish(Status.COMPLETED, null);
+            System.out.println("Reconciliation " + job.id + " of " + job.statement + " done: " + job.view());
+        } catch (Exception e) {
+            job.finish(Status.FAILED, e.getMessage());
+            System.err.println("❌ Reconciliation " + job.id + " of " + job.statement + " failed: " + e.getMessage());
+        }
+    }
+
+    private void trimJobs() {
+        Iterator<Job> oldest = jobs.values().stream()
+                .filter(job -> job.status != Status.RUNNING)
+                .sorted((a, b) -> Long.compare(a.startedAt, b.startedAt))
+                .iterator();
+        while (jobs.size() > MAX_JOBS && oldest.hasNext()) {
+            jobs.remove(oldest.next().id);
+        }
+    }
+
+    /**
+     * Reconciles one statement file and writes the three reports to reportDir.
+     */
+    void reconcile(Path statement, Path reportDir, JournalIndex index, Counts counts) throws IOException {
+        Files.createDirectories(reportDir);
+        AtomicIntegerArray seen = new AtomicIntegerArray(index.size());
+
+        try (FileChannel channel = FileChannel.open(statement, StandardOpenOption.READ);
+             Reports reports = new Reports(reportDir)) {
+            long size = channel.size();
+            Layout layout = readHeader(channel, size);
+            long chunks = (size - layout.dataStart + chunkBytes - 1) / chunkBytes;
+            AtomicLong nextChunk = new AtomicLong();
+
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < Math.min(parallelism, Math.max(1, chunks)); i++) {
+                tasks.add(workers.submit(() -> {
+                    for (long chunk = nextChunk.getAndIncrement(); chunk < chunks; chunk = nextChunk.getAndIncrement()) {
+                        long start = layout.dataStart + chunk * chunkBytes;
+                        reconcileChunk(channel, size, layout, start, Math.min(size, start + chunkBytes),
+                                index, seen, reports, counts);
+                    }
+                    return null;
+                }));
+            }
+            awaitAll(tasks);
+
+            reportUnseenCallbacks(index, seen, reports, counts);
+        }
+    }
+
+    private static void awaitAll(List<Future<?>> tasks) throws IOException {
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            tasks.forEach(task -> task.cancel(true));
+            throw new IOException("Reconciliation interrupted", e);
+        } catch (ExecutionException e) {
+            tasks.forEach(task -> task.cancel(true));
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    /** Finds the header row and the column positions; data starts on the line after it */
+    private static Layout readHeader(FileChannel channel, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_SCAN_BYTES));
+        Row row = new Row();
+        int pos = 0;
+        while (pos < buffer.limit()) {
+            int end = pos;
+            while (end < buffer.limit() && buffer.get(end) != '\n') {
+                end++;
+            }
+            row.load(buffer, pos, end);
+
+            Map<String, Integer> columns = new HashMap<>();
+            for (int i = 0; i < row.fieldCount(); i++) {
+                columns.putIfAbsent(row.field(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT), i);
+            }
+            int receipt = column(columns, RECEIPT_COLUMNS);
+            if (receipt >= 0) {
+                int amount = column(columns, AMOUNT_COLUMNS);
+                if (amount < 0) {
+                    throw new IOException("Statement header has no amount column (one of " + AMOUNT_COLUMNS + ")");
+                }
+                return new Layout(end + 1L, receipt, amount, column(columns, STATUS_COLUMNS),
+                        column(columns, TIME_COLUMNS), column(columns, CHECKOUT_COLUMNS));
+            }
+            pos = end + 1;
+        }
+        throw new IOException("No statement header with a receipt column (one of " + RECEIPT_COLUMNS
+                + ") in the first " + HEADER_SCAN_BYTES + " bytes");
+    }
+
+    private static int column(Map<String, Integer> columns, List<String> names) {
+        for (String name : names) {
+            Integer index = columns.get(name);
+            if (index != null) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static void reconcileChunk(FileChannel channel, long size, Layout layout, long start, long end,
+                                       JournalIndex index, AtomicIntegerArray seen, Reports reports,
+                                       Counts counts) throws IOException {
+        // Map one byte before the chunk to tell whether a line starts exactly at its first byte
+        long mapFrom = start == layout.dataStart ? start : start - 1;
+        long mapTo = Math.min(size, end + MAX_LINE_BYTES);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapFrom, mapTo - mapFrom);
+        int limit = (int) (end - mapFrom);
+
+        int pos = 0;
+        if (start != layout.dataStart) {
+            while (pos < buffer.limit() && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            pos++; // the line in progress belongs to the previous chunk
+        }
+
+        Row row = new Row();
+        ChunkReports out = new ChunkReports(reports);
+        while (pos < limit) {
+            int eol = pos;
+            while (eol < buffer.limit() && buffer.get(eol) != '\n') {
+                eol++;
+            }
+            if (eol == buffer.limit() && mapTo < size) {
+                throw new IOException("Statement line at byte " + (mapFrom + pos) + " is longer than "
+                        + MAX_LINE_BYTES + " bytes");
+            }
+            row.load(buffer, pos, eol);
+            reconcileRow(row, layout, index, seen, out, counts);
+            pos = eol + 1;
+        }
+        out.flush();
+    }
+
+    private static void reconcileRow(Row row, Layout layout, JournalIndex index, AtomicIntegerArray seen,
+                                     ChunkReports out, Counts counts) throws IOException {
+        if (row.isBlank()) {
+            return;
+        }
+        counts.rows.increment();
+
+        String receipt = row.field(layout.receipt).trim();
+        BigDecimal amount = parseAmount(row.field(layout.amount));
+        String status = layout.status >= 0 ? row.field(layout.status).trim() : "Completed";
+        if (receipt.isEmpty() || amount == null || amount.signum() <= 0 || !status.equalsIgnoreCase("Completed")) {
+            counts.skipped.increment();
+            return;
+        }
+
+        String time = layout.time >= 0 ? row.field(layout.time).trim() : "";
+        long timeKey = timeKey(time);
+        if (timeKey > 0) {
+            counts.firstTime.accumulate(timeKey);
+            counts.lastTime.accumulate(timeKey);
+        }
+
+        String checkoutRequestId = layout.checkout >= 0 ? row.field(layout.checkout).trim() : "";
+        int entry = checkoutRequestId.isEmpty() ? index.byReceipt(receipt) : index.byCheckout(checkoutRequestId);
+        if (entry < 0) {
+            counts.missingFromJournal.increment();
+            out.missing("journal", receipt, checkoutRequestId, amount.toPlainString(), time);
+            return;
+        }
+
+        StkCallback callback = index.get(entry);
+        String reason = null;
+        if (seen.getAndIncrement(entry) > 0) {
+            reason = "duplicate";
+        } else if (!callback.isSuccess()) {
+            reason = "result_code";
+        } else if (!receipt.equalsIgnoreCase(callback.mpesaReceiptNumber())) {
+            reason = "receipt";
+        } else if (callback.amount() == null || callback.amount().compareTo(amount) != 0) {
+            reason = "amount";
+        }
+
+        if (reason == null) {
+            counts.matched.increment();
+            out.matched(receipt, callback.checkoutRequestId(), amount.toPlainString(), time);
+        } else {
+            counts.mismatched.increment();
+            out.mismatched(receipt, callback.checkoutRequestId(), reason, amount.toPlainString(),
+                    callback.amount() != null ? callback.amount().toPlainString() : "",
+                    Integer.toString(callback.resultCode()));
+        }
+    }
+
+    /**
+     * Successful callbacks the statement never listed. Only callbacks paid within the
+     * statement's first and last completion time are expected on it; without a time
+     * column every unlisted callback is reported.
+     */
+    private static void reportUnseenCallbacks(JournalIndex index, AtomicIntegerArray seen, Reports reports,
+                                              Counts counts) throws IOException {
+        long first = counts.firstTime.get();
+        long last = counts.lastTime.get();
+        boolean windowed = first <= last;
+
+        ChunkReports out = new ChunkReports(reports);
+        for (int i = 0; i < index.size(); i++) {
+            StkCallback callback = index.get(i);
+            if (seen.get(i) > 0 || !callback.isSuccess() || callback.mpesaReceiptNumber() == null) {
+                continue;
+            }
+            long paidAt = timeKey(callback.transactionDate());
+            if (windowed && (paidAt < first || paidAt > last)) {
+                continue;
+            }
+            counts.missingFromStatement.increment();
+            out.missing("statement", callback.mpesaReceiptNumber(), callback.checkoutRequestId(),
+                    callback.amount() != null ? callback.amount().toPlainString() : "",
+                    callback.transactionDate() != null ? callback.transactionDate() : "");
+        }
+        out.flush();
+    }
+
+    /** "1,250.00" -> 1250.00; null if empty or not a number */
+    private static BigDecimal parseAmount(String value) {
+        String digits = value.replace(",", "").trim();
+        if (digits.isEmpty()) {
+            return null;
+        }
+        try {
+            return new BigDecimal(digits);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * "2025-07-29 10:21:15" (statement) and "20250729102115" (callback) both become
+     * 20250729102115, so they compare directly; 0 if there aren't 14 digits.
+     */
+    static long timeKey(String time) {
+        if (time == null) {
+            return 0;
+        }
+        long key = 0;
+        int digits = 0;
+        for (int i = 0; i < time.length() && digits < 14; i++) {
+            char c = time.charAt(i);
+            if (c >= '0' && c <= '9') {
+                key = key * 10 + (c - '0');
+                digits++;
+            }
+        }
+        return digits == 14 ? key : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private record Layout(long dataStart, int receipt, int amount, int status, int time, int checkout) {
+    }
+
+    /**
+     * Journal callbacks addressable by position, looked up by CheckoutRequestID and receipt.
+     * A CheckoutRequestID journaled more than once (Safaricom retries, query results) keeps
+     * its latest callback.
+     */
+    static final class JournalIndex {
+
+        private final List<StkCallback> callbacks = new ArrayList<>();
+        private final Map<String, Integer> byCheckout = new HashMap<>();
+        private final Map<String, Integer> byReceipt = new HashMap<>();
+
+        void add(StkCallback callback) {
+            Integer existing = byCheckout.get(callback.checkoutRequestId());
+            int position;
+            if (existing != null) {
+                position = existing;
+                StkCallback previous = callbacks.set(position, callback);
+                if (previous.mpesaReceiptNumber() != null) {
+                    byReceipt.remove(previous.mpesaReceiptNumber().toUpperCase(Locale.ROOT));
+                }
+            } else {
+                position = callbacks.size();
+                callbacks.add(callback);
+                byCheckout.put(callback.checkoutRequestId(), position);
+            }
+            if (callback.mpesaReceiptNumber() != null) {
+                byReceipt.put(callback.mpesaReceiptNumber().toUpperCase(Locale.ROOT), position);
+            }
+        }
+
+        int size() { return callbacks.size(); }
+
+        StkCallback get(int position) { return callbacks.get(position); }
+
+        int byCheckout(String checkoutRequestId) {
+            return byCheckout.getOrDefault(checkoutRequestId, -1);
+        }
+
+        int byReceipt(String receipt) {
+            return byReceipt.getOrDefault(receipt.toUpperCase(Locale.ROOT), -1);
+        }
+    }
+
+    /** Counts of one run, updated by all workers */
+    static final class Counts {
+        final LongAdder rows = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder matched = new LongAdder();
+        final LongAdder mismatched = new LongAdder();
+        final LongAdder missingFromJournal = new LongAdder();
+        final LongAdder missingFromStatement = new LongAdder();
+        final LongAccumulator firstTime = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        final LongAccumulator lastTime = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    }
+
+    /**
+     * One CSV line, copied out of the mapped file into a reusable buffer. Fields are
+     * located once and only the ones asked for are decoded.
+     */
+    private static final class Row {
+        private byte[] bytes = new byte[1024];
+        private int length;
+        private int[] bounds = new int[64]; // start, end per field
+        private boolean[] quoted = new boolean[32];
+        private int fields;
+
+        void load(MappedByteBuffer buffer, int from, int to) {
+            length = to - from;
+            if (length > 0 && buffer.get(to - 1) == '\r') {
+                length--;
+            }
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(from, bytes, 0, length);
+            split();
+        }
+
+        private void split() {
+            fields = 0;
+            int pos = 0;
+            while (true) {
+                if (fields == quoted.length) {
+                    quoted = Arrays.copyOf(quoted, fields * 2);
+                    bounds = Arrays.copyOf(bounds, fields * 4);
+                }
+                boolean inQuotes = pos < length && bytes[pos] == '"';
+                int start = inQuotes ? pos + 1 : pos;
+                int end = start;
+                if (inQuotes) {
+                    while (end < length && !(bytes[end] == '"' && (end + 1 >= length || bytes[end + 1] != '"'))) {
+                        end += bytes[end] == '"' ? 2 : 1;
+                    }
+                    pos = Math.min(length, end + 1);
+                    while (pos < length && bytes[pos] != ',') {
+                        pos++;
+                    }
+                } else {
+                    while (end < length && bytes[end] != ',') {
+                        end++;
+                    }
+                    pos = end;
+                }
+                bounds[fields * 2] = start;
+                bounds[fields * 2 + 1] = Math.min(end, length);
+                quoted[fields] = inQuotes;
+                fields++;
+                if (pos >= length) {
+                    return;
+                }
+                pos++; // past the comma
+            }
+        }
+
+        int fieldCount() { return fields; }
+
+        boolean isBlank() {
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != ',' && bytes[i] != ' ' && bytes[i] != '\t') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Field value, or "" if the row is shorter */
+        String field(int index) {
+            if (index >= fields) {
+                return "";
+            }
+            String value = new String(bytes, bounds[index * 2], bounds[index * 2 + 1] - bounds[index * 2],
+                    StandardCharsets.UTF_8);
+            return quoted[index] ? value.replace("\"\"", "\"") : value;
+        }
+    }
+
+    /** The three report files; appends from several workers are serialized per file */
+    private static final class Reports implements Closeable {
+        private final BufferedWriter matched;
+        private final BufferedWriter mismatched;
+        private final BufferedWriter missing;
+
+        Reports(Path dir) throws IOException {
+            matched = open(dir.resolve("matched.csv"), MATCHED_HEADER);
+            mismatched = open(dir.resolve("mismatched.csv"), MISMATCHED_HEADER);
+            missing = open(dir.resolve("missing.csv"), MISSING_HEADER);
+        }
+
+        private static BufferedWriter open(Path file, String header) throws IOException {
+            BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            writer.write(header);
+            writer.write('\n');
+            return writer;
+        }
+
+        static void append(BufferedWriter writer, StringBuilder lines) throws IOException {
+            if (lines.isEmpty()) {
+                return;
+            }
+            synchronized (writer) {
+                writer.append(lines);
+                writer.flush(); // reports grow while the job runs
+            }
+            lines.setLength(0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (matched; mismatched; missing) {
+                // closes all three, even if one fails
+            }
+        }
+    }
+
+    /** Report lines of one chunk, handed to the Reports in blocks */
+    private static final class ChunkReports {
+        private final Reports reports;
+        private final StringBuilder matched = new StringBuilder();
+        private final StringBuilder mismatched = new StringBuilder();
+        private final StringBuilder missing = new StringBuilder();
+
+        ChunkReports(Reports reports) {
+            this.reports = reports;
+        }
+
+        void matched(String... values) throws IOException {
+            add(reports.matched, matched, values);
+        }
+
+        void mismatched(String... values) throws IOException {
+            add(reports.mismatched, mismatched, values);
+        }
+
+        void missing(String... values) throws IOException {
+            add(reports.missing, missing, values);
+        }
+
+        private static void add(BufferedWriter writer, StringBuilder lines, String... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    lines.append(',');
+                }
+                String value = values[i];
+                if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+                    lines.append('"').append(value.replace("\"", "\"\"")).append('"');
+                } else {
+                    lines.append(value);
+                }
+            }
+            lines.append('\n');
+            if (lines.length() >= REPORT_FLUSH_CHARS) {
+                Reports.append(writer, lines);
+            }
+        }
+
+        void flush() throws IOException {
+            Reports.append(reports.matched, matched);
+            Reports.append(reports.mismatched, mismatched);
+            Reports.append(reports.missing, missing);
+        }
+    }
+
+    private static final class Job {
+        final String id;
+        final String statement;
+        final Path reportDir;
+        final long startedAt = System.currentTimeMillis();
+        final Counts counts = new Counts();
+        volatile Status status = Status.RUNNING;
+        volatile Long finishedAt;
+        volatile String error;
+
+        Job(String id, String statement, Path reportDir) {
+            this.id = id;
+            this.statement = statement;
+            this.reportDir = reportDir;
+        }
+
+        void finish(Status status, String error) {
+            this.error = error;
+            this.finishedAt = System.currentTimeMillis();
+            this.status = status;
+        }
+
+        ReconciliationView view() {
+            return new ReconciliationView(id, status.name(), statement, reportDir.toString(),
+                    counts.rows.sum(), counts.skipped.sum(), counts.matched.sum(), counts.mismatched.sum(),
+                    counts.missingFromJournal.sum(), counts.missingFromStatement.sum(),
+                    startedAt, finishedAt, error);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.mpesa.service;
+
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * STK Password Generator - Timestamp + Password pair for Daraja requests
+ *
+ * Both STK Push and STK Push Query authenticate the shortcode with:
+ *   Timestamp = yyyyMMddHHmmss (local time)
+ *   Password  = Base64(ShortCode + Passkey + Timestamp)
+ *
+ * The timestamp only changes once per second, so the pair is computed once per
+ * second per shortcode and shared by every request in that second.
+ */
+@Component
+public class StkPasswordGenerator {
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    /** A timestamp and the password derived from it; they must be sent together */
+    public record StkPassword(String timestamp, String password) {
+    }
+
+    private final Map<String, CachedPassword> cache = new ConcurrentHashMap<>();
+
+    public StkPassword generate(String shortCode, String passkey) {
+        long epochSecond = System.currentTimeMillis() / 1000;
+        CachedPassword cached = cache.get(shortCode);
+        if (cached != null && cached.epochSecond == epochSecond && cached.passkey.equals(passkey)) {
+            return cached.password;
+        }
+
+        // Racing threads may both compute the pair for a new second; the results are identical
+        StkPassword password = compute(shortCode, passkey, epochSecond);
+        cache.put(shortCode, new CachedPassword(epochSecond, passkey, password));
+        return password;
+    }
+
+    private static StkPassword compute(String shortCode, String passkey, long epochSecond) {
+        String timestamp = TIMESTAMP_FORMAT.format(
+                LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault()));
+        String password = Base64.getEncoder().encodeToString(
+                (shortCode + passkey + timestamp).getBytes(StandardCharsets.UTF_8)
+        );
+        return new StkPassword(timestamp, password);
+    }
+
+    private record CachedPassword(long epochSecond, String passkey, StkPassword password) {
+    }
+}
@@ -0,0 +1,198 @@
+package com.mpesa.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.StkCallback;
+import com.mpesa.dto.TransactionStatus;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * STK Push Query Scheduler - Resolves transactions whose callback never arrives
+ *
+ * Every accepted push is put on a hashed timing wheel. When its delay
+ * (mpesa.query.delay-seconds) expires and the transaction is still PENDING,
+ * the scheduler asks Safaricom for the result via /mpesa/stkpushquery/v1/query.
+ *
+ * - Transactions already settled by a callback are skipped when their timer fires
+ * - At most one query per CheckoutRequestID is in flight (duplicates are coalesced)
+ * - At most mpesa.query.max-concurrency queries run at once; the rest wait a tick
+ * - Queries pass through the tenant's stkpushquery UpstreamGuard, so an outage of the
+ *   query endpoint opens its breaker; refused queries wait for the retry-after without
+ *   using up an attempt
+ * - Queries use the token cache, shortcode and HttpClient of the tenant that sent the push;
+ *   pushes of a tenant removed in the meantime are no longer queried
+ * - "Still processing" answers are retried after mpesa.query.retry-delay-seconds,
+ *   up to mpesa.query.max-attempts times
+ *
+ * A final answer is fed into the CallbackIngestor as if Safaricom had sent the
+ * callback, so it is journaled and reaches the TransactionStore and waiting clients.
+ */
+@Service
+public class StkPushQueryScheduler {
+
+    /** Delay before retrying when the concurrency budget is exhausted */
+    private static final long BUSY_RETRY_MILLIS = 1_000;
+
+    private final MpesaConfig config;
+    private final TenantRegistry tenants;
+    private final StkPasswordGenerator passwordGenerator;
+    private final TransactionStore transactionStore;
+    private final CallbackIngestor callbackIngestor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final HashedTimingWheel<QueryTask> wheel;
+    private final Semaphore concurrency;
+    private final Map<String, Boolean> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder queriesSent = new LongAdder();
+    private final LongAdder queriesResolved = new LongAdder();
+    private final LongAdder queriesFailed = new LongAdder();
+
+    public StkPushQueryScheduler(MpesaConfig config, TenantRegistry tenants,
+                                 StkPasswordGenerator passwordGenerator, TransactionStore transactionStore,
+                                 CallbackIngestor callbackIngestor) {
+        this.config = config;
+        this.tenants = tenants;
+        this.passwordGenerator = passwordGenerator;
+        this.transactionStore = transactionStore;
+        this.callbackIngestor = callbackIngestor;
+        this.concurrency = new Semaphore(Math.max(1, config.getQueryMaxConcurrency()));
+        this.wheel = new HashedTimingWheel<>("mpesa-stk-query-wheel",
+                config.getQueryTickMillis(), config.getQueryWheelSize(), this::onTimeout);
+    }
+
+    /**
+     * Starts watching an accepted push; a query is sent if no callback arrives in time.
+     */
+    public void track(String checkoutRequestId, Tenant tenant) {
+        if (config.isQueryEnabled()) {
+            wheel.schedule(new QueryTask(checkoutRequestId, tenant.getId(), 1),
+                    config.getQueryDelaySeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    private void onTimeout(QueryTask task) {
+        if (transactionStore.statusOf(task.checkoutRequestId()) != TransactionStatus.PENDING) {
+            return; // Settled by its callback (or evicted) - nothing to do
+        }
+        Tenant tenant;
+        try {
+            tenant = tenants.resolve(task.tenantId());
+        } catch (UnknownTenantException e) {
+            return; // Tenant removed by a reload; its credentials are gone
+        }
+        if (inFlight.putIfAbsent(task.checkoutRequestId(), Boolean.TRUE) != null) {
+            return; // A query for this id is already running
+        }
+        if (!concurrency.tryAcquire()) {
+            inFlight.remove(task.checkoutRequestId());
+            wheel.schedule(task, BUSY_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        queriesSent.increment();
+        tenant.getTokenManager().getAccessTokenAsync()
+                .thenCompose(token -> tenant.getGuards().query().sendAsync(() -> tenant.getHttpClient().sendAsync(
+                        buildQueryRequest(tenant, token, task.checkoutRequestId()),
+                        HttpResponse.BodyHandlers.ofString())))
+                .whenComplete((response, error) -> {
+                    try {
+                        handleResponse(task, response, error);
+                    } finally {
+                        inFlight.remove(task.checkoutRequestId());
+                        concurrency.release();
+                    }
+                });
+    }
+
+    private void handleResponse(QueryTask task, HttpResponse<String> response, Throwable error) {
+        if (error == null) {
+            try {
+                JsonNode body = objectMapper.readTree(response.body());
+                if (body.hasNonNull("ResultCode")) {
+                    boolean queued = callbackIngestor.submit(new StkCallback(
+                            body.path("MerchantRequestID").asText(null), task.checkoutRequestId(),
+                            body.get("ResultCode").asInt(-1), body.path("ResultDesc").asText(null),
+                            null, null, null, null, System.currentTimeMillis()));
+                    if (queued) {
+                        queriesResolved.increment();
+                    } else {
+                        // Ingest queue full: ask again shortly, without using up an attempt
+                        wheel.schedule(task, BUSY_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                    return;
+                }
+            } catch (Exception e) {
+                // Not JSON - treat like any other unanswered query
+            }
+        }
+
+        if (DarajaException.unwrap(error) instanceof UpstreamUnavailableException refused) {
+            // Refused by the breaker or limiter, nothing was sent
+            wheel.schedule(task, Math.max(BUSY_RETRY_MILLIS, refused.getRetryAfterMillis()), TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        // Still processing, upstream error, or network failure: try again later
+        queriesFailed.increment();
+        if (task.attempt() < config.getQueryMaxAttempts()) {
+            wheel.schedule(new QueryTask(task.checkoutRequestId(), task.tenantId(), task.attempt() + 1),
+                    config.getQueryRetryDelaySeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    private HttpRequest buildQueryRequest(Tenant tenant, String accessToken, String checkoutRequestId) {
+        StkPasswordGenerator.StkPassword password =
+                passwordGenerator.generate(tenant.getShortCode(), tenant.getPasskey());
+
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("BusinessShortCode", tenant.getShortCode());
+        body.put("Password", password.password());
+        body.put("Timestamp", password.timestamp());
+        body.put("CheckoutRequestID", checkoutRequestId);
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(config.getBaseUrl() + "/mpesa/stkpushquery/v1/query"))
+                .header("Authorization", "Bearer " + accessToken)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()));
+        if (config.getHttpRequestTimeoutMillis() > 0) {
+            builder.timeout(Duration.ofMillis(config.getHttpRequestTimeoutMillis()));
+        }
+        return builder.build();
+    }
+
+    /** Pushes waiting for their query timer */
+    public int getScheduledCount() { return wheel.size(); }
+
+    /** Queries sent to Safaricom */
+    public long getQueriesSent() { return queriesSent.sum(); }
+
+    /** Queries that returned a final ResultCode */
+    public long getQueriesResolved() { return queriesResolved.sum(); }
+
+    /** Queries that returned no final result (still processing or error) */
+    public long getQueriesFailed() { return queriesFailed.sum(); }
+
+    @PreDestroy
+    public void shutdown() {
+        wheel.close();
+    }
+
+    /** One scheduled status check; attempt starts at 1 */
+    private record QueryTask(String checkoutRequestId, String tenantId, int attempt) {
+    }
+}
@@ -0,0 +1,256 @@
+package com.mpesa.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpesa.dto.StkPushRequest;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * STK Push Request Encoder - Writes the Daraja request body without reflection
+ *
+ * Most of the STK Push JSON is the same for every request of a shortcode: field names,
+ * BusinessShortCode, PartyB, TransactionType, CallBackURL and TransactionDesc. Those parts
+ * are pre-encoded once into byte "segments"; per request only password, timestamp, amount,
+ * phone and reference are escaped and copied in between them, using a per-thread scratch
+ * buffer. The only per-request allocation is the final byte[] handed to the HttpClient.
+ *
+ * The output is byte-for-byte what ObjectMapper produces for the equivalent StkPushRequest
+ * (same property order, same string escaping). Requests with null fields or characters
+ * outside the Basic Multilingual Plane fall back to ObjectMapper.
+ */
+@Component
+public class StkPushRequestEncoder {
+
+    public static final String TRANSACTION_TYPE = "CustomerPayBillOnline";
+    public static final String TRANSACTION_DESC = "Payment for goods";
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final int INITIAL_BUFFER_BYTES = 1024;
+    private static final ThreadLocal<ScratchBuffer> BUFFERS = ThreadLocal.withInitial(ScratchBuffer::new);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<TemplateKey, Template> templates = new ConcurrentHashMap<>();
+    private volatile Template lastTemplate;
+
+    /**
+     * Encodes the STK Push body for one request.
+     */
+    public byte[] encode(String shortCode, String callbackUrl, StkPasswordGenerator.StkPassword password,
+                         int amount, String phone, String accountReference) throws JsonProcessingException {
+        if (shortCode == null || callbackUrl == null || phone == null || accountReference == null
+                || password.password() == null || password.timestamp() == null) {
+            return encodeWithObjectMapper(shortCode, callbackUrl, password, amount, phone, accountReference);
+        }
+
+        Template template = templateFor(shortCode, callbackUrl);
+        if (template == null) {
+            return encodeWithObjectMapper(shortCode, callbackUrl, password, amount, phone, accountReference);
+        }
+
+        ScratchBuffer buffer = BUFFERS.get();
+        buffer.reset();
+        buffer.write(template.beforePassword);
+        boolean ok = buffer.writeEscaped(password.password());
+        buffer.write(template.beforeTimestamp);
+        ok &= buffer.writeEscaped(password.timestamp());
+        buffer.write(template.beforeAmount);
+        buffer.writeInt(amount);
+        buffer.write(template.beforePartyA);
+        ok &= buffer.writeEscaped(phone);
+        buffer.write(template.beforePhoneNumber);
+        ok &= buffer.writeEscaped(phone);
+        buffer.write(template.beforeAccountReference);
+        ok &= buffer.writeEscaped(accountReference);
+        buffer.write(template.end);
+
+        if (!ok) {
+            return encodeWithObjectMapper(shortCode, callbackUrl, password, amount, phone, accountReference);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Reference implementation: the generic Jackson path the encoder must match.
+     */
+    public byte[] encodeWithObjectMapper(String shortCode, String callbackUrl,
+                                         StkPasswordGenerator.StkPassword password, int amount,
+                                         String phone, String accountReference) throws JsonProcessingException {
+        StkPushRequest stkRequest = new StkPushRequest(
+                shortCode, password.password(), password.timestamp(), TRANSACTION_TYPE,
+                String.valueOf(amount), phone, shortCode,
+                phone, callbackUrl,
+                accountReference, TRANSACTION_DESC
+        );
+        return objectMapper.writeValueAsBytes(stkRequest);
+    }
+
+    private Template templateFor(String shortCode, String callbackUrl) {
+        Template last = lastTemplate;
+        if (last != null && last.key.shortCode().equals(shortCode) && last.key.callbackUrl().equals(callbackUrl)) {
+            return last;
+        }
+        Template template = templates.computeIfAbsent(new TemplateKey(shortCode, callbackUrl), Template::build);
+        if (template.valid) {
+            lastTemplate = template;
+            return template;
+        }
+        return null;
+    }
+
+    private record TemplateKey(String shortCode, String callbackUrl) {
+    }
+
+    /**
+     * The constant JSON between the variable fields, pre-encoded as UTF-8.
+     */
+    private static final class Template {
+        final TemplateKey key;
+        final boolean valid;
+        final byte[] beforePassword;
+        final byte[] beforeTimestamp;
+        final byte[] beforeAmount;
+        final byte[] beforePartyA;
+        final byte[] beforePhoneNumber;
+        final byte[] beforeAccountReference;
+        final byte[] end;
+
+        private Template(TemplateKey key, boolean valid, byte[]... segments) {
+            this.key = key;
+            this.valid = valid;
+            this.beforePassword = segments[0];
+            this.beforeTimestamp = segments[1];
+            this.beforeAmount = segments[2];
+            this.beforePartyA = segments[3];
+            this.beforePhoneNumber = segments[4];
+            this.beforeAccountReference = segments[5];
+            this.end = segments[6];
+        }
+
+        static Template build(TemplateKey key) {
+            ScratchBuffer escaper = new ScratchBuffer();
+            boolean valid = escaper.writeEscaped(key.shortCode());
+            String shortCode = new String(escaper.toByteArray(), StandardCharsets.UTF_8);
+            escaper.reset();
+            valid &= escaper.writeEscaped(key.callbackUrl());
+            String callbackUrl = new String(escaper.toByteArray(), StandardCharsets.UTF_8);
+
+            return new Template(key, valid,
+                    utf8("{\"BusinessShortCode\":\"" + shortCode + "\",\"Password\":\""),
+                    utf8("\",\"Timestamp\":\""),
+                    utf8("\",\"TransactionType\":\"" + TRANSACTION_TYPE + "\",\"Amount\":\""),
+                    utf8("\",\"PartyA\":\""),
+                    utf8("\",\"PartyB\":\"" + shortCode + "\",\"PhoneNumber\":\""),
+                    utf8("\",\"CallBackURL\":\"" + callbackUrl + "\",\"AccountReference\":\""),
+                    utf8("\",\"TransactionDesc\":\"" + TRANSACTION_DESC + "\"}"));
+        }
+
+        private static byte[] utf8(String s) {
+            return s.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Growable byte buffer reused by one thread across requests.
+     */
+    private static final class ScratchBuffer {
+        private byte[] bytes = new byte[INITIAL_BUFFER_BYTES];
+        private int length;
+
+        void reset() {
+            length = 0;
+        }
+
+        void write(byte[] segment) {
+            ensureCapacity(segment.length);
+            System.arraycopy(segment, 0, bytes, length, segment.length);
+            length += segment.length;
+        }
+
+        void writeInt(int value) {
+            // Same digits as String.valueOf(int), without the String
+            ensureCapacity(11);
+            if (value == Integer.MIN_VALUE) {
+                write("-2147483648".getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            if (value < 0) {
+                bytes[length++] = '-';
+                value = -value;
+            }
+            int start = length;
+            do {
+                bytes[length++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            for (int i = start, j = length - 1; i < j; i++, j--) {
+                byte tmp = bytes[i];
+                bytes[i] = bytes[j];
+                bytes[j] = tmp;
+            }
+        }
+
+        /**
+         * Writes a JSON string body with Jackson's default escaping.
+         *
+         * @return false if the value contains a surrogate char (caller falls back to Jackson)
+         */
+        boolean writeEscaped(String value) {
+            ensureCapacity(value.length() * 6);
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    if (c >= 0x20 && c != '"' && c != '\\') {
+                        bytes[length++] = (byte) c;
+                    } else {
+                        writeEscape(c);
+                    }
+                } else if (c < 0x800) {
+                    bytes[length++] = (byte) (0xC0 | (c >> 6));
+                    bytes[length++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    return false;
+                } else {
+                    bytes[length++] = (byte) (0xE0 | (c >> 12));
+                    bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    bytes[length++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return true;
+        }
+
+        private void writeEscape(char c) {
+            bytes[length++] = '\\';
+            switch (c) {
+                case '"' -> bytes[length++] = '"';
+                case '\\' -> bytes[length++] = '\\';
+                case '\b' -> bytes[length++] = 'b';
+                case '\t' -> bytes[length++] = 't';
+                case '\n' -> bytes[length++] = 'n';
+                case '\f' -> bytes[length++] = 'f';
+                case '\r' -> bytes[length++] = 'r';
+                default -> {
+                    bytes[length++] = 'u';
+                    bytes[length++] = '0';
+                    bytes[length++] = '0';
+                    bytes[length++] = HEX[c >> 4];
+                    bytes[length++] = HEX[c & 0xF];
+                }
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+}
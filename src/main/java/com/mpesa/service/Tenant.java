@@ -0,0 +1,86 @@
+package com.mpesa.service;
+
+import io.micrometer.core.instrument.Meter;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tenant - One paybill/till served by this instance
+ *
+ * Holds the shortcode credentials plus everything that must not be shared between
+ * merchants: the OAuth token cache, the upstream circuit breakers and concurrency
+ * limits, the HttpClient (and so its connection pool) and the STK Push rate limiter.
+ *
+ * Instances are created and replaced by the TenantRegistry; a tenant whose settings
+ * change on reload is swapped for a new instance rather than mutated.
+ */
+public class Tenant {
+
+    /** What the tenant was built from; two tenants with equal settings are interchangeable */
+    public record Settings(String id, String shortCode, String passkey, String consumerKey, String consumerSecret,
+                           String callbackUrl, double ratePerSecond, int burst, int weight) {
+
+        @Override
+        public String toString() {
+            // Keeps the passkey and consumer secret out of logs
+            return "Tenant[" + id + ", shortcode " + shortCode + "]";
+        }
+    }
+
+    private final Settings settings;
+    private final HttpClient httpClient;
+    private final UpstreamGuards guards;
+    private final AccessTokenManager tokenManager;
+    private final TokenBucket rateLimiter;
+    private final List<Meter> meters = new ArrayList<>();
+
+    Tenant(Settings settings, HttpClient httpClient, UpstreamGuards guards, AccessTokenManager tokenManager) {
+        this.settings = settings;
+        this.httpClient = httpClient;
+        this.guards = guards;
+        this.tokenManager = tokenManager;
+        this.rateLimiter = new TokenBucket(settings.ratePerSecond(), settings.burst());
+    }
+
+    public String getId() { return settings.id(); }
+
+    public String getShortCode() { return settings.shortCode(); }
+
+    public String getPasskey() { return settings.passkey(); }
+
+    public String getCallbackUrl() { return settings.callbackUrl(); }
+
+    public Settings getSettings() { return settings; }
+
+    /** Share of the PushScheduler relative to other tenants */
+    public int getWeight() { return settings.weight(); }
+
+    /** Shared by all Daraja calls of this tenant, so they reuse its connections */
+    public HttpClient getHttpClient() { return httpClient; }
+
+    public UpstreamGuards getGuards() { return guards; }
+
+    public AccessTokenManager getTokenManager() { return tokenManager; }
+
+    /** STK Pushes per second allowed for this tenant (rate-per-second / burst) */
+    public TokenBucket getRateLimiter() { return rateLimiter; }
+
+    /** Meters registered for this tenant, removed again when it is dropped */
+    List<Meter> getMeters() { return meters; }
+
+    /**
+     * Stops background work and shuts the HttpClient down, closing its pooled connections
+     * and selector thread; calls already in flight still complete.
+     */
+    void close() {
+        tokenManager.shutdown();
+        httpClient.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return settings.toString();
+    }
+}
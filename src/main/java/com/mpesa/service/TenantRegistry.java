@@ -0,0 +1,293 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Tenant Registry - The paybills this instance serves
+ *
+ * The shortcode configured in mpesa.* is always available as mpesa.tenants.default-id.
+ * More tenants are read from mpesa.tenants.file, a properties file keyed by tenant id:
+ *
+ *   paybill-a.shortcode=600100
+ *   paybill-a.passkey=...
+ *   paybill-a.consumer-key=...
+ *   paybill-a.consumer-secret=...
+ *   paybill-a.callback-url=https://pay.example.com/api/mpesa/callback   (optional)
+ *   paybill-a.rate-per-second=20                                       (optional)
+ *   paybill-a.burst=40                                                 (optional)
+ *   paybill-a.weight=2                         (optional, share of the push scheduler)
+ *
+ * The file is checked every mpesa.tenants.reload-seconds. Tenants whose settings are
+ * unchanged keep their token cache and connections; changed tenants are rebuilt and
+ * removed ones are dropped. A file that fails to load or validate is reported and the
+ * previous tenants stay in place.
+ *
+ * Lookups read an unmodifiable map through a volatile field, so routing costs one get.
+ */
+@Component
+public class TenantRegistry {
+
+    private static final String[] REQUIRED_SETTINGS = {"shortcode", "passkey", "consumer-key", "consumer-secret"};
+
+    private final MpesaConfig config;
+    private final MpesaMetrics metrics;
+    private final RetryPolicy retryPolicy;
+    private final MeterRegistry meterRegistry;
+    private final AuditLog auditLog;
+    private final DarajaHttpClients httpClients;
+    private final String defaultId;
+    private final Path file;
+    private final ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mpesa-tenant-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Map<String, Tenant> tenants = Map.of();
+    private FileTime loadedVersion;
+
+    public TenantRegistry(MpesaConfig config, MpesaMetrics metrics, RetryPolicy retryPolicy,
+                          MeterRegistry meterRegistry, AuditLog auditLog, DarajaHttpClients httpClients)
+            throws IOException {
+        this.config = config;
+        this.metrics = metrics;
+        this.retryPolicy = retryPolicy;
+        this.meterRegistry = meterRegistry;
+        this.auditLog = auditLog;
+        this.httpClients = httpClients;
+        this.defaultId = config.getTenantsDefaultId();
+        this.file = config.getTenantsFile() == null || config.getTenantsFile().isBlank()
+                ? null : Path.of(config.getTenantsFile());
+
+        // A broken file at startup fails fast; later reloads keep the last good tenants
+        reload();
+        if (file != null && config.getTenantsReloadSeconds() > 0) {
+            reloader.scheduleWithFixedDelay(this::reloadIfChanged, config.getTenantsReloadSeconds(),
+                    config.getTenantsReloadSeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Resolves the tenant a request is routed to.
+     *
+     * @param tenantId tenant id from the request, or null/blank for the default tenant
+     * @throws UnknownTenantException if no such tenant is configured
+     */
+    public Tenant resolve(String tenantId) {
+        String id = tenantId == null || tenantId.isBlank() ? defaultId : tenantId.trim();
+        Tenant tenant = tenants.get(id);
+        if (tenant == null) {
+            throw new UnknownTenantException(id);
+        }
+        return tenant;
+    }
+
+    /** Tenant of the shortcode configured in mpesa.* */
+    public Tenant getDefault() {
+        return resolve(defaultId);
+    }
+
+    /** Tenant serving the given shortcode, or null */
+    public Tenant findByShortCode(String shortCode) {
+        for (Tenant tenant : tenants.values()) {
+            if (tenant.getShortCode().equals(shortCode)) {
+                return tenant;
+            }
+        }
+        return null;
+    }
+
+    public Collection<Tenant> all() {
+        return tenants.values();
+    }
+
+    /**
+     * Re-reads the tenant file and applies the differences.
+     *
+     * @throws IOException if the file can't be read or is invalid; nothing changes then
+     */
+    public synchronized void reload() throws IOException {
+        FileTime version = file != null ? Files.getLastModifiedTime(file) : null;
+        Map<String, Tenant.Settings> wanted = loadSettings();
+
+        Map<String, Tenant> current = tenants;
+        List<Tenant> retired = new ArrayList<>();
+        for (Tenant old : current.values()) {
+            if (!old.getSettings().equals(wanted.get(old.getId()))) {
+                retired.add(old);
+            }
+        }
+        // Meters are keyed by name and tags, so a rebuilt tenant's old ones must go first
+        retired.forEach(this::unbindMeters);
+
+        Map<String, Tenant> next = new LinkedHashMap<>();
+        for (Tenant.Settings settings : wanted.values()) {
+            Tenant existing = current.get(settings.id());
+            next.put(settings.id(), existing != null && !retired.contains(existing) ? existing : create(settings));
+        }
+        tenants = Collections.unmodifiableMap(next);
+        loadedVersion = version;
+        retired.forEach(Tenant::close);
+    }
+
+    private void reloadIfChanged() {
+        try {
+            if (!Files.getLastModifiedTime(file).equals(loadedVersion)) {
+                reload();
+                System.out.println("Tenants reloaded: " + tenants.keySet());
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Tenant reload failed, keeping " + tenants.keySet() + ": " + e.getMessage());
+        }
+    }
+
+    private Map<String, Tenant.Settings> loadSettings() throws IOException {
+        Map<String, Tenant.Settings> settings = new LinkedHashMap<>();
+        settings.put(defaultId, new Tenant.Settings(defaultId, config.getShortCode(), config.getPasskey(),
+                config.getConsumerKey(), config.getConsumerSecret(), config.getCallbackUrl(),
+                config.getTenantsRatePerSecond(), config.getTenantsBurst(), config.getTenantsWeight()));
+        if (file == null) {
+            return settings;
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        Map<String, Map<String, String>> byTenant = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            int dot = key.indexOf('.');
+            if (dot <= 0 || dot == key.length() - 1) {
+                throw new IOException("Invalid tenant setting '" + key + "' in " + file
+                        + " (expected <tenant-id>.<setting>)");
+            }
+            byTenant.computeIfAbsent(key.substring(0, dot), id -> new HashMap<>())
+                    .put(key.substring(dot + 1), properties.getProperty(key).trim());
+        }
+
+        for (Map.Entry<String, Map<String, String>> entry : byTenant.entrySet()) {
+            String id = entry.getKey();
+            Map<String, String> values = entry.getValue();
+            for (String required : REQUIRED_SETTINGS) {
+                if (values.getOrDefault(required, "").isEmpty()) {
+                    throw new IOException("Tenant '" + id + "' in " + file + " has no " + required);
+                }
+            }
+            settings.put(id, new Tenant.Settings(id,
+                    values.get("shortcode"),
+                    values.get("passkey"),
+                    values.get("consumer-key"),
+                    values.get("consumer-secret"),
+                    values.getOrDefault("callback-url", config.getCallbackUrl()),
+                    parseDouble(id, values, "rate-per-second", config.getTenantsRatePerSecond()),
+                    (int) parseDouble(id, values, "burst", config.getTenantsBurst()),
+                    (int) parseDouble(id, values, "weight", config.getTenantsWeight())));
+        }
+        return settings;
+    }
+
+    private double parseDouble(String id, Map<String, String> values, String name, double defaultValue)
+            throws IOException {
+        String value = values.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Tenant '" + id + "' in " + file + " has an invalid " + name + ": " + value);
+        }
+    }
+
+    private Tenant create(Tenant.Settings settings) {
+        MeteredHttpClient httpClient = httpClients.create();
+        UpstreamGuards guards = new UpstreamGuards(config);
+        AccessTokenManager tokenManager = new AccessTokenManager(config, settings.shortCode(),
+                settings.consumerKey(), settings.consumerSecret(), httpClient, metrics, guards.oauth(), retryPolicy,
+                auditLog);
+        Tenant tenant = new Tenant(settings, httpClient, guards, tokenManager);
+        bindMeters(tenant);
+        return tenant;
+    }
+
+    private void unbindMeters(Tenant tenant) {
+        tenant.getMeters().forEach(meterRegistry::remove);
+        tenant.getMeters().clear();
+    }
+
+    /**
+     * Token cache, connection and upstream guard meters, tagged with the tenant id.
+     * They are removed again when the tenant is dropped or rebuilt.
+     */
+    private void bindMeters(Tenant tenant) {
+        AccessTokenManager tokens = tenant.getTokenManager();
+        counter(tenant, "mpesa.oauth.token.cache", tokens, AccessTokenManager::getHitCount, "result", "hit");
+        counter(tenant, "mpesa.oauth.token.cache", tokens, AccessTokenManager::getMissCount, "result", "miss");
+        counter(tenant, "mpesa.oauth.token.refreshes", tokens, AccessTokenManager::getRefreshCount, "outcome", "success");
+        counter(tenant, "mpesa.oauth.token.refreshes", tokens, AccessTokenManager::getRefreshFailureCount, "outcome", "failure");
+
+        if (tenant.getHttpClient() instanceof MeteredHttpClient http) {
+            // Requests on a reused connection = requests - connections
+            counter(tenant, "mpesa.http.requests", http, MeteredHttpClient::getRequestCount);
+            counter(tenant, "mpesa.http.connections", http, MeteredHttpClient::getConnectionCount);
+        }
+
+        for (UpstreamGuard guard : tenant.getGuards().all()) {
+            String upstream = guard.getName();
+            AdaptiveConcurrencyLimit limit = guard.getLimit();
+            CircuitBreaker breaker = guard.getBreaker();
+            gauge(tenant, "mpesa.upstream.concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit, "upstream", upstream);
+            gauge(tenant, "mpesa.upstream.concurrency.inflight", limit, AdaptiveConcurrencyLimit::getInFlight, "upstream", upstream);
+            // 0 = closed, 1 = open, 2 = half-open
+            gauge(tenant, "mpesa.upstream.circuit.state", breaker, b -> b.getState().ordinal(), "upstream", upstream);
+            counter(tenant, "mpesa.upstream.rejected", limit, AdaptiveConcurrencyLimit::getRejectedCount,
+                    "upstream", upstream, "reason", UpstreamUnavailableException.CONCURRENCY_LIMIT);
+            counter(tenant, "mpesa.upstream.rejected", breaker, CircuitBreaker::getRejectedCount,
+                    "upstream", upstream, "reason", UpstreamUnavailableException.CIRCUIT_OPEN);
+        }
+    }
+
+    private <T> void counter(Tenant tenant, String name, T source, ToDoubleFunction<T> count, String... tags) {
+        Meter meter = FunctionCounter.builder(name, source, count)
+                .tags(tags).tag("tenant", tenant.getId()).register(meterRegistry);
+        tenant.getMeters().add(meter);
+    }
+
+    private <T> void gauge(Tenant tenant, String name, T source, ToDoubleFunction<T> value, String... tags) {
+        Meter meter = Gauge.builder(name, source, value)
+                .tags(tags).tag("tenant", tenant.getId()).register(meterRegistry);
+        tenant.getMeters().add(meter);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloader.shutdownNow();
+        tenants.values().forEach(Tenant::close);
+    }
+}
@@ -0,0 +1,72 @@
+package com.mpesa.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token Bucket Rate Limiter
+ *
+ * Allows up to ratePerSecond operations per second on average, with bursts of up to
+ * burst operations when the bucket is full. Callers that arrive when the bucket is
+ * empty reserve a future token and sleep until it is due, so waiters are served in
+ * arrival order without a background refill thread.
+ *
+ * A rate of zero or less disables limiting.
+ */
+public class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+
+    private double available;
+    private long lastRefillNanos;
+
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, burst);
+        this.available = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes one token, sleeping until it becomes available.
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes one token only if it is available right now.
+     */
+    public synchronized boolean tryAcquire() {
+        if (tokensPerNano <= 0) {
+            return true;
+        }
+        refill(System.nanoTime());
+        if (available >= 1) {
+            available -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reserves one token and returns how long the caller must wait for it (0 = now).
+     * The balance may go negative; later callers then queue up behind the debt.
+     */
+    synchronized long reserve() {
+        if (tokensPerNano <= 0) {
+            return 0;
+        }
+        refill(System.nanoTime());
+        available -= 1;
+        return available >= 0 ? 0 : (long) Math.ceil(-available / tokensPerNano);
+    }
+
+    private void refill(long nowNanos) {
+        available = Math.min(capacity, available + (nowNanos - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = nowNanos;
+    }
+}
@@ -0,0 +1,43 @@
+package com.mpesa.service;
+
+import com.mpesa.dto.TransactionView;
+
+/**
+ * Durable copy of the transactions the TransactionStore tracks in memory
+ *
+ * The TransactionStore hands every state change to the repository and asks it for
+ * transactions it no longer (or not yet, after a restart) holds. Implementations must
+ * not block the caller for long: save() runs on the STK Push and callback paths.
+ *
+ * Selected with mpesa.persistence.type:
+ * - none: nothing is stored (NONE)
+ * - jdbc: JdbcTransactionRepository, write-behind batches to a JDBC database
+ */
+public interface TransactionRepository extends AutoCloseable {
+
+    /** Stores nothing and finds nothing */
+    TransactionRepository NONE = new TransactionRepository() {
+        @Override
+        public void save(TransactionView transaction) {
+        }
+
+        @Override
+        public TransactionView find(String checkoutRequestId) {
+            return null;
+        }
+    };
+
+    /**
+     * Records the current state of a transaction. A PENDING state never replaces a
+     * settled one, so saves may be applied out of order.
+     */
+    void save(TransactionView transaction);
+
+    /** Last stored state, or null if unknown */
+    TransactionView find(String checkoutRequestId);
+
+    /** Writes out anything still buffered and releases resources */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,175 @@
+package com.mpesa.service;
+
+import com.mpesa.dto.StkCallback;
+import com.mpesa.dto.TransactionStatus;
+import com.mpesa.dto.TransactionView;
+import jakarta.annotation.PreDestroy;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transaction Status Notifier - Push payment results to waiting clients
+ *
+ * Instead of polling GET /transactions/{id} every second, clients park a request
+ * (long-poll) or open an event stream (SSE) for a CheckoutRequestID. When the callback
+ * for that id arrives, every waiter is completed at once.
+ *
+ * Waiters live in a ConcurrentHashMap keyed by CheckoutRequestID; registration and
+ * removal lock only the hash bin of that id, so tens of thousands of parked clients
+ * don't contend with each other or with the callback writer.
+ *
+ * Runs after TransactionStore in the CallbackListener chain, so the store already
+ * holds the settled state when waiters are completed. The callback writer thread only
+ * removes the waiters; completing them (socket writes to SSE clients) happens on virtual
+ * threads, so slow or dead clients never hold up callback ingestion.
+ */
+@Service
+@Order(10)
+public class TransactionStatusNotifier implements CallbackListener {
+
+    private static final String SSE_EVENT = "status";
+
+    private final TransactionStore transactionStore;
+    private final Map<String, List<Waiter>> waiters = new ConcurrentHashMap<>();
+    private final AtomicInteger waiterCount = new AtomicInteger();
+    private final ExecutorService completer =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mpesa-status-notify-", 1).factory());
+
+    public TransactionStatusNotifier(TransactionStore transactionStore) {
+        this.transactionStore = transactionStore;
+    }
+
+    /**
+     * Long-poll: completes as soon as the transaction settles, or after timeoutMillis
+     * with its current state (404 if still unknown).
+     */
+    public DeferredResult<ResponseEntity<TransactionView>> awaitSettlement(String checkoutRequestId, long timeoutMillis) {
+        DeferredResult<ResponseEntity<TransactionView>> result = new DeferredResult<>(timeoutMillis);
+        Waiter waiter = view -> result.setResult(ResponseEntity.ok(view));
+
+        result.onTimeout(() -> result.setResult(currentState(checkoutRequestId)));
+        result.onCompletion(() -> unregister(checkoutRequestId, waiter));
+        register(checkoutRequestId, waiter);
+        return result;
+    }
+
+    /**
+     * Server-Sent Events: emits the current state (if known) right away, then a final
+     * "status" event when the transaction settles and closes the stream.
+     */
+    public SseEmitter subscribe(String checkoutRequestId, long timeoutMillis) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        AtomicBoolean done = new AtomicBoolean();
+        Waiter waiter = view -> {
+            if (done.compareAndSet(false, true)) {
+                try {
+                    emitter.send(SseEmitter.event().name(SSE_EVENT).data(view));
+                    emitter.complete();
+                } catch (IOException | IllegalStateException e) {
+                    emitter.completeWithError(e);
+                }
+            }
+        };
+
+        emitter.onCompletion(() -> unregister(checkoutRequestId, waiter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> unregister(checkoutRequestId, waiter));
+
+        TransactionView current = transactionStore.find(checkoutRequestId);
+        if (current != null && current.status() == TransactionStatus.PENDING) {
+            try {
+                emitter.send(SseEmitter.event().name(SSE_EVENT).data(current));
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+                return emitter;
+            }
+        }
+        register(checkoutRequestId, waiter);
+        return emitter;
+    }
+
+    /**
+     * Completes every waiter for the settled transaction, each on its own virtual thread.
+     */
+    @Override
+    public void onCallback(StkCallback callback) {
+        List<Waiter> settledWaiters = waiters.remove(callback.checkoutRequestId());
+        if (settledWaiters == null) {
+            return;
+        }
+        waiterCount.addAndGet(-settledWaiters.size());
+
+        TransactionView view = transactionStore.find(callback.checkoutRequestId());
+        if (view == null) {
+            // Store was full or the entry got evicted - answer from the callback itself
+            view = new TransactionView(callback.checkoutRequestId(), callback.merchantRequestId(),
+                    TransactionStatus.fromResultCode(callback.resultCode()), callback.phoneNumber(),
+                    callback.amount() != null ? callback.amount().intValue() : null,
+                    callback.resultCode(), callback.mpesaReceiptNumber(), null, callback.receivedAt());
+        }
+        TransactionView settled = view;
+        for (Waiter waiter : settledWaiters) {
+            completer.execute(() -> waiter.settled(settled));
+        }
+    }
+
+    /** Number of clients currently waiting for a result */
+    public int getWaiterCount() {
+        return waiterCount.get();
+    }
+
+    private void register(String checkoutRequestId, Waiter waiter) {
+        waiters.compute(checkoutRequestId, (id, list) -> {
+            List<Waiter> updated = list != null ? list : new ArrayList<>(2);
+            updated.add(waiter);
+            return updated;
+        });
+        waiterCount.incrementAndGet();
+
+        // The callback may have been processed before we registered
+        TransactionView current = transactionStore.find(checkoutRequestId);
+        if (current != null && current.status().isSettled()) {
+            unregister(checkoutRequestId, waiter);
+            waiter.settled(current);
+        }
+    }
+
+    private void unregister(String checkoutRequestId, Waiter waiter) {
+        boolean[] removed = {false};
+        waiters.computeIfPresent(checkoutRequestId, (id, list) -> {
+            removed[0] = list.remove(waiter);
+            return list.isEmpty() ? null : list;
+        });
+        if (removed[0]) {
+            waiterCount.decrementAndGet();
+        }
+    }
+
+    private ResponseEntity<TransactionView> currentState(String checkoutRequestId) {
+        TransactionView current = transactionStore.find(checkoutRequestId);
+        return current == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(current);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        completer.shutdown();
+    }
+
+    @FunctionalInterface
+    private interface Waiter {
+        void settled(TransactionView view);
+    }
+}
@@ -0,0 +1,285 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.StkCallback;
+import com.mpesa.dto.TransactionStatus;
+import com.mpesa.dto.TransactionView;
+import jakarta.annotation.PreDestroy;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transaction Store - In-memory index of STK Pushes keyed by CheckoutRequestID
+ *
+ * Links the response of an STK Push (PENDING) to the callback that arrives later
+ * (COMPLETED / FAILED / TIMEOUT). Lookups are a single ConcurrentHashMap get.
+ *
+ * Memory is bounded in three ways:
+ * - entries are compact: phone and amount are stored as numbers, status as a byte
+ * - settled entries are evicted mpesa.transactions.settled-ttl-seconds after settling
+ * - at most mpesa.transactions.max-entries are kept; new pushes beyond that are not
+ *   tracked (and counted) until the sweeper frees space
+ *
+ * Pushes that stay PENDING longer than mpesa.transactions.pending-timeout-seconds
+ * are marked TIMEOUT by the sweeper; a callback arriving after that still replaces
+ * the TIMEOUT with its result.
+ *
+ * Every state change is also handed to the TransactionRepository (mpesa.persistence.type),
+ * including pushes and callbacks the memory cap kept out of the map, and lookups of
+ * evicted or pre-restart transactions fall back to it.
+ *
+ * Registered first among CallbackListeners so later listeners see the updated state.
+ */
+@Service
+@Order(0)
+public class TransactionStore implements CallbackListener {
+
+    private static final long SWEEP_INTERVAL_SECONDS = 30;
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final MpesaMetrics metrics;
+    private final TransactionRepository repository;
+    private final String defaultShortCode;
+    private final int maxEntries;
+    private final long settledTtlMillis;
+    private final long pendingTimeoutMillis;
+
+    private final LongAdder untracked = new LongAdder();
+    private final AtomicBoolean sweepRequested = new AtomicBoolean();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mpesa-transaction-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TransactionStore(MpesaConfig config, MpesaMetrics metrics, TransactionRepository repository) {
+        this.metrics = metrics;
+        this.repository = repository;
+        this.defaultShortCode = config.getShortCode();
+        this.maxEntries = config.getTransactionsMaxEntries();
+        this.settledTtlMillis = TimeUnit.SECONDS.toMillis(config.getTransactionsSettledTtlSeconds());
+        this.pendingTimeoutMillis = TimeUnit.SECONDS.toMillis(config.getTransactionsPendingTimeoutSeconds());
+        sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Records a push for the shortcode in mpesa.* that Safaricom accepted (ResponseCode 0).
+     */
+    public void recordPending(String checkoutRequestId, String merchantRequestId, String phone, int amount) {
+        recordPending(checkoutRequestId, merchantRequestId, phone, amount, defaultShortCode);
+    }
+
+    /**
+     * Records a push that Safaricom accepted (ResponseCode 0).
+     *
+     * @param shortCode the tenant's shortcode, used to tag the push-to-callback time
+     */
+    public void recordPending(String checkoutRequestId, String merchantRequestId, String phone, int amount,
+                              String shortCode) {
+        Entry pending = new Entry(merchantRequestId, parsePhone(phone), amount,
+                System.currentTimeMillis(), 0L, (byte) TransactionStatus.PENDING.ordinal(), -1, null, shortCode);
+        // A very fast callback may already have settled the entry - never downgrade it
+        if (!hasRoom() || entries.putIfAbsent(checkoutRequestId, pending) == null) {
+            repository.save(pending.toView(checkoutRequestId));
+        }
+    }
+
+    /**
+     * Settles the transaction from its callback (live or replayed from the journal).
+     */
+    @Override
+    public void onCallback(StkCallback callback) {
+        long now = System.currentTimeMillis();
+        if (callback.receivedAt() < now - settledTtlMillis) {
+            return; // Replayed from the journal but already past its retention
+        }
+        byte status = (byte) TransactionStatus.fromResultCode(callback.resultCode()).ordinal();
+        int callbackAmount = callback.amount() != null ? callback.amount().intValue() : 0;
+        long[] pendingSince = {-1};
+        String[] pendingShortCode = {null};
+        Entry[] settled = {null};
+
+        entries.compute(callback.checkoutRequestId(), (id, existing) -> {
+            if (existing == null) {
+                settled[0] = new Entry(callback.merchantRequestId(), parsePhone(callback.phoneNumber()),
+                        callbackAmount, callback.receivedAt(), callback.receivedAt(), status, callback.resultCode(),
+                        callback.mpesaReceiptNumber(), null);
+                return hasRoom() ? settled[0] : null;
+            }
+            if (existing.isSettled()) {
+                if (existing.resultCode < 0 && callback.resultCode() >= 0) {
+                    // Timed out by the sweeper, but Safaricom did answer: the real result wins
+                    settled[0] = existing.complete(callback, status, callbackAmount, callback.receivedAt());
+                    return settled[0];
+                }
+                if (existing.receipt == null && callback.mpesaReceiptNumber() != null) {
+                    // Settled by an STK Push Query, which reports no receipt or amount
+                    settled[0] = existing.complete(callback, status, callbackAmount, existing.settledAt);
+                    return settled[0];
+                }
+                return existing; // Duplicate callback
+            }
+            pendingSince[0] = existing.createdAt;
+            pendingShortCode[0] = existing.shortCode;
+            settled[0] = existing.settle(status, callback.resultCode(), callback.mpesaReceiptNumber(),
+                    callback.receivedAt());
+            return settled[0];
+        });
+
+        if (settled[0] != null) {
+            repository.save(settled[0].toView(callback.checkoutRequestId()));
+        }
+        // Only pushes accepted by this process have a start time, so journal replays never count
+        if (pendingSince[0] >= 0) {
+            metrics.recordPushToCallback(pendingShortCode[0], callback.resultCode(),
+                    callback.receivedAt() - pendingSince[0]);
+        }
+    }
+
+    /**
+     * Looks up a transaction, in memory first and then in the TransactionRepository.
+     *
+     * @return the transaction, or null if it is unknown (or evicted and not persisted)
+     */
+    public TransactionView find(String checkoutRequestId) {
+        Entry entry = entries.get(checkoutRequestId);
+        return entry != null ? entry.toView(checkoutRequestId) : repository.find(checkoutRequestId);
+    }
+
+    /** Current status, or null if unknown */
+    public TransactionStatus statusOf(String checkoutRequestId) {
+        Entry entry = entries.get(checkoutRequestId);
+        return entry == null ? null : STATUSES[entry.status];
+    }
+
+    /** Number of tracked transactions */
+    public int size() { return entries.size(); }
+
+    /** Pushes or callbacks that were not tracked because the store was full */
+    public long getUntrackedCount() { return untracked.sum(); }
+
+    private boolean hasRoom() {
+        if (entries.size() < maxEntries) {
+            return true;
+        }
+        untracked.increment();
+        if (sweepRequested.compareAndSet(false, true)) {
+            sweeper.execute(this::sweep);
+        }
+        return false;
+    }
+
+    /**
+     * Evicts settled entries past their TTL and times out stale pending ones.
+     */
+    void sweep() {
+        sweepRequested.set(false);
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> mapEntry = iterator.next();
+            Entry entry = mapEntry.getValue();
+            if (entry.isSettled()) {
+                if (entry.settledAt < now - settledTtlMillis) {
+                    iterator.remove();
+                }
+            } else if (entry.createdAt < now - pendingTimeoutMillis) {
+                Entry[] timedOut = {null};
+                entries.computeIfPresent(mapEntry.getKey(), (id, current) -> {
+                    if (current.isSettled()) {
+                        return current;
+                    }
+                    timedOut[0] = current.settle((byte) TransactionStatus.TIMEOUT.ordinal(), -1, null, now);
+                    return timedOut[0];
+                });
+                if (timedOut[0] != null) {
+                    repository.save(timedOut[0].toView(mapEntry.getKey()));
+                }
+            }
+        }
+    }
+
+    private static long parsePhone(String phone) {
+        if (phone == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(phone.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Immutable, compact per-transaction state (~56 bytes plus the two id/receipt strings;
+     * the shortcode string is shared with the tenant that sent the push).
+     * Updates replace the whole entry through ConcurrentHashMap.compute.
+     */
+    private static final class Entry {
+        final String merchantRequestId;
+        final long phone;
+        final int amount;
+        final long createdAt;
+        final long settledAt;
+        final byte status;
+        final int resultCode;
+        final String receipt;
+        final String shortCode;
+
+        Entry(String merchantRequestId, long phone, int amount, long createdAt, long settledAt,
+              byte status, int resultCode, String receipt, String shortCode) {
+            this.merchantRequestId = merchantRequestId;
+            this.phone = phone;
+            this.amount = amount;
+            this.createdAt = createdAt;
+            this.settledAt = settledAt;
+            this.status = status;
+            this.resultCode = resultCode;
+            this.receipt = receipt;
+            this.shortCode = shortCode;
+        }
+
+        boolean isSettled() {
+            return STATUSES[status].isSettled();
+        }
+
+        Entry settle(byte newStatus, int newResultCode, String newReceipt, long at) {
+            return new Entry(merchantRequestId, phone, amount, createdAt, at, newStatus, newResultCode, newReceipt,
+                    shortCode);
+        }
+
+        /** Takes the result and the details a query-settled entry lacks from a later callback */
+        Entry complete(StkCallback callback, byte newStatus, int callbackAmount, long at) {
+            return new Entry(merchantRequestId != null ? merchantRequestId : callback.merchantRequestId(),
+                    phone >= 0 ? phone : parsePhone(callback.phoneNumber()),
+                    amount > 0 ? amount : callbackAmount,
+                    createdAt, at, newStatus, callback.resultCode(), callback.mpesaReceiptNumber(), shortCode);
+        }
+
+        TransactionView toView(String checkoutRequestId) {
+            boolean settled = isSettled();
+            return new TransactionView(checkoutRequestId, merchantRequestId, STATUSES[status],
+                    phone < 0 ? null : Long.toString(phone),
+                    amount,
+                    settled && resultCode >= 0 ? resultCode : null,
+                    receipt,
+                    createdAt,
+                    settled ? settledAt : null);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.mpesa.service;
+
+/**
+ * Thrown when a request names a tenant id that is not configured (or has been removed
+ * by a reload). Nothing was sent to Safaricom.
+ */
+public class UnknownTenantException extends RuntimeException {
+
+    private final String tenantId;
+
+    public UnknownTenantException(String tenantId) {
+        super("Unknown tenant: " + tenantId);
+        this.tenantId = tenantId;
+    }
+
+    public String getTenantId() { return tenantId; }
+}
@@ -0,0 +1,94 @@
+package com.mpesa.service;
+
+import java.net.http.HttpResponse;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Upstream Guard - Circuit breaker plus adaptive concurrency limit around one Daraja endpoint
+ *
+ * Every call first asks the breaker, then the limiter; either one refusing raises
+ * UpstreamUnavailableException without touching the network. The outcome feeds both:
+ * HTTP 5xx, 429 and I/O errors (including timeouts) count as failures, everything else
+ * (including 4xx validation errors) means the upstream is healthy.
+ */
+public class UpstreamGuard {
+
+    private static final long LIMIT_RETRY_AFTER_MILLIS = 1_000;
+
+    private final String name;
+    private final CircuitBreaker breaker;
+    private final AdaptiveConcurrencyLimit limit;
+
+    public UpstreamGuard(String name, CircuitBreaker breaker, AdaptiveConcurrencyLimit limit) {
+        this.name = name;
+        this.breaker = breaker;
+        this.limit = limit;
+    }
+
+    /**
+     * Runs a blocking HTTP call under the guard.
+     *
+     * @throws UpstreamUnavailableException if the call was refused (nothing was sent)
+     */
+    public <T> HttpResponse<T> send(Callable<HttpResponse<T>> call) throws Exception {
+        acquire();
+        long start = System.nanoTime();
+        HttpResponse<T> response;
+        try {
+            response = call.call();
+        } catch (Exception e) {
+            complete(start, 0, e);
+            throw e;
+        }
+        complete(start, response.statusCode(), null);
+        return response;
+    }
+
+    /**
+     * Runs a non-blocking HTTP call under the guard. A refused call returns a future
+     * failed with UpstreamUnavailableException.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(Supplier<CompletableFuture<HttpResponse<T>>> call) {
+        try {
+            acquire();
+        } catch (UpstreamUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<T>> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            complete(start, 0, e);
+            return CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((response, error) ->
+                complete(start, response != null ? response.statusCode() : 0, error));
+    }
+
+    private void acquire() {
+        if (!breaker.tryAcquire()) {
+            throw new UpstreamUnavailableException(name, UpstreamUnavailableException.CIRCUIT_OPEN,
+                    breaker.getRetryAfterMillis());
+        }
+        if (!limit.tryAcquire()) {
+            breaker.cancel();
+            throw new UpstreamUnavailableException(name, UpstreamUnavailableException.CONCURRENCY_LIMIT,
+                    LIMIT_RETRY_AFTER_MILLIS);
+        }
+    }
+
+    private void complete(long startNanos, int status, Throwable error) {
+        boolean healthy = error == null && status < 500 && status != 429;
+        limit.release(System.nanoTime() - startNanos, !healthy);
+        breaker.onResult(healthy);
+    }
+
+    public String getName() { return name; }
+
+    public CircuitBreaker getBreaker() { return breaker; }
+
+    public AdaptiveConcurrencyLimit getLimit() { return limit; }
+}
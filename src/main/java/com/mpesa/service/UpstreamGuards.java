@@ -0,0 +1,53 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One UpstreamGuard per Daraja endpoint, so a failing OAuth endpoint doesn't
+ * trip the breaker for STK Push and vice versa. Limits come from mpesa.upstream.*.
+ *
+ * Every Tenant gets its own set, so a paybill that saturates or trips its limits
+ * leaves the other tenants' upstream capacity untouched.
+ */
+public class UpstreamGuards {
+
+    private final UpstreamGuard oauth;
+    private final UpstreamGuard stkPush;
+    private final UpstreamGuard query;
+
+    public UpstreamGuards(MpesaConfig config) {
+        this.oauth = create("oauth", config);
+        this.stkPush = create("stkpush", config);
+        this.query = create("stkpushquery", config);
+    }
+
+    private static UpstreamGuard create(String name, MpesaConfig config) {
+        CircuitBreaker breaker = new CircuitBreaker(
+                config.getUpstreamBreakerWindowSize(),
+                config.getUpstreamBreakerMinimumCalls(),
+                config.getUpstreamBreakerFailureRateThreshold(),
+                TimeUnit.SECONDS.toMillis(config.getUpstreamBreakerOpenSeconds()),
+                config.getUpstreamBreakerHalfOpenCalls());
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+                config.getUpstreamLimitInitial(),
+                config.getUpstreamLimitMin(),
+                config.getUpstreamLimitMax(),
+                config.getUpstreamLimitRttTolerance(),
+                config.getUpstreamLimitBackoffRatio());
+        return new UpstreamGuard(name, breaker, limit);
+    }
+
+    /** GET /oauth/v1/generate */
+    public UpstreamGuard oauth() { return oauth; }
+
+    /** POST /mpesa/stkpush/v1/processrequest */
+    public UpstreamGuard stkPush() { return stkPush; }
+
+    /** POST /mpesa/stkpushquery/v1/query */
+    public UpstreamGuard query() { return query; }
+
+    public List<UpstreamGuard> all() { return List.of(oauth, stkPush, query); }
+}
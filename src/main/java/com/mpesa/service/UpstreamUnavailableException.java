@@ -0,0 +1,76 @@
+package com.mpesa.service;
+
+/**
+ * Thrown instead of calling Safaricom when the circuit breaker is open, the
+ * concurrency limit is reached, the tenant's STK Push rate is used up or the push
+ * couldn't be scheduled in time. Nothing was sent upstream, so retrying later is safe.
+ *
+ * Only concurrency-limit refusals are retried in-process; an open circuit stays open
+ * for longer than any request's retry budget.
+ */
+public class UpstreamUnavailableException extends DarajaException {
+
+    /** The circuit breaker is open after repeated upstream failures */
+    public static final String CIRCUIT_OPEN = "circuit_open";
+
+    /** Too many calls are already in flight for the upstream's current latency */
+    public static final String CONCURRENCY_LIMIT = "concurrency_limit";
+
+    /** The tenant has used up its STK Push rate (upstream is the tenant id then) */
+    public static final String RATE_LIMIT = "rate_limit";
+
+    /** The tenant's scheduler queue for the lane is full (upstream is the tenant id then) */
+    public static final String QUEUE_FULL = "queue_full";
+
+    /** The push waited in the scheduler longer than mpesa.scheduler.max-wait-millis */
+    public static final String QUEUE_TIMEOUT = "queue_timeout";
+
+    /** Suggested wait after a scheduler refusal */
+    private static final long QUEUE_RETRY_AFTER_MILLIS = 1_000;
+
+    private final String upstream;
+    private final String reason;
+    private final long retryAfterMillis;
+
+    public UpstreamUnavailableException(String upstream, String reason, long retryAfterMillis) {
+        this("Safaricom " + upstream + " temporarily unavailable (" + reason + ")", upstream, reason,
+                retryAfterMillis);
+    }
+
+    private UpstreamUnavailableException(String message, String upstream, String reason, long retryAfterMillis) {
+        super(Kind.UNAVAILABLE, message, 0, null, null, null);
+        this.upstream = upstream;
+        this.reason = reason;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /** The tenant's STK Push rate limit refused the push */
+    public static UpstreamUnavailableException rateLimited(String tenantId, long retryAfterMillis) {
+        return new UpstreamUnavailableException("Tenant " + tenantId + " is over its STK Push rate (" + RATE_LIMIT + ")",
+                tenantId, RATE_LIMIT, retryAfterMillis);
+    }
+
+    /** The tenant already has mpesa.scheduler.max-queued-per-tenant pushes waiting in the lane */
+    public static UpstreamUnavailableException queueFull(String tenantId, String lane) {
+        return new UpstreamUnavailableException("Tenant " + tenantId + " has too many " + lane
+                + " pushes queued (" + QUEUE_FULL + ")", tenantId, QUEUE_FULL, QUEUE_RETRY_AFTER_MILLIS);
+    }
+
+    /** The push was dropped after waiting maxWaitMillis for a dispatch slot */
+    public static UpstreamUnavailableException queueTimeout(String tenantId, String lane, long maxWaitMillis) {
+        return new UpstreamUnavailableException("Tenant " + tenantId + " " + lane + " push not dispatched within "
+                + maxWaitMillis + " ms (" + QUEUE_TIMEOUT + ")", tenantId, QUEUE_TIMEOUT, QUEUE_RETRY_AFTER_MILLIS);
+    }
+
+    @Override
+    public boolean isRetryable() {
+        return CONCURRENCY_LIMIT.equals(reason);
+    }
+
+    public String getUpstream() { return upstream; }
+
+    public String getReason() { return reason; }
+
+    /** Suggested wait before retrying, 0 if unknown */
+    public long getRetryAfterMillis() { return retryAfterMillis; }
+}
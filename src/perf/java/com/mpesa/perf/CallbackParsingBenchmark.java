@@ -0,0 +1,28 @@
+package com.mpesa.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpesa.dto.StkCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing a successful STK callback payload into StkCallback, as the journal writer does.
+ */
+@State(Scope.Benchmark)
+public class CallbackParsingBenchmark {
+
+    private static final String PAYLOAD = "{\"Body\":{\"stkCallback\":{\"MerchantRequestID\":\"29115-34620561-1\","
+            + "\"CheckoutRequestID\":\"ws_CO_191220191020363925\",\"ResultCode\":0,"
+            + "\"ResultDesc\":\"The service request is processed successfully.\","
+            + "\"CallbackMetadata\":{\"Item\":[{\"Name\":\"Amount\",\"Value\":1.00},"
+            + "{\"Name\":\"MpesaReceiptNumber\",\"Value\":\"NLJ7RT61SV\"},{\"Name\":\"TransactionDate\",\"Value\":20191219102115},"
+            + "{\"Name\":\"PhoneNumber\",\"Value\":254708374149}]}}}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Benchmark
+    public StkCallback parse() throws Exception {
+        return StkCallback.fromPayload(objectMapper.readTree(PAYLOAD), 0L);
+    }
+}
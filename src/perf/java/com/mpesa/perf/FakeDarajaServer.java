@@ -0,0 +1,340 @@
+package com.mpesa.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fake Daraja Server - Local stand-in for Safaricom's API
+ *
+ * Serves the endpoints MpesaService talks to, so benchmarks and load tests never
+ * leave the machine:
+ * - GET  /oauth/v1/generate
+ * - POST /mpesa/stkpush/v1/processrequest
+ * - POST /mpesa/stkpushquery/v1/query
+ *
+ * Point the application at it with mpesa.base-url=http://localhost:{port}.
+ *
+ * With callbacks enabled, every accepted push is settled a little later by POSTing a
+ * Safaricom-shaped callback to the CallBackURL from the push body, the same way the
+ * real API reaches MpesaController.callback. Latency, error rates and callback delays
+ * come from {@link Behaviour}.
+ */
+public class FakeDarajaServer implements AutoCloseable {
+
+    /** ResultCode Safaricom uses when the customer dismisses the prompt */
+    static final int RESULT_CANCELLED = 1032;
+
+    private static final DateTimeFormatter TRANSACTION_DATE = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    private static final String RECEIPT_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    /**
+     * How the fake behaves under load.
+     *
+     * @param minLatencyMillis     Lower bound of the delay added before every response
+     * @param maxLatencyMillis     Upper bound of that delay (uniformly distributed)
+     * @param oauthErrorRate       Fraction of token requests answered with a 500
+     * @param pushErrorRate        Fraction of STK pushes answered with a 503 "System is busy"
+     * @param callbacksEnabled     Whether accepted pushes get a callback at all
+     * @param minCallbackDelayMillis Lower bound of the time between accepting a push and its callback
+     * @param maxCallbackDelayMillis Upper bound of that time
+     * @param cancelRate           Fraction of callbacks that report ResultCode 1032 (cancelled)
+     * @param callbackDropRate     Fraction of callbacks never sent; only stkpushquery reveals the result
+     */
+    public record Behaviour(
+            long minLatencyMillis,
+            long maxLatencyMillis,
+            double oauthErrorRate,
+            double pushErrorRate,
+            boolean callbacksEnabled,
+            long minCallbackDelayMillis,
+            long maxCallbackDelayMillis,
+            double cancelRate,
+            double callbackDropRate) {
+
+        /** Instant, error-free responses and no callbacks - what the JMH benchmarks use */
+        public static final Behaviour INSTANT = new Behaviour(0, 0, 0, 0, false, 0, 0, 0, 0);
+    }
+
+    /** Result decided for an accepted push, kept until its callback goes out */
+    private record Outcome(String merchantRequestId, int resultCode, boolean settled) {
+    }
+
+    private final Behaviour behaviour;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService callbackScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "fake-daraja-callbacks");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final HttpClient callbackClient = HttpClient.newBuilder().executor(executor).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong checkoutSequence = new AtomicLong();
+    private final Map<String, Outcome> outcomes = new ConcurrentHashMap<>();
+
+    private final LongAdder pushesAccepted = new LongAdder();
+    private final LongAdder pushesRejected = new LongAdder();
+    private final LongAdder callbacksDelivered = new LongAdder();
+    private final LongAdder callbacksFailed = new LongAdder();
+    private final LongAdder callbacksDropped = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+
+    public FakeDarajaServer(int port) throws IOException {
+        this(port, Behaviour.INSTANT);
+    }
+
+    public FakeDarajaServer(int port, Behaviour behaviour) throws IOException {
+        this.behaviour = behaviour;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/oauth/v1/generate", this::handleOAuth);
+        server.createContext("/mpesa/stkpush/v1/processrequest", this::handleStkPush);
+        server.createContext("/mpesa/stkpushquery/v1/query", this::handleStkPushQuery);
+    }
+
+    public FakeDarajaServer start() {
+        server.start();
+        return this;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + port();
+    }
+
+    public long getPushesAccepted() {
+        return pushesAccepted.sum();
+    }
+
+    public long getPushesRejected() {
+        return pushesRejected.sum();
+    }
+
+    public long getCallbacksDelivered() {
+        return callbacksDelivered.sum();
+    }
+
+    public long getCallbacksFailed() {
+        return callbacksFailed.sum();
+    }
+
+    public long getCallbacksDropped() {
+        return callbacksDropped.sum();
+    }
+
+    public long getQueryCount() {
+        return queries.sum();
+    }
+
+    /** Accepted pushes whose callback has not been sent yet */
+    public int getPendingCallbacks() {
+        return (int) outcomes.values().stream().filter(outcome -> !outcome.settled()).count();
+    }
+
+    private void handleOAuth(HttpExchange exchange) throws IOException {
+        simulateLatency();
+        if (chance(behaviour.oauthErrorRate())) {
+            respond(exchange, 500, "{\"requestId\":\"fake\",\"errorCode\":\"500.001.1001\","
+                    + "\"errorMessage\":\"Internal Server Error\"}");
+            return;
+        }
+        respond(exchange, 200, "{\"access_token\":\"fake-token\",\"expires_in\":\"3599\"}");
+    }
+
+    private void handleStkPush(HttpExchange exchange) throws IOException {
+        // The body is only needed to address the callback; otherwise skip parsing it
+        JsonNode request = null;
+        if (behaviour.callbacksEnabled()) {
+            request = objectMapper.readTree(exchange.getRequestBody());
+        } else {
+            drain(exchange.getRequestBody());
+        }
+        simulateLatency();
+        if (chance(behaviour.pushErrorRate())) {
+            pushesRejected.increment();
+            respond(exchange, 503, "{\"requestId\":\"fake\",\"errorCode\":\"500.003.02\","
+                    + "\"errorMessage\":\"System is busy. Please try again in few minutes.\"}");
+            return;
+        }
+
+        long id = checkoutSequence.incrementAndGet();
+        String merchantRequestId = "29115-" + id + "-1";
+        String checkoutRequestId = "ws_CO_FAKE" + id;
+        pushesAccepted.increment();
+        respond(exchange, 200, "{\"MerchantRequestID\":\"" + merchantRequestId + "\","
+                + "\"CheckoutRequestID\":\"" + checkoutRequestId + "\","
+                + "\"ResponseCode\":\"0\","
+                + "\"ResponseDescription\":\"Success. Request accepted for processing\","
+                + "\"CustomerMessage\":\"Success. Request accepted for processing\"}");
+
+        if (request != null) {
+            scheduleCallback(request, merchantRequestId, checkoutRequestId);
+        }
+    }
+
+    private void handleStkPushQuery(HttpExchange exchange) throws IOException {
+        queries.increment();
+        String checkoutRequestId = objectMapper.readTree(exchange.getRequestBody()).path("CheckoutRequestID").asText();
+        simulateLatency();
+
+        Outcome outcome = outcomes.get(checkoutRequestId);
+        if (outcome != null && !outcome.settled()) {
+            respond(exchange, 500, "{\"requestId\":\"fake\",\"errorCode\":\"500.001.1001\","
+                    + "\"errorMessage\":\"The transaction is being processed\"}");
+            return;
+        }
+        if (outcome != null) {
+            outcomes.remove(checkoutRequestId);
+        }
+        int resultCode = outcome != null ? outcome.resultCode() : 0;
+        String merchantRequestId = outcome != null ? outcome.merchantRequestId() : "29115-0-1";
+        respond(exchange, 200, "{\"ResponseCode\":\"0\","
+                + "\"ResponseDescription\":\"The service request has been accepted successsfully\","
+                + "\"MerchantRequestID\":\"" + merchantRequestId + "\","
+                + "\"CheckoutRequestID\":\"" + checkoutRequestId + "\","
+                + "\"ResultCode\":\"" + resultCode + "\","
+                + "\"ResultDesc\":\"" + resultDescription(resultCode) + "\"}");
+    }
+
+    private void scheduleCallback(JsonNode request, String merchantRequestId, String checkoutRequestId) {
+        int resultCode = chance(behaviour.cancelRate()) ? RESULT_CANCELLED : 0;
+        outcomes.put(checkoutRequestId, new Outcome(merchantRequestId, resultCode, false));
+
+        long delay = between(behaviour.minCallbackDelayMillis(), behaviour.maxCallbackDelayMillis());
+        callbackScheduler.schedule(() -> {
+            if (chance(behaviour.callbackDropRate())) {
+                // Result exists upstream but never reaches us: left for stkpushquery to find
+                outcomes.put(checkoutRequestId, new Outcome(merchantRequestId, resultCode, true));
+                callbacksDropped.increment();
+                return;
+            }
+            outcomes.remove(checkoutRequestId);
+            sendCallback(request, merchantRequestId, checkoutRequestId, resultCode);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void sendCallback(JsonNode request, String merchantRequestId, String checkoutRequestId, int resultCode) {
+        String payload = callbackPayload(request, merchantRequestId, checkoutRequestId, resultCode);
+        HttpRequest callback;
+        try {
+            callback = HttpRequest.newBuilder()
+                    .uri(URI.create(request.path("CallBackURL").asText()))
+                    .header("Content-Type", "application/json")
+                    .timeout(Duration.ofSeconds(10))
+                    .POST(HttpRequest.BodyPublishers.ofString(payload))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            callbacksFailed.increment();
+            return;
+        }
+        callbackClient.sendAsync(callback, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error == null && response.statusCode() == 200) {
+                        callbacksDelivered.increment();
+                    } else {
+                        callbacksFailed.increment();
+                    }
+                });
+    }
+
+    private static String callbackPayload(JsonNode request, String merchantRequestId,
+                                          String checkoutRequestId, int resultCode) {
+        StringBuilder json = new StringBuilder(512)
+                .append("{\"Body\":{\"stkCallback\":{")
+                .append("\"MerchantRequestID\":\"").append(merchantRequestId).append("\",")
+                .append("\"CheckoutRequestID\":\"").append(checkoutRequestId).append("\",")
+                .append("\"ResultCode\":").append(resultCode).append(',')
+                .append("\"ResultDesc\":\"").append(resultDescription(resultCode)).append('"');
+        if (resultCode == 0) {
+            json.append(",\"CallbackMetadata\":{\"Item\":[")
+                    .append("{\"Name\":\"Amount\",\"Value\":").append(request.path("Amount").asInt()).append(".00},")
+                    .append("{\"Name\":\"MpesaReceiptNumber\",\"Value\":\"").append(receiptNumber()).append("\"},")
+                    .append("{\"Name\":\"TransactionDate\",\"Value\":")
+                    .append(TRANSACTION_DATE.format(LocalDateTime.now())).append("},")
+                    .append("{\"Name\":\"PhoneNumber\",\"Value\":").append(request.path("PhoneNumber").asText())
+                    .append("}]}");
+        }
+        return json.append("}}}").toString();
+    }
+
+    private static String resultDescription(int resultCode) {
+        return resultCode == 0
+                ? "The service request is processed successfully."
+                : "Request cancelled by user";
+    }
+
+    private static String receiptNumber() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] receipt = new char[10];
+        for (int i = 0; i < receipt.length; i++) {
+            receipt[i] = RECEIPT_ALPHABET.charAt(random.nextInt(RECEIPT_ALPHABET.length()));
+        }
+        return new String(receipt);
+    }
+
+    private void simulateLatency() {
+        long latency = between(behaviour.minLatencyMillis(), behaviour.maxLatencyMillis());
+        if (latency <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean chance(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private static long between(long min, long max) {
+        return max > min ? ThreadLocalRandom.current().nextLong(min, max + 1) : min;
+    }
+
+    private static void drain(InputStream body) throws IOException {
+        body.transferTo(OutputStream.nullOutputStream());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        callbackScheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+}
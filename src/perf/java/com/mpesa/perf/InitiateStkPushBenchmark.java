@@ -0,0 +1,65 @@
+package com.mpesa.perf;
+
+import com.mpesa.MpesaApplication;
+import com.mpesa.dto.Mpesamapping;
+import com.mpesa.service.MpesaService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Full MpesaService.initiateStkPush path (token cache, password, encoding, HTTP round trip,
+ * response handling) against an in-process FakeDarajaServer.
+ *
+ * The application context is started without the web server; only the service is exercised.
+ */
+@State(Scope.Benchmark)
+public class InitiateStkPushBenchmark {
+
+    private FakeDarajaServer daraja;
+    private Path dataDir;
+    private ConfigurableApplicationContext context;
+    private MpesaService mpesaService;
+    private final Mpesamapping mapping = new Mpesamapping("254796022656", 1);
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        daraja = new FakeDarajaServer(0).start();
+        dataDir = Files.createTempDirectory("bench-data");
+        context = new SpringApplicationBuilder(MpesaApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "mpesa.base-url=" + daraja.baseUrl(),
+                        "mpesa.query.enabled=false",
+                        "mpesa.idempotency.enabled=false")
+                .properties(LoadDriver.dataProperties(dataDir))
+                .run();
+        mpesaService = context.getBean(MpesaService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        context.close();
+        daraja.close();
+        StartupBenchmark.delete(dataDir);
+    }
+
+    @Benchmark
+    public String sync() {
+        return mpesaService.initiateStkPush(mapping);
+    }
+
+    @Benchmark
+    public String async() {
+        return mpesaService.initiateStkPushAsync(mapping).join();
+    }
+}
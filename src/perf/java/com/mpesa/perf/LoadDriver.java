@@ -0,0 +1,293 @@
+package com.mpesa.perf;
+
+import com.mpesa.MpesaApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load Driver - Closed-loop load test of the whole application against FakeDarajaServer
+ *
+ * Starts the fake Daraja server, boots the application on a random port with
+ * mpesa.base-url pointing at the fake and mpesa.callback-url pointing back at its own
+ * /api/mpesa/callback, then keeps --concurrency clients POSTing to /api/mpesa/stkpush
+ * for --duration seconds. Reports p50/p99/max latency and sustained pushes per second,
+ * plus how many pushes were settled by callbacks.
+ *
+ * Run:
+ *   ./mvnw -Pperf test-compile exec:exec -Dperf.main=com.mpesa.perf.LoadDriver \
+ *       -Dperf.args="--concurrency=128 --duration=60 --latency=50-300 --callback-delay=1000-5000"
+ *
+ * To load an application that is already running, pass --target=http://host:port and
+ * start that application with mpesa.base-url and mpesa.callback-url set to match
+ * (--fake-port fixes the fake server's port for this).
+ *
+ * Options (all optional):
+ *   --concurrency=64        Concurrent clients
+ *   --duration=30           Measured seconds
+ *   --warmup=10             Seconds of load before measuring starts
+ *   --latency=0-0           Fake upstream latency range in ms
+ *   --callback-delay=200-2000  Time from accepted push to callback, ms
+ *   --push-error-rate=0     Fraction of pushes the fake rejects with a 503
+ *   --oauth-error-rate=0    Fraction of token requests the fake fails
+ *   --cancel-rate=0.1       Fraction of callbacks reporting "cancelled by user"
+ *   --callback-drop-rate=0  Fraction of callbacks never sent (stkpushquery finds them)
+ *   --fake-port=0           Port for the fake Daraja server (0 = random)
+ *   --target=               Base URL of an already-running application
+ *   --async=true            mpesa.execution-mode for the embedded application
+ */
+public class LoadDriver {
+
+    private static final String PHONE_PREFIX = "2547";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        long[] latency = range(options.getOrDefault("latency", "0-0"));
+        long[] callbackDelay = range(options.getOrDefault("callback-delay", "200-2000"));
+
+        FakeDarajaServer.Behaviour behaviour = new FakeDarajaServer.Behaviour(
+                latency[0], latency[1],
+                Double.parseDouble(options.getOrDefault("oauth-error-rate", "0")),
+                Double.parseDouble(options.getOrDefault("push-error-rate", "0")),
+                true,
+                callbackDelay[0], callbackDelay[1],
+                Double.parseDouble(options.getOrDefault("cancel-rate", "0.1")),
+                Double.parseDouble(options.getOrDefault("callback-drop-rate", "0")));
+
+        try (FakeDarajaServer daraja = new FakeDarajaServer(
+                Integer.parseInt(options.getOrDefault("fake-port", "0")), behaviour).start()) {
+            System.out.println("Fake Daraja listening on " + daraja.baseUrl());
+
+            ConfigurableApplicationContext context = null;
+            Path dataDir = null;
+            String target = options.get("target");
+            if (target == null) {
+                int port = freePort();
+                dataDir = Files.createTempDirectory("mpesa-load");
+                context = startApplication(port, daraja, dataDir, options);
+                target = "http://127.0.0.1:" + port;
+            }
+
+            try {
+                Report report = run(target, concurrency, warmupSeconds, durationSeconds);
+                // Give in-flight callbacks their maximum delay to land before counting them
+                Thread.sleep(callbackDelay[1] + 1000);
+                report.print(daraja);
+            } finally {
+                if (context != null) {
+                    context.close();
+                    StartupBenchmark.delete(dataDir);
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext startApplication(int port, FakeDarajaServer daraja, Path dataDir,
+                                                                   Map<String, String> options) {
+        boolean async = Boolean.parseBoolean(options.getOrDefault("async", "true"));
+        return new SpringApplicationBuilder(MpesaApplication.class)
+                .properties(
+                        "server.port=" + port,
+                        "mpesa.base-url=" + daraja.baseUrl(),
+                        "mpesa.callback-url=http://127.0.0.1:" + port + "/api/mpesa/callback",
+                        "mpesa.execution-mode=" + (async ? "async" : "sync"),
+                        "mpesa.idempotency.enabled=false")
+                .properties(dataProperties(dataDir))
+                .run();
+    }
+
+    private static Report run(String target, int concurrency, int warmupSeconds, int durationSeconds)
+            throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        URI uri = URI.create(target + "/api/mpesa/stkpush");
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long stopAt = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        System.out.printf("Driving %s with %d clients: %ds warm-up, %ds measured%n",
+                uri, concurrency, warmupSeconds, durationSeconds);
+
+        List<Future<Worker>> futures = new ArrayList<>(concurrency);
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                Worker worker = new Worker(client, uri, measureFrom, stopAt);
+                futures.add(clients.submit(() -> {
+                    worker.run();
+                    return worker;
+                }));
+            }
+        }
+
+        Report report = new Report(durationSeconds);
+        for (Future<Worker> future : futures) {
+            report.add(future.get());
+        }
+        return report;
+    }
+
+    /** One closed-loop client: sends the next push as soon as the previous one answers */
+    private static final class Worker {
+
+        private final HttpClient client;
+        private final URI uri;
+        private final long measureFrom;
+        private final long stopAt;
+
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+
+        Worker(HttpClient client, URI uri, long measureFrom, long stopAt) {
+            this.client = client;
+            this.uri = uri;
+            this.measureFrom = measureFrom;
+            this.stopAt = stopAt;
+        }
+
+        void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long now;
+            while ((now = System.nanoTime()) < stopAt) {
+                String phone = PHONE_PREFIX + (10_000_000 + random.nextInt(90_000_000));
+                HttpRequest request = HttpRequest.newBuilder(uri)
+                        .header("Content-Type", "application/json")
+                        .timeout(Duration.ofSeconds(30))
+                        .POST(HttpRequest.BodyPublishers.ofString(
+                                "{\"phone\":\"" + phone + "\",\"amount\":" + (1 + random.nextInt(1000)) + "}"))
+                        .build();
+                boolean ok;
+                try {
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    ok = response.statusCode() == 200 && response.body().contains("\"ResponseCode\":\"0\"");
+                } catch (Exception e) {
+                    ok = false;
+                }
+                long end = System.nanoTime();
+                if (now < measureFrom) {
+                    continue;
+                }
+                if (!ok) {
+                    errors++;
+                }
+                record(end - now);
+            }
+        }
+
+        private void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    private static final class Report {
+
+        private final int durationSeconds;
+        private long[] latencies = new long[0];
+        private long errors;
+
+        Report(int durationSeconds) {
+            this.durationSeconds = durationSeconds;
+        }
+
+        void add(Worker worker) {
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + worker.count);
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+            errors += worker.errors;
+        }
+
+        void print(FakeDarajaServer daraja) {
+            Arrays.sort(latencies);
+            long total = latencies.length;
+            System.out.println();
+            System.out.println("=== LOAD TEST RESULT ===");
+            System.out.printf("Requests:        %d (%d failed)%n", total, errors);
+            System.out.printf("Throughput:      %.1f pushes/sec%n", (total - errors) / (double) durationSeconds);
+            System.out.printf("Latency p50:     %.2f ms%n", percentile(0.50));
+            System.out.printf("Latency p99:     %.2f ms%n", percentile(0.99));
+            System.out.printf("Latency max:     %.2f ms%n", total == 0 ? 0.0 : latencies[latencies.length - 1] / 1e6);
+            System.out.printf("Upstream:        %d accepted, %d rejected, %d queries%n",
+                    daraja.getPushesAccepted(), daraja.getPushesRejected(), daraja.getQueryCount());
+            System.out.printf("Callbacks:       %d delivered, %d failed, %d dropped, %d still pending%n",
+                    daraja.getCallbacksDelivered(), daraja.getCallbacksFailed(),
+                    daraja.getCallbacksDropped(), daraja.getPendingCallbacks());
+        }
+
+        private double percentile(double quantile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * latencies.length) - 1;
+            return latencies[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    /** Parses "min-max" (or a single value) in milliseconds */
+    private static long[] range(String value) {
+        int dash = value.indexOf('-');
+        if (dash < 0) {
+            long fixed = Long.parseLong(value);
+            return new long[]{fixed, fixed};
+        }
+        return new long[]{Long.parseLong(value.substring(0, dash)), Long.parseLong(value.substring(dash + 1))};
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Properties that put everything the application writes (journal, audit log, schedules,
+     * H2 database, reconciliation files) under dataDir instead of ./data of the working tree.
+     */
+    static String[] dataProperties(Path dataDir) {
+        return new String[]{
+                "mpesa.journal.dir=" + dataDir.resolve("journal"),
+                "mpesa.audit.dir=" + dataDir.resolve("audit"),
+                "mpesa.schedules.file=" + dataDir.resolve("schedules").resolve("schedules.dat"),
+                "mpesa.persistence.jdbc-url=jdbc:h2:file:" + dataDir.resolve("db").resolve("mpesa"),
+                "mpesa.reconciliation.statement-dir=" + dataDir.resolve("statements"),
+                "mpesa.reconciliation.report-dir=" + dataDir.resolve("reconciliation")};
+    }
+}
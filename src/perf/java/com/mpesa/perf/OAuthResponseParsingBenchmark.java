@@ -0,0 +1,32 @@
+package com.mpesa.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpesa.dto.OAuthTokenResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing the /oauth/v1/generate response: tree model (original code) vs typed DTO.
+ */
+@State(Scope.Benchmark)
+public class OAuthResponseParsingBenchmark {
+
+    private static final String RESPONSE = "{\"access_token\":\"c9SQxWWhmdVRlyh0zh8gZDTkubVF\",\"expires_in\":\"3599\"}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Benchmark
+    public void treeModel(Blackhole blackhole) throws Exception {
+        JsonNode json = objectMapper.readTree(RESPONSE);
+        blackhole.consume(json.get("access_token").asText());
+        blackhole.consume(json.path("expires_in").asLong());
+    }
+
+    @Benchmark
+    public OAuthTokenResponse typedDto() throws Exception {
+        return objectMapper.readValue(RESPONSE, OAuthTokenResponse.class);
+    }
+}
@@ -0,0 +1,39 @@
+package com.mpesa.perf;
+
+import com.mpesa.service.StkPasswordGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Timestamp + password: the original per-request SimpleDateFormat/Base64 code
+ * vs StkPasswordGenerator's once-per-second cache.
+ */
+@State(Scope.Benchmark)
+public class PasswordGenerationBenchmark {
+
+    private static final String SHORT_CODE = "174379";
+    private static final String PASSKEY = "bfb279f9aa9bdbcf158e97dd71a467cd2e0c893059b10f78e6b72ada1ed2c919";
+
+    private final StkPasswordGenerator generator = new StkPasswordGenerator();
+
+    @Benchmark
+    public void perRequest(Blackhole blackhole) {
+        String timestamp = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+        String password = Base64.getEncoder().encodeToString(
+                (SHORT_CODE + PASSKEY + timestamp).getBytes(StandardCharsets.UTF_8));
+        blackhole.consume(timestamp);
+        blackhole.consume(password);
+    }
+
+    @Benchmark
+    public StkPasswordGenerator.StkPassword cachedPerSecond() {
+        return generator.generate(SHORT_CODE, PASSKEY);
+    }
+}
@@ -0,0 +1,239 @@
+package com.mpesa.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Startup Benchmark - Time from JVM launch to the first successful push
+ *
+ * When pods are autoscaled on a traffic spike, what matters is how soon a new instance
+ * completes a payment, not when Spring logs "Started". Each launch starts the application
+ * as a separate JVM against FakeDarajaServer and measures the time from starting the
+ * process until POST /api/mpesa/stkpush first answers 200 with ResponseCode 0. Two
+ * variants are launched --runs times each:
+ * - plain:        java -jar target/mpesa-*.jar
+ * - fast-startup: the extracted jar in target/fast-startup, with the AOT-generated
+ *                 application context, the AppCDS archive and lazy initialization of
+ *                 non-critical beans (Spring profile fast-startup)
+ *
+ * Build both artifacts first, then run:
+ *   ./mvnw -Pfast-startup -DskipTests package
+ *   ./mvnw -Pperf test-compile exec:exec -Dperf.main=com.mpesa.perf.StartupBenchmark -Dperf.args="--runs=10"
+ *
+ * With --mode=train the fast-startup variant is launched once with -XX:ArchiveClassesAtExit,
+ * serves --train-pushes pushes (with their callbacks) and is stopped, which writes the
+ * class-data archive. The fast-startup Maven profile runs this during package.
+ *
+ * Options (all optional):
+ *   --mode=measure          measure, or train
+ *   --runs=5                Launches per variant
+ *   --plain-jar=            Fat jar (default: the jar in target/)
+ *   --fast-dir=target/fast-startup  Extracted fast-startup artifact and its archive
+ *   --train-pushes=200      Pushes sent by the training run
+ *   --timeout=120           Seconds a launch may take to serve its first push
+ */
+public class StartupBenchmark {
+
+    static final String ARCHIVE = "application.jsa";
+
+    /** How long a launch waits for FakeDarajaServer to deliver the outstanding callbacks */
+    private static final long CALLBACK_WAIT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadDriver.parseOptions(args);
+        Path fastDir = Path.of(options.getOrDefault("fast-dir", "target/fast-startup")).toAbsolutePath();
+        long timeoutNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("timeout", "120")));
+
+        FakeDarajaServer.Behaviour behaviour = new FakeDarajaServer.Behaviour(0, 0, 0, 0, true, 10, 100, 0.1, 0);
+        try (FakeDarajaServer daraja = new FakeDarajaServer(0, behaviour).start()) {
+            if ("train".equals(options.getOrDefault("mode", "measure"))) {
+                train(daraja, fastDir, Integer.parseInt(options.getOrDefault("train-pushes", "200")), timeoutNanos);
+                return;
+            }
+
+            int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+            Path plainJar = options.containsKey("plain-jar")
+                    ? Path.of(options.get("plain-jar")).toAbsolutePath() : findJar(Path.of("target").toAbsolutePath());
+            Path fastJar = findJar(fastDir);
+            if (!Files.exists(fastDir.resolve(ARCHIVE))) {
+                System.err.println("⚠️ No " + ARCHIVE + " in " + fastDir + ", measuring fast-startup without CDS");
+            }
+
+            long[] plain = new long[runs];
+            long[] fast = new long[runs];
+            // Interleaved, so drift on the machine affects both variants alike
+            for (int i = 0; i < runs; i++) {
+                plain[i] = launch(daraja, plainJar, List.of(), 0, timeoutNanos);
+                fast[i] = launch(daraja, fastJar, fastStartupFlags(fastDir), 0, timeoutNanos);
+                System.out.printf("Run %d: plain %d ms, fast-startup %d ms%n", i + 1,
+                        TimeUnit.NANOSECONDS.toMillis(plain[i]), TimeUnit.NANOSECONDS.toMillis(fast[i]));
+            }
+
+            System.out.println();
+            System.out.println("=== TIME TO FIRST SUCCESSFUL PUSH ===");
+            print("plain", plain);
+            print("fast-startup", fast);
+            System.out.printf("Median speed-up:   %.2fx%n", median(plain) / (double) median(fast));
+        }
+    }
+
+    /** JVM flags of the fast-startup variant; the archive is used once it exists */
+    static List<String> fastStartupFlags(Path fastDir) {
+        List<String> flags = new ArrayList<>();
+        if (Files.exists(fastDir.resolve(ARCHIVE))) {
+            flags.add("-XX:SharedArchiveFile=" + fastDir.resolve(ARCHIVE));
+        }
+        flags.add("-Dspring.aot.enabled=true");
+        flags.add("-Dspring.profiles.active=fast-startup");
+        return flags;
+    }
+
+    /**
+     * Records the AppCDS archive: the classes loaded while starting up, pushing and handling
+     * callbacks are written to application.jsa when the JVM exits.
+     */
+    private static void train(FakeDarajaServer daraja, Path fastDir, int pushes, long timeoutNanos) throws Exception {
+        Path archive = fastDir.resolve(ARCHIVE);
+        Files.deleteIfExists(archive);
+        List<String> flags = new ArrayList<>(fastStartupFlags(fastDir));
+        flags.add(0, "-XX:ArchiveClassesAtExit=" + archive);
+
+        long nanos = launch(daraja, findJar(fastDir), flags, pushes, timeoutNanos);
+        if (!Files.exists(archive)) {
+            throw new IllegalStateException("Training run finished but wrote no " + archive);
+        }
+        System.out.printf("Training run: first push after %d ms, %d pushes and %d callbacks; archive %s (%d MB)%n",
+                TimeUnit.NANOSECONDS.toMillis(nanos), daraja.getPushesAccepted(), daraja.getCallbacksDelivered(),
+                archive, Files.size(archive) >> 20);
+    }
+
+    /**
+     * Starts the jar in a fresh working directory (so journals and schedules start empty),
+     * waits for the first successful push, sends extraPushes more, waits for their callbacks
+     * to be delivered and stops the JVM. The working directory is deleted afterwards, unless
+     * the launch failed and its application.log is needed.
+     *
+     * @return nanoseconds from starting the process to the first successful push
+     */
+    private static long launch(FakeDarajaServer daraja, Path jar, List<String> jvmFlags, int extraPushes,
+                               long timeoutNanos) throws Exception {
+        int port = LoadDriver.freePort();
+        Path workDir = Files.createTempDirectory("mpesa-startup");
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmFlags);
+        command.addAll(List.of("-jar", jar.toString(),
+                "--server.port=" + port,
+                "--mpesa.base-url=" + daraja.baseUrl(),
+                "--mpesa.callback-url=http://127.0.0.1:" + port + "/api/mpesa/callback",
+                "--mpesa.idempotency.enabled=false"));
+        File log = workDir.resolve("application.log").toFile();
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        URI uri = URI.create("http://127.0.0.1:" + port + "/api/mpesa/stkpush");
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).directory(workDir.toFile())
+                .redirectErrorStream(true).redirectOutput(log).start();
+        boolean succeeded = false;
+        try {
+            while (!push(client, uri, 1)) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException(jar.getFileName() + " exited with " + process.exitValue()
+                            + " before serving a push, see " + log);
+                }
+                if (System.nanoTime() - start > timeoutNanos) {
+                    throw new IllegalStateException(jar.getFileName() + " served no push in time, see " + log);
+                }
+                Thread.sleep(5);
+            }
+            long elapsed = System.nanoTime() - start;
+            for (int i = 0; i < extraPushes; i++) {
+                push(client, uri, 2 + i % 1000);
+            }
+            // The callback path is part of what a training run records
+            long callbacksDeadline = System.nanoTime() + CALLBACK_WAIT_NANOS;
+            while (daraja.getPendingCallbacks() > 0 && process.isAlive() && System.nanoTime() < callbacksDeadline) {
+                Thread.sleep(10);
+            }
+            succeeded = true;
+            return elapsed;
+        } finally {
+            // SIGTERM: a graceful shutdown, during which the JVM writes the archive when training
+            process.destroy();
+            if (!process.waitFor(60, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+            if (succeeded) {
+                delete(workDir);
+            }
+        }
+    }
+
+    static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static boolean push(HttpClient client, URI uri, int amount) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(10))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"phone\":\"254708374149\",\"amount\":" + amount + "}"))
+                .build();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200 && response.body().contains("\"ResponseCode\":\"0\"");
+        } catch (IOException e) {
+            // Not listening yet
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** The one executable jar in the directory (skipping Maven's *.jar.original and *-plain.jar) */
+    private static Path findJar(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> jars = files.filter(p -> p.getFileName().toString().endsWith(".jar")
+                    && !p.getFileName().toString().endsWith("-plain.jar")).toList();
+            if (jars.size() != 1) {
+                throw new IllegalStateException("Expected one jar in " + dir + ", found " + jars
+                        + " (build with ./mvnw -Pfast-startup -DskipTests package)");
+            }
+            return jars.get(0);
+        }
+    }
+
+    private static void print(String variant, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-18s min %5d ms   median %5d ms   max %5d ms%n", variant + ":",
+                TimeUnit.NANOSECONDS.toMillis(sorted[0]), TimeUnit.NANOSECONDS.toMillis(median(nanos)),
+                TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length - 1]));
+    }
+
+    private static long median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,30 @@
+package com.mpesa.perf;
+
+import com.mpesa.service.StkPasswordGenerator;
+import com.mpesa.service.StkPushRequestEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * STK Push request body: generic ObjectMapper serialization vs the template encoder.
+ */
+@State(Scope.Benchmark)
+public class StkPushEncodingBenchmark {
+
+    private final StkPushRequestEncoder encoder = new StkPushRequestEncoder();
+    private final StkPasswordGenerator.StkPassword password = new StkPasswordGenerator().generate(
+            "174379", "bfb279f9aa9bdbcf158e97dd71a467cd2e0c893059b10f78e6b72ada1ed2c919");
+
+    @Benchmark
+    public byte[] objectMapper() throws Exception {
+        return encoder.encodeWithObjectMapper("174379", "https://mydomain.com/api/mpesa/callback", password,
+                100, "254796022656", "TestPayment");
+    }
+
+    @Benchmark
+    public byte[] templateEncoder() throws Exception {
+        return encoder.encode("174379", "https://mydomain.com/api/mpesa/callback", password,
+                100, "254796022656", "TestPayment");
+    }
+}
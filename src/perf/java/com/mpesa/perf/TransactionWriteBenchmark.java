@@ -0,0 +1,111 @@
+package com.mpesa.perf;
+
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.TransactionStatus;
+import com.mpesa.dto.TransactionView;
+import com.mpesa.service.AuditLog;
+import com.mpesa.service.JdbcTransactionRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * Writing transactions to an in-memory H2 database, per transaction:
+ * - perRowInsert: one auto-committed INSERT per transaction
+ * - batchedInsert: JDBC batches of BATCH INSERTs with one commit
+ * - writeBehind: JdbcTransactionRepository.save() then flush(), i.e. the full write-behind path
+ */
+@State(Scope.Benchmark)
+public class TransactionWriteBenchmark {
+
+    private static final int BATCH = 500;
+    private static final String INSERT = "INSERT INTO bench_transaction (checkout_request_id, status, phone, "
+            + "amount, created_at) VALUES (?, ?, ?, ?, ?)";
+
+    private Connection autoCommit;
+    private Connection batched;
+    private JdbcTransactionRepository repository;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void start() throws SQLException {
+        String url = "jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        autoCommit = DriverManager.getConnection(url, "sa", "");
+        autoCommit.createStatement().execute("CREATE TABLE bench_transaction (checkout_request_id VARCHAR(64) "
+                + "PRIMARY KEY, status VARCHAR(16), phone VARCHAR(16), amount INT, created_at BIGINT)");
+        batched = DriverManager.getConnection(url, "sa", "");
+        batched.setAutoCommit(false);
+
+        MpesaConfig config = new MpesaConfig();
+        config.setPersistenceJdbcUrl(url);
+        config.setPersistenceUsername("sa");
+        config.setPersistencePassword("");
+        config.setPersistenceBatchSize(BATCH);
+        config.setPersistenceFlushIntervalMillis(1);
+        config.setPersistenceBufferCapacity(BATCH * 4);
+        config.setPersistenceOfferTimeoutMillis(1_000);
+        repository = new JdbcTransactionRepository(config, new AuditLog(config));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws SQLException {
+        repository.close();
+        batched.close();
+        autoCommit.close();
+    }
+
+    @Benchmark
+    public int perRowInsert() throws SQLException {
+        try (PreparedStatement insert = autoCommit.prepareStatement(INSERT)) {
+            bind(insert, nextId());
+            return insert.executeUpdate();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int batchedInsert() throws SQLException {
+        try (PreparedStatement insert = batched.prepareStatement(INSERT)) {
+            for (int i = 0; i < BATCH; i++) {
+                bind(insert, nextId());
+                insert.addBatch();
+            }
+            int rows = insert.executeBatch().length;
+            batched.commit();
+            return rows;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean writeBehind() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < BATCH; i++) {
+            repository.save(new TransactionView(nextId(), "29115-1", TransactionStatus.PENDING, "254708374149", 1,
+                    null, null, now, null));
+        }
+        return repository.flush(10_000);
+    }
+
+    private String nextId() {
+        return "ws_CO_" + sequence++;
+    }
+
+    private static void bind(PreparedStatement insert, String checkoutRequestId) throws SQLException {
+        insert.setString(1, checkoutRequestId);
+        insert.setString(2, TransactionStatus.PENDING.name());
+        insert.setString(3, "254708374149");
+        insert.setInt(4, 1);
+        insert.setLong(5, System.currentTimeMillis());
+    }
+}
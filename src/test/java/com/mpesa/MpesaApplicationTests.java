@@ -3,7 +3,11 @@ package com.mpesa;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// No Daraja calls while the context starts: warm-up would fetch a sandbox token over the network
+@SpringBootTest(properties = {
+		"mpesa.http.warmup.enabled=false",
+		"mpesa.http.keep-alive-probe-seconds=0"
+})
 class MpesaApplicationTests {
 
 	@Test
@@ -0,0 +1,181 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs AccessTokenManager against a local stub of Safaricom's /oauth/v1/generate endpoint
+ */
+class AccessTokenManagerTest {
+
+    private final AtomicInteger oauthCalls = new AtomicInteger();
+    private volatile int status = 200;
+    private volatile String expiresIn = "3599";
+    private volatile long delayMillis = 0;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private HttpServer server;
+    private MpesaConfig config;
+    private AccessTokenManager tokenManager;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/oauth/v1/generate", exchange -> {
+            int call = oauthCalls.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = ("{\"access_token\":\"token-" + call + "\",\"expires_in\":\"" + expiresIn + "\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        config = new MpesaConfig();
+        config.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        config.setConsumerKey("test-consumer-key");
+        config.setConsumerSecret("test-consumer-secret");
+        config.setShortCode("174379");
+        config.setTokenRefreshSkewSeconds(60);
+        config.setUpstreamLimitInitial(64);
+        config.setUpstreamLimitMin(4);
+        config.setUpstreamLimitMax(512);
+        config.setUpstreamLimitRttTolerance(2.0);
+        config.setUpstreamLimitBackoffRatio(0.9);
+        config.setUpstreamBreakerWindowSize(50);
+        config.setUpstreamBreakerMinimumCalls(20);
+        config.setUpstreamBreakerFailureRateThreshold(50);
+        config.setUpstreamBreakerOpenSeconds(30);
+        config.setUpstreamBreakerHalfOpenCalls(5);
+        tokenManager = new AccessTokenManager(config, new MpesaMetrics(registry),
+                new UpstreamGuards(config), new RetryPolicy(config), new AuditLog(config));
+    }
+
+    @AfterEach
+    void stopStub() {
+        tokenManager.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    void cachesTokenUntilExpiry() throws Exception {
+        assertEquals("token-1", tokenManager.getAccessToken());
+        assertEquals("token-1", tokenManager.getAccessToken());
+        assertEquals("token-1", tokenManager.getAccessToken());
+
+        assertEquals(1, oauthCalls.get());
+        assertEquals(1, tokenManager.getMissCount());
+        assertEquals(2, tokenManager.getHitCount());
+        assertEquals(1, tokenManager.getRefreshCount());
+        assertEquals(1, registry.find("mpesa.oauth.request").tag("shortcode", "174379").timer().count());
+    }
+
+    @Test
+    void concurrentCallersShareOneRefresh() throws Exception {
+        delayMillis = 200;
+        int callers = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return tokenManager.getAccessToken();
+            }));
+        }
+        start.countDown();
+        for (Future<String> result : results) {
+            assertEquals("token-1", result.get());
+        }
+        pool.shutdown();
+
+        assertEquals(1, oauthCalls.get());
+        assertEquals(1, tokenManager.getRefreshCount());
+    }
+
+    @Test
+    void refreshesExpiredToken() throws Exception {
+        // A lifetime shorter than the expiry margin is never considered usable
+        expiresIn = "1";
+        assertEquals("token-1", tokenManager.getAccessToken());
+        assertEquals("token-2", tokenManager.getAccessToken());
+        assertEquals(2, tokenManager.getMissCount());
+    }
+
+    @Test
+    void invalidateForcesNewToken() throws Exception {
+        assertEquals("token-1", tokenManager.getAccessToken());
+        tokenManager.invalidate();
+        assertEquals("token-2", tokenManager.getAccessToken());
+    }
+
+    @Test
+    void invalidateDoesNotStartAnotherRefreshChain() throws Exception {
+        // Refreshed in the background 1 s after each fetch (61 s lifetime, 60 s skew)
+        expiresIn = "61";
+        assertEquals("token-1", tokenManager.getAccessToken());
+        tokenManager.invalidate();
+        assertEquals("token-2", tokenManager.getAccessToken());
+
+        // Only the refresh scheduled for token-2 runs; token-1's was replaced
+        Thread.sleep(1_500);
+        assertEquals(3, oauthCalls.get());
+        assertEquals("token-3", tokenManager.getAccessToken());
+    }
+
+    @Test
+    void fetchWithinACallersBudgetIsRetriedOnlyByTheCaller() {
+        config.setRetryMaxAttempts(3);
+        config.setRetryBaseDelayMillis(1);
+        config.setRetryMaxDelayMillis(5);
+        RetryPolicy retryPolicy = new RetryPolicy(config);
+        AccessTokenManager manager = new AccessTokenManager(config, new MpesaMetrics(registry),
+                new UpstreamGuards(config), retryPolicy, new AuditLog(config));
+        status = 500;
+        try {
+            // On its own the manager retries the fetch
+            assertThrows(DarajaException.class, manager::getAccessToken);
+            assertEquals(3, oauthCalls.get());
+
+            // Inside an STK Push attempt the push's policy retries it: 3 calls, not 3 x 3
+            oauthCalls.set(0);
+            assertThrows(DarajaException.class, () -> retryPolicy.execute(manager::getAccessToken));
+            assertEquals(3, oauthCalls.get());
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    void failedRefreshIsReportedAndNotCached() throws Exception {
+        status = 500;
+        assertThrows(RuntimeException.class, () -> tokenManager.getAccessToken());
+        assertEquals(1, tokenManager.getRefreshFailureCount());
+
+        status = 200;
+        assertEquals("token-2", tokenManager.getAccessToken());
+    }
+}
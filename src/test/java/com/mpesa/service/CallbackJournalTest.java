@@ -0,0 +1,194 @@
+package com.mpesa.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.StkCallback;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CallbackJournalTest {
+
+    private Path dir;
+    private MpesaConfig config;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("callback-journal");
+        config = new MpesaConfig();
+        config.setJournalDir(dir.toString());
+        config.setJournalSegmentBytes(1 << 20);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    void parsesSafaricomPayload() throws Exception {
+        String payload = """
+                {"Body":{"stkCallback":{"MerchantRequestID":"29115-34620561-1",
+                "CheckoutRequestID":"ws_CO_191220191020363925","ResultCode":0,
+                "ResultDesc":"The service request is processed successfully.",
+                "CallbackMetadata":{"Item":[{"Name":"Amount","Value":1.00},
+                {"Name":"MpesaReceiptNumber","Value":"NLJ7RT61SV"},{"Name":"Balance"},
+                {"Name":"TransactionDate","Value":20191219102115},{"Name":"PhoneNumber","Value":254708374149}]}}}}
+                """;
+        StkCallback callback = StkCallback.fromPayload(new ObjectMapper().readTree(payload), 42L);
+
+        assertEquals("ws_CO_191220191020363925", callback.checkoutRequestId());
+        assertTrue(callback.isSuccess());
+        assertEquals(0, new BigDecimal("1.00").compareTo(callback.amount()));
+        assertEquals("NLJ7RT61SV", callback.mpesaReceiptNumber());
+        assertEquals("20191219102115", callback.transactionDate());
+        assertEquals("254708374149", callback.phoneNumber());
+    }
+
+    @Test
+    void replaysAppendedRecordsAcrossReopen() throws IOException {
+        CallbackJournal journal = new CallbackJournal(config);
+        journal.open();
+        journal.append(List.of(callback("ws_1", 0), callback("ws_2", 1032)));
+        journal.append(List.of(callback("ws_3", 0)));
+        journal.close();
+
+        CallbackJournal reopened = new CallbackJournal(config);
+        reopened.open();
+        List<StkCallback> replayed = new ArrayList<>();
+        reopened.replay(replayed::add);
+        reopened.close();
+
+        assertEquals(3, replayed.size());
+        assertEquals(callback("ws_2", 1032), replayed.get(1));
+    }
+
+    @Test
+    void truncatesTornTailOnOpen() throws IOException {
+        CallbackJournal journal = new CallbackJournal(config);
+        journal.open();
+        journal.append(List.of(callback("ws_1", 0)));
+        journal.close();
+
+        Path segment = dir.resolve("callbacks-00000001.journal");
+        long goodSize = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            channel.write(java.nio.ByteBuffer.wrap(new byte[]{0, 0, 0, 50, 1, 2, 3}));
+        }
+
+        CallbackJournal reopened = new CallbackJournal(config);
+        reopened.open();
+        reopened.append(List.of(callback("ws_2", 0)));
+        List<StkCallback> replayed = new ArrayList<>();
+        reopened.replay(replayed::add);
+        reopened.close();
+
+        assertEquals(2, replayed.size());
+        assertTrue(Files.size(segment) > goodSize);
+    }
+
+    @Test
+    void rotatesSegmentsWhenFull() throws IOException {
+        config.setJournalSegmentBytes(512);
+        CallbackJournal journal = new CallbackJournal(config);
+        journal.open();
+        for (int i = 0; i < 20; i++) {
+            journal.append(List.of(callback("ws_" + i, 0)));
+        }
+        List<StkCallback> replayed = new ArrayList<>();
+        journal.replay(replayed::add);
+        journal.close();
+
+        assertEquals(20, replayed.size());
+        assertEquals("ws_19", replayed.get(19).checkoutRequestId());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertTrue(files.count() > 1);
+        }
+    }
+
+    @Test
+    void deletesClosedSegmentsPastRetention() throws IOException {
+        config.setJournalSegmentBytes(512);
+        config.setJournalRetentionSeconds(3600);
+        CallbackJournal journal = new CallbackJournal(config);
+        journal.open();
+        for (int i = 0; i < 20; i++) {
+            journal.append(List.of(callback("ws_" + i, 0)));
+        }
+        journal.close();
+
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(dir)) {
+            segments = files.sorted().toList();
+        }
+        FileTime expired = FileTime.fromMillis(System.currentTimeMillis() - 7_200_000L);
+        for (Path segment : segments) {
+            Files.setLastModifiedTime(segment, expired);
+        }
+
+        CallbackJournal reopened = new CallbackJournal(config);
+        reopened.open();
+        List<StkCallback> replayed = new ArrayList<>();
+        reopened.replay(replayed::add);
+        reopened.close();
+
+        // The newest segment is kept even when old: it is the one appended to
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(segments.get(segments.size() - 1)), files.toList());
+        }
+        assertEquals("ws_19", replayed.get(replayed.size() - 1).checkoutRequestId());
+        assertTrue(replayed.size() < 20);
+    }
+
+    @Test
+    void replaySinceSkipsOldClosedSegments() throws IOException {
+        config.setJournalSegmentBytes(512);
+        CallbackJournal journal = new CallbackJournal(config);
+        journal.open();
+        for (int i = 0; i < 20; i++) {
+            journal.append(List.of(callback("ws_" + i, 0)));
+        }
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(dir)) {
+            segments = files.sorted().toList();
+        }
+        Files.setLastModifiedTime(segments.get(0), FileTime.fromMillis(System.currentTimeMillis() - 7_200_000L));
+
+        List<StkCallback> all = new ArrayList<>();
+        journal.replay(all::add);
+        List<StkCallback> recent = new ArrayList<>();
+        journal.replay(recent::add, System.currentTimeMillis() - 3_600_000L);
+        journal.close();
+
+        assertEquals(20, all.size());
+        assertEquals(all.subList(all.size() - recent.size(), all.size()), recent);
+        assertTrue(recent.size() < 20);
+        // Nothing is deleted without retention
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(segments.size(), files.count());
+        }
+    }
+
+    private static StkCallback callback(String checkoutRequestId, int resultCode) {
+        return new StkCallback("29115-1", checkoutRequestId, resultCode, "desc",
+                resultCode == 0 ? new BigDecimal("100") : null, resultCode == 0 ? "NLJ7RT61SV" : null,
+                "20250730143000", "254700000000", 1_000L);
+    }
+}
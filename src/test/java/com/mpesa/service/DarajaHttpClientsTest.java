@@ -0,0 +1,85 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DarajaHttpClientsTest {
+
+    private DarajaHttpClients clients;
+    private HttpServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+        clients.shutdown();
+    }
+
+    @Test
+    void clientsShareTheExecutorAndApplyVersionAndTimeout() {
+        MpesaConfig config = config("HTTP/1.1");
+        config.setHttpExecutorThreads(2);
+        clients = new DarajaHttpClients(config);
+
+        MeteredHttpClient a = clients.create();
+        MeteredHttpClient b = clients.create();
+        assertNotSame(a, b);
+        assertSame(a.executor().orElseThrow(), b.executor().orElseThrow());
+        assertEquals(HttpClient.Version.HTTP_1_1, a.version());
+        assertEquals(Duration.ofMillis(1500), a.connectTimeout().orElseThrow());
+
+        assertEquals(HttpClient.Version.HTTP_2, DarajaHttpClients.version(null));
+        assertEquals(HttpClient.Version.HTTP_2, DarajaHttpClients.version("http_2"));
+        assertThrows(IllegalArgumentException.class, () -> DarajaHttpClients.version("HTTP/3"));
+    }
+
+    @Test
+    void countsRequestsAndNewTlsConnections() throws IOException, InterruptedException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        clients = new DarajaHttpClients(config("HTTP_1_1"));
+        MeteredHttpClient client = clients.create();
+
+        HttpRequest probe = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/"))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, client.send(probe, HttpResponse.BodyHandlers.discarding()).statusCode());
+        }
+        assertEquals(200, client.sendAsync(probe, HttpResponse.BodyHandlers.discarding()).join().statusCode());
+        assertEquals(4, client.getRequestCount());
+        // Plain HTTP opens no TLS connections
+        assertEquals(0, client.getConnectionCount());
+
+        // The client opens every TLS connection through its SSLContext
+        client.sslContext().createSSLEngine("api.safaricom.co.ke", 443);
+        assertEquals(1, client.getConnectionCount());
+    }
+
+    private static MpesaConfig config(String version) {
+        MpesaConfig config = new MpesaConfig();
+        config.setHttpVersion(version);
+        config.setHttpConnectTimeoutMillis(1500);
+        return config;
+    }
+}
@@ -0,0 +1,49 @@
+package com.mpesa.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashedTimingWheelTest {
+
+    @Test
+    void firesItemsInDeadlineOrderAcrossRotations() throws InterruptedException {
+        List<String> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        // 8 buckets x 5ms = 40ms per rotation, so the 120ms item needs several rounds
+        try (HashedTimingWheel<String> wheel = new HashedTimingWheel<>("test-wheel", 5, 8, item -> {
+            fired.add(item);
+            done.countDown();
+        })) {
+            wheel.schedule("late", 120, TimeUnit.MILLISECONDS);
+            wheel.schedule("early", 10, TimeUnit.MILLISECONDS);
+            wheel.schedule("middle", 60, TimeUnit.MILLISECONDS);
+            assertEquals(3, wheel.size());
+
+            assertTrue(done.await(2, TimeUnit.SECONDS));
+            assertEquals(List.of("early", "middle", "late"), fired);
+            assertEquals(0, wheel.size());
+        }
+    }
+
+    @Test
+    void doesNotFireBeforeDeadline() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+        long[] firedAfter = new long[1];
+        try (HashedTimingWheel<String> wheel = new HashedTimingWheel<>("test-wheel", 10, 4, item -> {
+            firedAfter[0] = System.nanoTime() - start;
+            done.countDown();
+        })) {
+            wheel.schedule("item", 100, TimeUnit.MILLISECONDS);
+            assertTrue(done.await(2, TimeUnit.SECONDS));
+            assertTrue(firedAfter[0] >= TimeUnit.MILLISECONDS.toNanos(90), "fired too early: " + firedAfter[0]);
+        }
+    }
+}
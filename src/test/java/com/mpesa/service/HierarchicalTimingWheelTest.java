@@ -0,0 +1,62 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HierarchicalTimingWheelTest {
+
+    private static final AuditLog AUDIT_LOG = new AuditLog(new MpesaConfig());
+
+    @Test
+    void firesItemsFromEveryLevelInDeadlineOrderAndNeverEarly() throws InterruptedException {
+        List<String> fired = new CopyOnWriteArrayList<>();
+        Map<String, Long> firedAt = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(5);
+        // 4 buckets x 3 levels of 5ms ticks: levels span 20ms, 80ms and 320ms
+        try (HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>("test-wheel", 5, 4, 3, item -> {
+            firedAt.put(item, System.currentTimeMillis());
+            fired.add(item);
+            done.countDown();
+        }, AUDIT_LOG)) {
+            long now = System.currentTimeMillis();
+            Map<String, Long> deadlines = Map.of(
+                    "beyond-top-level", now + 500,
+                    "level-2", now + 200,
+                    "level-1", now + 50,
+                    "level-0", now + 12,
+                    "overdue", now - 1_000);
+            deadlines.forEach(wheel::schedule);
+            assertEquals(5, wheel.size());
+
+            assertTrue(done.await(3, TimeUnit.SECONDS));
+            assertEquals(List.of("overdue", "level-0", "level-1", "level-2", "beyond-top-level"), fired);
+            deadlines.forEach((item, deadline) ->
+                    assertTrue(firedAt.get(item) >= deadline, item + " fired " + (deadline - firedAt.get(item)) + "ms early"));
+            assertEquals(0, wheel.size());
+        }
+    }
+
+    @Test
+    void manyItemsWithTheSameDeadlineAllFire() throws InterruptedException {
+        int items = 10_000;
+        CountDownLatch done = new CountDownLatch(items);
+        try (HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>("test-wheel", 5, 8, 4,
+                item -> done.countDown(), AUDIT_LOG)) {
+            long deadline = System.currentTimeMillis() + 100;
+            for (int i = 0; i < items; i++) {
+                wheel.schedule(i, deadline + i % 50);
+            }
+            assertTrue(done.await(3, TimeUnit.SECONDS), "not fired: " + done.getCount());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.Mpesamapping;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IdempotencyCacheTest {
+
+    private static final String ACCEPTED = "{\"CheckoutRequestID\":\"ws_1\",\"ResponseCode\":\"0\"}";
+    private static final String REJECTED = "{\"errorCode\":\"400.002.02\",\"errorMessage\":\"Bad Request\"}";
+
+    private final IdempotencyCache cache = new IdempotencyCache(config());
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        cache.shutdown();
+    }
+
+    @Test
+    void concurrentDuplicatesShareOneUpstreamCall() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        Mpesamapping mapping = new Mpesamapping("254708374149", 100);
+
+        CompletableFuture<String> first = cache.execute("abc", mapping, () -> call(upstream));
+        CompletableFuture<String> second = cache.execute("abc", mapping, () -> call(upstream));
+        assertSame(first, second);
+
+        upstream.complete(ACCEPTED);
+        assertEquals(ACCEPTED, second.join());
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void acceptedResponseIsReplayedForFingerprintDuplicates() {
+        Mpesamapping mapping = new Mpesamapping("254708374149", 100);
+        cache.execute(null, mapping, () -> call(CompletableFuture.completedFuture(ACCEPTED))).join();
+        String replay = cache.execute(null, new Mpesamapping("254708374149", 100),
+                () -> call(CompletableFuture.completedFuture(ACCEPTED))).join();
+
+        assertEquals(ACCEPTED, replay);
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void rejectedResponseIsNotCached() {
+        Mpesamapping mapping = new Mpesamapping("254708374149", 100);
+        cache.execute("abc", mapping, () -> call(CompletableFuture.completedFuture(REJECTED))).join();
+        cache.execute("abc", mapping, () -> call(CompletableFuture.completedFuture(ACCEPTED))).join();
+
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    void reusedKeyWithADifferentAmountIsRefused() {
+        cache.execute("abc", new Mpesamapping("254708374149", 100),
+                () -> call(CompletableFuture.completedFuture(ACCEPTED))).join();
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> cache.execute("abc",
+                new Mpesamapping("254708374149", 1000), () -> call(CompletableFuture.completedFuture(ACCEPTED))));
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    private CompletableFuture<String> call(CompletableFuture<String> result) {
+        upstreamCalls.incrementAndGet();
+        return result;
+    }
+
+    private static MpesaConfig config() {
+        MpesaConfig config = new MpesaConfig();
+        config.setIdempotencyEnabled(true);
+        config.setIdempotencyKeyTtlSeconds(60);
+        config.setIdempotencyFingerprintWindowSeconds(60);
+        config.setIdempotencyMaxEntries(100);
+        return config;
+    }
+}
@@ -0,0 +1,99 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.TransactionStatus;
+import com.mpesa.dto.TransactionView;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JdbcTransactionRepositoryTest {
+
+    private JdbcTransactionRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    void callbackSettlesPersistedPush() throws Exception {
+        repository = newRepository(500);
+        repository.save(pending("ws_CO_1", 1_000L));
+        assertTrue(repository.flush(5_000));
+        assertEquals(TransactionStatus.PENDING, repository.find("ws_CO_1").status());
+
+        repository.save(settled("ws_CO_1", 2_000L));
+        assertTrue(repository.flush(5_000));
+
+        TransactionView stored = repository.find("ws_CO_1");
+        assertEquals(TransactionStatus.COMPLETED, stored.status());
+        assertEquals("NLJ7RT61SV", stored.mpesaReceiptNumber());
+        assertEquals(1_000L, stored.createdAt());
+        assertEquals(2_000L, stored.settledAt());
+        assertEquals("29115-1", stored.merchantRequestId());
+        assertNull(repository.find("ws_CO_unknown"));
+    }
+
+    @Test
+    void latePendingSaveNeverDowngradesSettledRow() throws Exception {
+        repository = newRepository(500);
+        repository.save(settled("ws_CO_2", 2_000L));
+        assertTrue(repository.flush(5_000));
+        repository.save(pending("ws_CO_2", 1_000L));
+        assertTrue(repository.flush(5_000));
+
+        TransactionView stored = repository.find("ws_CO_2");
+        assertEquals(TransactionStatus.COMPLETED, stored.status());
+        assertEquals(1_000L, stored.createdAt());
+
+        // Both in one batch, in either order
+        repository.save(settled("ws_CO_3", 2_000L));
+        repository.save(pending("ws_CO_3", 1_000L));
+        assertTrue(repository.flush(5_000));
+        assertEquals(TransactionStatus.COMPLETED, repository.find("ws_CO_3").status());
+        assertEquals(1_000L, repository.find("ws_CO_3").createdAt());
+    }
+
+    @Test
+    void writesInBatchesOfTheConfiguredSize() throws Exception {
+        repository = newRepository(10);
+        for (int i = 0; i < 25; i++) {
+            repository.save(pending("ws_CO_B" + i, i));
+        }
+        assertTrue(repository.flush(5_000));
+
+        assertEquals(25, repository.getWrittenCount());
+        assertTrue(repository.getBatchCount() >= 3, "batches: " + repository.getBatchCount());
+        assertEquals(0, repository.getDroppedCount());
+        assertEquals(TransactionStatus.PENDING, repository.find("ws_CO_B24").status());
+    }
+
+    private static JdbcTransactionRepository newRepository(int batchSize) throws SQLException {
+        MpesaConfig config = new MpesaConfig();
+        config.setPersistenceJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        config.setPersistenceUsername("sa");
+        config.setPersistencePassword("");
+        config.setPersistenceBatchSize(batchSize);
+        config.setPersistenceFlushIntervalMillis(20);
+        config.setPersistenceBufferCapacity(1_000);
+        config.setPersistenceOfferTimeoutMillis(1_000);
+        return new JdbcTransactionRepository(config, new AuditLog(config));
+    }
+
+    private static TransactionView pending(String checkoutRequestId, long createdAt) {
+        return new TransactionView(checkoutRequestId, "29115-1", TransactionStatus.PENDING, "254708374149", 1,
+                null, null, createdAt, null);
+    }
+
+    private static TransactionView settled(String checkoutRequestId, long settledAt) {
+        return new TransactionView(checkoutRequestId, null, TransactionStatus.COMPLETED, "254708374149", 1,
+                0, "NLJ7RT61SV", settledAt, settledAt);
+    }
+}
@@ -0,0 +1,117 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PushSchedulerTest {
+
+    private final BlockingQueue<String> started = new LinkedBlockingQueue<>();
+    private final Map<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+    private PushScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void interactivePushOvertakesQueuedBatch() throws Exception {
+        scheduler = newScheduler(1, 100);
+        submit("a", 1, PushScheduler.Lane.BATCH, "batch-1");
+        assertEquals("batch-1", nextStarted());
+        submit("a", 1, PushScheduler.Lane.BATCH, "batch-2");
+        submit("a", 1, PushScheduler.Lane.BATCH, "batch-3");
+        submit("a", 1, PushScheduler.Lane.INTERACTIVE, "interactive");
+        assertEquals(2, scheduler.getQueued(PushScheduler.Lane.BATCH));
+        assertEquals(1, scheduler.getQueued(PushScheduler.Lane.INTERACTIVE));
+
+        finish("batch-1");
+        assertEquals("interactive", nextStarted());
+        finish("interactive");
+        assertEquals("batch-2", nextStarted());
+    }
+
+    @Test
+    void floodingTenantDoesNotStarveOthers() throws Exception {
+        scheduler = newScheduler(1, 100);
+        CompletableFuture<String> first = submit("a", 1, PushScheduler.Lane.BATCH, "a-1");
+        assertEquals("a-1", nextStarted());
+        for (int i = 2; i <= 5; i++) {
+            submit("a", 1, PushScheduler.Lane.BATCH, "a-" + i);
+        }
+        submit("b", 3, PushScheduler.Lane.BATCH, "b-1");
+        submit("b", 3, PushScheduler.Lane.BATCH, "b-2");
+
+        finish("a-1");
+        assertEquals("a-1", first.get(5, TimeUnit.SECONDS));
+        assertEquals("b-1", nextStarted());
+        finish("b-1");
+        assertEquals("b-2", nextStarted());
+        finish("b-2");
+        assertEquals("a-2", nextStarted());
+    }
+
+    @Test
+    void fullQueueRefusesNewPushes() throws Exception {
+        scheduler = newScheduler(1, 1);
+        submit("a", 1, PushScheduler.Lane.BATCH, "a-1");
+        assertEquals("a-1", nextStarted());
+        submit("a", 1, PushScheduler.Lane.BATCH, "a-2");
+
+        CompletableFuture<String> refused = submit("a", 1, PushScheduler.Lane.BATCH, "a-3");
+        ExecutionException e = assertThrows(ExecutionException.class, () -> refused.get(5, TimeUnit.SECONDS));
+        UpstreamUnavailableException unavailable = assertInstanceOf(UpstreamUnavailableException.class, e.getCause());
+        assertEquals(UpstreamUnavailableException.QUEUE_FULL, unavailable.getReason());
+        assertEquals(1, scheduler.getRejectedCount());
+
+        // Other lanes and tenants have their own queues
+        submit("a", 1, PushScheduler.Lane.INTERACTIVE, "a-interactive");
+        submit("b", 1, PushScheduler.Lane.BATCH, "b-1");
+        assertEquals(1, scheduler.getRejectedCount());
+    }
+
+    private CompletableFuture<String> submit(String tenantId, int weight, PushScheduler.Lane lane, String name) {
+        return scheduler.submit(tenantId, weight, lane, () -> {
+            CompletableFuture<String> response = new CompletableFuture<>();
+            pending.put(name, response);
+            started.add(name);
+            return response;
+        });
+    }
+
+    private String nextStarted() throws InterruptedException {
+        String name = started.poll(5, TimeUnit.SECONDS);
+        assertNotNull(name, "no push was dispatched");
+        return name;
+    }
+
+    private void finish(String name) {
+        pending.get(name).complete(name);
+    }
+
+    private static PushScheduler newScheduler(int maxInFlight, int maxQueued) {
+        MpesaConfig config = new MpesaConfig();
+        config.setSchedulerEnabled(true);
+        config.setSchedulerMaxInFlight(maxInFlight);
+        config.setSchedulerInteractiveWeight(8);
+        config.setSchedulerBatchWeight(1);
+        config.setSchedulerMaxQueuedPerTenant(maxQueued);
+        config.setSchedulerMaxWaitMillis(0);
+        return new PushScheduler(config, new MpesaMetrics(new SimpleMeterRegistry()));
+    }
+}
@@ -0,0 +1,113 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @Test
+    void transientFailuresAreRetriedUntilSuccess() throws Exception {
+        RetryPolicy policy = policy(3, 10_000);
+
+        String result = policy.execute(budget -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw DarajaException.fromResponse(503, "{\"errorCode\":\"500.003.02\",\"errorMessage\":\"System is busy\"}");
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, policy.getRetryCount());
+    }
+
+    @Test
+    void permanentAndAmbiguousFailuresAreNotRetried() {
+        RetryPolicy policy = policy(5, 10_000);
+
+        DarajaException rejected = DarajaException.fromResponse(400,
+                "{\"requestId\":\"1\",\"errorCode\":\"400.002.02\",\"errorMessage\":\"Bad Request - Invalid Amount\"}");
+        assertEquals(DarajaException.Kind.REJECTED, rejected.getKind());
+        assertEquals("400.002.02", rejected.getErrorCode());
+        assertSame(rejected, assertThrows(DarajaException.class, () -> policy.execute(budget -> {
+            attempts.incrementAndGet();
+            throw rejected;
+        })));
+        assertEquals(1, attempts.get());
+
+        // Sent, then timed out: Safaricom may have prompted the customer already
+        Throwable timeout = DarajaException.classify(new HttpTimeoutException("request timed out"), false);
+        assertEquals(DarajaException.Kind.OUTCOME_UNKNOWN, ((DarajaException) timeout).getKind());
+        assertFalse(((DarajaException) timeout).isRetryable());
+        assertThrows(DarajaException.class, () -> policy.execute(budget -> {
+            attempts.incrementAndGet();
+            throw (DarajaException) timeout;
+        }));
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void networkFailuresAreClassifiedByWhetherTheRequestWasSent() {
+        DarajaException refused = (DarajaException) DarajaException.classify(new ConnectException("refused"), false);
+        assertEquals(DarajaException.Kind.TRANSIENT, refused.getKind());
+
+        DarajaException idempotentReset = (DarajaException) DarajaException.classify(
+                new CompletionException(new IOException("reset")), true);
+        assertEquals(DarajaException.Kind.TRANSIENT, idempotentReset.getKind());
+
+        IllegalStateException other = new IllegalStateException("bug");
+        assertSame(other, DarajaException.classify(other, true));
+    }
+
+    @Test
+    void retriesStopAtTheDeadline() {
+        RetryPolicy policy = policy(100, 300);
+
+        long start = System.nanoTime();
+        assertThrows(DarajaException.class, () -> policy.execute(budget -> {
+            attempts.incrementAndGet();
+            throw DarajaException.fromResponse(503, "");
+        }));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 300, "gave up after " + elapsedMillis + "ms");
+        assertTrue(attempts.get() > 1 && attempts.get() < 100, "attempts: " + attempts.get());
+    }
+
+    @Test
+    void asyncCallsRetryWithoutBlocking() {
+        RetryPolicy policy = policy(3, 10_000);
+
+        CompletableFuture<String> result = policy.executeAsync(budget -> attempts.incrementAndGet() == 1
+                ? CompletableFuture.failedFuture(DarajaException.fromResponse(429, ""))
+                : CompletableFuture.completedFuture("ok"));
+
+        assertEquals("ok", result.join());
+        assertEquals(2, attempts.get());
+    }
+
+    private static RetryPolicy policy(int maxAttempts, long deadlineMillis) {
+        MpesaConfig config = new MpesaConfig();
+        config.setRetryMaxAttempts(maxAttempts);
+        config.setRetryBaseDelayMillis(5);
+        config.setRetryMaxDelayMillis(50);
+        config.setRetryDeadlineMillis(deadlineMillis);
+        config.setHttpRequestTimeoutMillis(1_000);
+        return new RetryPolicy(config);
+    }
+}
@@ -0,0 +1,172 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.Mpesamapping;
+import com.mpesa.dto.ScheduledPushRequest;
+import com.mpesa.dto.ScheduledPushView;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScheduledPushServiceTest {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    @TempDir
+    Path dir;
+
+    private final List<String> pushes = new CopyOnWriteArrayList<>();
+    private ScheduledPushService service;
+    private volatile String response = "{\"ResponseCode\":\"0\"}";
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void schedulesSurviveARestart() throws IOException {
+        service = newService();
+        long start = System.currentTimeMillis() + DAY_MILLIS;
+        ScheduledPushView monthly = service.create(tenant("paybill-a"),
+                new ScheduledPushRequest("254796022656", 1500, "LOAN-1042", start, 30 * 86_400L, 12, 3600));
+        ScheduledPushView once = service.create(tenant("default"),
+                new ScheduledPushRequest("254712345678", 10, null, start, null, null, null));
+        ScheduledPushView deleted = service.create(tenant("default"),
+                new ScheduledPushRequest("254712345679", 10, null, start, 86_400L, null, 0));
+        assertTrue(service.cancel(deleted.id()));
+        assertFalse(service.cancel(deleted.id()));
+        service.shutdown();
+
+        service = newService();
+        assertEquals(monthly, service.find(monthly.id()));
+        assertEquals(once, service.find(once.id()));
+        assertEquals(1, once.remainingRuns());
+        assertNull(service.find(deleted.id()));
+        assertEquals(2, service.getActiveCount());
+
+        // The deleted schedule's slot is reused, and ids keep increasing
+        ScheduledPushView next = service.create(tenant("default"),
+                new ScheduledPushRequest("254712345670", 5, null, start, null, null, null));
+        assertTrue(next.id() > deleted.id());
+        assertEquals(60, next.jitterSeconds());
+        assertNull(service.find(deleted.id()));
+    }
+
+    @Test
+    void duePushesAreSentAndTheScheduleAdvances() throws Exception {
+        service = newService();
+        long start = System.currentTimeMillis() - 10;
+        ScheduledPushView view = service.create(tenant("default"),
+                new ScheduledPushRequest("254796022656", 100, "SUB-7", start, 1L, 2, 0));
+
+        waitFor(() -> pushes.size() == 2);
+        assertEquals(List.of("default:254796022656:100:SUB-7", "default:254796022656:100:SUB-7"), pushes);
+        waitFor(() -> service.find(view.id()) == null);
+        assertEquals(2, service.getDispatchedCount());
+        assertEquals(0, service.getActiveCount());
+    }
+
+    @Test
+    void refusedPushesAreCountedAsSkipped() throws Exception {
+        response = "{\"error\":\"Push queue full\",\"reason\":\"queue_full\",\"retryAfterSeconds\":1}";
+        service = newService();
+        service.create(tenant("default"),
+                new ScheduledPushRequest("254796022656", 100, null, System.currentTimeMillis() - 10, null, null, 0));
+
+        waitFor(() -> service.getSkippedCount() == 1);
+        assertEquals(1, pushes.size());
+        assertEquals(0, service.getDispatchedCount());
+    }
+
+    @Test
+    void missedRunsArePushedOnceAndTheScheduleResumesInTheFuture() {
+        long now = System.currentTimeMillis();
+        ScheduledPushService.Schedule schedule = new ScheduledPushService.Schedule(1, 0, "default",
+                "254796022656", 100, null, now - 3 * DAY_MILLIS - 1_000, 86_400, -1, 0);
+
+        assertTrue(ScheduledPushService.advance(schedule, now));
+        assertTrue(schedule.nextRunAt > now && schedule.nextRunAt <= now + DAY_MILLIS);
+        assertEquals(-1, schedule.remainingRuns);
+
+        schedule.remainingRuns = 1;
+        assertFalse(ScheduledPushService.advance(schedule, now));
+    }
+
+    @Test
+    void jitterSpreadsPushesDueAtTheSameTime() {
+        long due = System.currentTimeMillis();
+        long earliest = Long.MAX_VALUE;
+        long latest = Long.MIN_VALUE;
+        for (int id = 1; id <= 1_000; id++) {
+            long firesAt = ScheduledPushService.firesAt(new ScheduledPushService.Schedule(id, 0, "default",
+                    "254796022656", 100, null, due, 3_600, -1, 600));
+            assertTrue(firesAt >= due && firesAt < due + 600_000);
+            earliest = Math.min(earliest, firesAt);
+            latest = Math.max(latest, firesAt);
+        }
+        assertTrue(latest - earliest > 500_000, "spread: " + (latest - earliest));
+    }
+
+    @Test
+    void invalidRequestsAreRejected() throws IOException {
+        service = newService();
+        Tenant tenant = tenant("default");
+        assertThrows(IllegalArgumentException.class, () -> service.create(tenant,
+                new ScheduledPushRequest("0796022656", 100, null, null, null, null, null)));
+        assertThrows(IllegalArgumentException.class, () -> service.create(tenant,
+                new ScheduledPushRequest("254796022656", 0, null, null, null, null, null)));
+        assertThrows(IllegalArgumentException.class, () -> service.create(tenant,
+                new ScheduledPushRequest("254796022656", 100, "REFERENCE-TOO-LONG", null, null, null, null)));
+        assertThrows(IllegalArgumentException.class, () -> service.create(tenant,
+                new ScheduledPushRequest("254796022656", 100, null, null, null, 3, null)));
+        assertEquals(0, service.getActiveCount());
+    }
+
+    private ScheduledPushService newService() throws IOException {
+        MpesaConfig config = new MpesaConfig();
+        config.setSchedulesFile(dir.resolve("schedules.dat").toString());
+        config.setSchedulesTickMillis(10);
+        config.setSchedulesWheelSize(16);
+        config.setSchedulesRatePerSecond(0);
+        config.setSchedulesBurst(1);
+        config.setSchedulesDefaultJitterSeconds(60);
+        ScheduledPushService created = new ScheduledPushService(config, this::push, new AuditLog(config));
+        created.open();
+        return created;
+    }
+
+    private CompletableFuture<String> push(String tenantId, Mpesamapping mapping) {
+        pushes.add(tenantId + ":" + mapping.getPhone() + ":" + mapping.getAmount() + ":" + mapping.getReference());
+        return CompletableFuture.completedFuture(response);
+    }
+
+    private static Tenant tenant(String id) {
+        return new Tenant(new Tenant.Settings(id, "174379", "passkey", "key", "secret", "https://example.com/cb",
+                0, 20, 1), null, null, null);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+}
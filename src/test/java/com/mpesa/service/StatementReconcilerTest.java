@@ -0,0 +1,107 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.StkCallback;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatementReconcilerTest {
+
+    private static final String HEADER = "\"Receipt No.\",\"Completion Time\",\"Initiation Time\",\"Details\","
+            + "\"Transaction Status\",\"Paid In\",\"Withdrawn\",\"Balance\",\"Other Party Info\"\n";
+    private static final int BULK_ROWS = 5_000;
+
+    @TempDir
+    Path dir;
+
+    private StatementReconciler reconciler;
+
+    @AfterEach
+    void tearDown() {
+        reconciler.shutdown();
+    }
+
+    @Test
+    void classifiesRowsAcrossChunks() throws IOException {
+        reconciler = newReconciler();
+        StatementReconciler.JournalIndex index = new StatementReconciler.JournalIndex();
+        index.add(callback("ws_CO_1", 0, "RA11", "1000.00", "20250729100000"));
+        index.add(callback("ws_CO_2", 0, "RA12", "55", "20250729100500"));
+        index.add(callback("ws_CO_3", 0, "RA16", "10", "20250729100700"));  // paid, not on the statement
+        index.add(callback("ws_CO_4", 0, "RA17", "10", "20250730090000"));  // after the statement ends
+        index.add(callback("ws_CO_5", 1032, null, null, null));              // cancelled by the customer
+
+        StringBuilder statement = new StringBuilder("Account Holder:,ACME LTD\nShort Code:,600100\n").append(HEADER)
+                .append(row("RA11", "2025-07-29 10:00:00", "Completed", "\"1,000.00\""))
+                .append(row("RA12", "2025-07-29 10:05:00", "Completed", "50.00"))
+                .append(row("RA14", "2025-07-29 10:06:00", "Completed", ""))       // charge, nothing paid in
+                .append(row("RA15", "2025-07-29 10:07:00", "Failed", "10.00"));
+        // Enough rows for several chunks, so lines straddle chunk boundaries
+        for (int i = 0; i < BULK_ROWS; i++) {
+            String receipt = String.format("RB%05d", i);
+            index.add(callback("ws_CO_B" + i, 0, receipt, "1", "20250729100800"));
+            statement.append(row(receipt, "2025-07-29 10:08:00", "Completed", "1.00"));
+        }
+        statement.append(row("RA13", "2025-07-29 10:10:00", "Completed", "20.00"))
+                .append(row("RA11", "2025-07-29 10:10:00", "Completed", "1000.00"));
+        Path file = Files.writeString(dir.resolve("statement.csv"), statement);
+
+        StatementReconciler.Counts counts = new StatementReconciler.Counts();
+        Path reports = dir.resolve("reports");
+        reconciler.reconcile(file, reports, index, counts);
+
+        assertEquals(BULK_ROWS + 6, counts.rows.sum());
+        assertEquals(2, counts.skipped.sum());
+        assertEquals(BULK_ROWS + 1, counts.matched.sum());
+        assertEquals(2, counts.mismatched.sum());
+        assertEquals(1, counts.missingFromJournal.sum());
+        assertEquals(1, counts.missingFromStatement.sum());
+
+        assertEquals(BULK_ROWS + 2, Files.readAllLines(reports.resolve("matched.csv")).size());
+        List<String> mismatched = Files.readAllLines(reports.resolve("mismatched.csv"));
+        assertTrue(mismatched.contains("RA12,ws_CO_2,amount,50.00,55,0"), mismatched.toString());
+        assertTrue(mismatched.contains("RA11,ws_CO_1,duplicate,1000.00,1000.00,0"), mismatched.toString());
+        List<String> missing = Files.readAllLines(reports.resolve("missing.csv"));
+        assertTrue(missing.contains("journal,RA13,,20.00,2025-07-29 10:10:00"), missing.toString());
+        assertTrue(missing.contains("statement,RA16,ws_CO_3,10,20250729100700"), missing.toString());
+    }
+
+    @Test
+    void onlyStatementsInTheStatementDirectoryCanBeReconciled() {
+        reconciler = newReconciler();
+        assertThrows(IllegalArgumentException.class, () -> reconciler.start("../secrets.csv"));
+        assertThrows(IllegalArgumentException.class, () -> reconciler.start(dir.resolve("x.csv").toString()));
+        assertThrows(IOException.class, () -> reconciler.start("absent.csv"));
+    }
+
+    private StatementReconciler newReconciler() {
+        MpesaConfig config = new MpesaConfig();
+        config.setReconciliationStatementDir(dir.resolve("statements").toString());
+        config.setReconciliationReportDir(dir.resolve("reports").toString());
+        config.setReconciliationChunkBytes(0); // smallest allowed chunk
+        config.setReconciliationParallelism(4);
+        return new StatementReconciler(config, null);
+    }
+
+    private static String row(String receipt, String time, String status, String paidIn) {
+        return receipt + "," + time + "," + time + ",\"Pay Bill from 2547****149 - JOHN, DOE\"," + status + ","
+                + paidIn + ",,\"12,345.00\",254708374149\n";
+    }
+
+    private static StkCallback callback(String checkoutRequestId, int resultCode, String receipt, String amount,
+                                        String transactionDate) {
+        return new StkCallback("29115-1", checkoutRequestId, resultCode, "desc",
+                amount != null ? new BigDecimal(amount) : null, receipt, transactionDate, "254708374149", 0L);
+    }
+}
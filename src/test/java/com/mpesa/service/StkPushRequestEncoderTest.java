@@ -0,0 +1,64 @@
+package com.mpesa.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mpesa.dto.StkPushRequest;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StkPushRequestEncoderTest {
+
+    private final StkPushRequestEncoder encoder = new StkPushRequestEncoder();
+    private final StkPasswordGenerator.StkPassword password = new StkPasswordGenerator.StkPassword(
+            "20250730143000", "MTc0Mzc5YmZiMjc5ZjlhYTliZGJjZjE1OGU5N2RkNzFhNDY3Y2QyZTBjODkzMDU5YjEwZjc4ZTZiNzJhZGExZWQyYzkxOTIwMjUwNzMwMTQzMDAw");
+
+    @Test
+    void matchesObjectMapperOutput() throws Exception {
+        assertIdentical("174379", "https://mydomain.com/api/mpesa/callback", 100, "254796022656", "TestPayment");
+        assertIdentical("174379", "https://mydomain.com/api/mpesa/callback", 0, "254796022656", "INV-1042");
+        assertIdentical("174379", "https://mydomain.com/api/mpesa/callback", -7, "254796022656", "");
+        assertIdentical("174379", "https://mydomain.com/api/mpesa/callback", Integer.MIN_VALUE, "2547", "ref");
+        assertIdentical("174379", "https://mydomain.com/api/mpesa/callback", Integer.MAX_VALUE, "2547", "ref");
+    }
+
+    @Test
+    void escapesLikeJackson() throws Exception {
+        StringBuilder allAscii = new StringBuilder();
+        for (char c = 0; c < 0x80; c++) {
+            allAscii.append(c);
+        }
+        assertIdentical("174379", "https://x.co/cb?a=\"b\"&c=\\d", 1, allAscii.toString(), "Café ☕ ñ");
+        assertIdentical("17\n43", "https://x.co/€", 1, "2547", "ref");
+    }
+
+    @Test
+    void fallsBackForNullsAndSurrogates() throws Exception {
+        assertIdentical("174379", "https://x.co/cb", 1, null, "ref");
+        assertIdentical("174379", "https://x.co/cb", 1, "2547", "emoji 😀");
+        assertIdentical("174379", "https://x.co/cb", 1, "2547", "lone \uD83D");
+    }
+
+    @Test
+    void objectMapperWritesEachPropertyOnce() throws Exception {
+        String json = new String(encoder.encode("174379", "https://x.co/cb", password, 1, "2547", "ref"),
+                StandardCharsets.UTF_8);
+        assertEquals("{\"BusinessShortCode\":\"174379\",\"Password\":\"" + password.password()
+                + "\",\"Timestamp\":\"20250730143000\",\"TransactionType\":\"CustomerPayBillOnline\",\"Amount\":\"1\","
+                + "\"PartyA\":\"2547\",\"PartyB\":\"174379\",\"PhoneNumber\":\"2547\",\"CallBackURL\":\"https://x.co/cb\","
+                + "\"AccountReference\":\"ref\",\"TransactionDesc\":\"Payment for goods\"}", json);
+    }
+
+    private void assertIdentical(String shortCode, String callbackUrl, int amount, String phone, String reference)
+            throws Exception {
+        StkPushRequest request = new StkPushRequest(shortCode, password.password(), password.timestamp(),
+                "CustomerPayBillOnline", String.valueOf(amount), phone, shortCode, phone, callbackUrl,
+                reference, "Payment for goods");
+        byte[] expected = new ObjectMapper().writeValueAsBytes(request);
+        // Twice, so the second run goes through the cached template and reused buffer
+        assertArrayEquals(expected, encoder.encode(shortCode, callbackUrl, password, amount, phone, reference));
+        assertArrayEquals(expected, encoder.encode(shortCode, callbackUrl, password, amount, phone, reference));
+    }
+}
@@ -0,0 +1,147 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TenantRegistryTest {
+
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TenantRegistry registry;
+
+    @AfterEach
+    void tearDown() {
+        if (registry != null) {
+            registry.shutdown();
+        }
+    }
+
+    @Test
+    void defaultTenantComesFromMpesaProperties() throws IOException {
+        registry = newRegistry(null);
+
+        Tenant tenant = registry.resolve(null);
+        assertEquals("default", tenant.getId());
+        assertEquals("174379", tenant.getShortCode());
+        assertSame(tenant, registry.resolve("default"));
+        assertThrows(UnknownTenantException.class, () -> registry.resolve("nope"));
+    }
+
+    @Test
+    void tenantsFromFileGetTheirOwnTokenCacheAndGuards() throws IOException {
+        Path file = writeTenants(tenant("a", "600100") + tenant("b", "600200"));
+        registry = newRegistry(file);
+
+        Tenant a = registry.resolve("a");
+        Tenant b = registry.resolve("b");
+        assertEquals("600100", a.getShortCode());
+        assertEquals("https://example.com/callback", a.getCallbackUrl());
+        assertNotSame(a.getTokenManager(), b.getTokenManager());
+        assertNotSame(a.getGuards().stkPush(), b.getGuards().stkPush());
+        assertNotSame(a.getHttpClient(), b.getHttpClient());
+        assertSame(b, registry.findByShortCode("600200"));
+    }
+
+    @Test
+    void reloadKeepsUnchangedTenantsAndRebuildsChangedOnes() throws IOException, InterruptedException {
+        Path file = writeTenants(tenant("a", "600100") + tenant("b", "600200"));
+        registry = newRegistry(file);
+        Tenant a = registry.resolve("a");
+        Tenant b = registry.resolve("b");
+
+        writeTenants(tenant("a", "600100") + tenant("b", "600299") + tenant("c", "600300"));
+        registry.reload();
+
+        assertSame(a, registry.resolve("a"));
+        assertNotSame(b, registry.resolve("b"));
+        assertEquals("600299", registry.resolve("b").getShortCode());
+        assertEquals("600300", registry.resolve("c").getShortCode());
+        // The replaced instance's connections are closed, the kept one's stay open
+        assertTrue(b.getHttpClient().awaitTermination(Duration.ofSeconds(5)));
+        assertFalse(a.getHttpClient().isTerminated());
+
+        writeTenants(tenant("c", "600300"));
+        registry.reload();
+        assertThrows(UnknownTenantException.class, () -> registry.resolve("a"));
+        assertEquals(2, registry.all().size()); // c plus the default tenant
+    }
+
+    @Test
+    void invalidFileKeepsThePreviousTenants() throws IOException {
+        Path file = writeTenants(tenant("a", "600100"));
+        registry = newRegistry(file);
+        Tenant a = registry.resolve("a");
+
+        writeTenants("b.shortcode=600200\n");
+        assertThrows(IOException.class, registry::reload);
+
+        assertSame(a, registry.resolve("a"));
+        assertThrows(UnknownTenantException.class, () -> registry.resolve("b"));
+    }
+
+    @Test
+    void rebuiltTenantPublishesMetersOfTheNewInstance() throws IOException {
+        Path file = writeTenants(tenant("a", "600100"));
+        registry = newRegistry(file);
+
+        writeTenants(tenant("a", "600199"));
+        registry.reload();
+
+        assertEquals(1, meterRegistry.find("mpesa.upstream.concurrency.limit")
+                .tags("tenant", "a", "upstream", "stkpush").gauges().size());
+    }
+
+    private TenantRegistry newRegistry(Path file) throws IOException {
+        MpesaConfig config = new MpesaConfig();
+        config.setBaseUrl("http://127.0.0.1:1");
+        config.setShortCode("174379");
+        config.setPasskey("passkey");
+        config.setConsumerKey("key");
+        config.setConsumerSecret("secret");
+        config.setCallbackUrl("https://example.com/callback");
+        config.setTenantsDefaultId("default");
+        config.setTenantsFile(file != null ? file.toString() : "");
+        config.setTenantsReloadSeconds(0);
+        config.setTenantsBurst(20);
+        config.setUpstreamLimitInitial(64);
+        config.setUpstreamLimitMin(4);
+        config.setUpstreamLimitMax(512);
+        config.setUpstreamLimitRttTolerance(2.0);
+        config.setUpstreamLimitBackoffRatio(0.9);
+        config.setUpstreamBreakerWindowSize(50);
+        config.setUpstreamBreakerMinimumCalls(20);
+        config.setUpstreamBreakerFailureRateThreshold(50);
+        config.setUpstreamBreakerOpenSeconds(30);
+        config.setUpstreamBreakerHalfOpenCalls(5);
+        return new TenantRegistry(config, new MpesaMetrics(meterRegistry), new RetryPolicy(config), meterRegistry,
+                new AuditLog(config), new DarajaHttpClients(config));
+    }
+
+    private Path writeTenants(String content) throws IOException {
+        return Files.writeString(dir.resolve("tenants.properties"), content);
+    }
+
+    private static String tenant(String id, String shortCode) {
+        return id + ".shortcode=" + shortCode + "\n"
+                + id + ".passkey=passkey-" + id + "\n"
+                + id + ".consumer-key=key-" + id + "\n"
+                + id + ".consumer-secret=secret-" + id + "\n";
+    }
+}
@@ -0,0 +1,38 @@
+package com.mpesa.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void allowsBurstThenLimits() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void reservationsQueueBehindDebt() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        assertEquals(0, bucket.reserve());
+        long first = bucket.reserve();
+        long second = bucket.reserve();
+        assertTrue(first > 0 && first <= 100_000_000L, "first wait ~100ms but was " + first);
+        assertTrue(second > first, "later callers wait longer");
+    }
+
+    @Test
+    void nonPositiveRateDisablesLimiting() {
+        TokenBucket bucket = new TokenBucket(0, 1);
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertEquals(0, bucket.reserve());
+    }
+}
@@ -0,0 +1,116 @@
+package com.mpesa.service;
+
+import com.mpesa.config.MpesaConfig;
+import com.mpesa.dto.StkCallback;
+import com.mpesa.dto.TransactionStatus;
+import com.mpesa.dto.TransactionView;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TransactionStoreTest {
+
+    @Test
+    void callbackSettlesPendingPush() {
+        TransactionStore store = newStore(100, 3600, 3600);
+        store.recordPending("ws_1", "29115-1", "254708374149", 100);
+        assertEquals(TransactionStatus.PENDING, store.statusOf("ws_1"));
+
+        store.onCallback(callback("ws_1", 0));
+
+        TransactionView view = store.find("ws_1");
+        assertEquals(TransactionStatus.COMPLETED, view.status());
+        assertEquals("254708374149", view.phone());
+        assertEquals(100, view.amount());
+        assertEquals("NLJ7RT61SV", view.mpesaReceiptNumber());
+        store.shutdown();
+    }
+
+    @Test
+    void earlyCallbackIsNotOverwrittenByPending() {
+        TransactionStore store = newStore(100, 3600, 3600);
+        store.onCallback(callback("ws_1", 1037));
+        store.recordPending("ws_1", "29115-1", "254708374149", 100);
+
+        assertEquals(TransactionStatus.TIMEOUT, store.statusOf("ws_1"));
+        store.shutdown();
+    }
+
+    @Test
+    void sweepTimesOutStalePendingAndEvictsSettled() throws InterruptedException {
+        TransactionStore store = newStore(100, 0, 0);
+        store.recordPending("ws_1", "29115-1", "254708374149", 100);
+        Thread.sleep(5);
+
+        store.sweep();
+        assertEquals(TransactionStatus.TIMEOUT, store.statusOf("ws_1"));
+
+        Thread.sleep(5);
+        store.sweep();
+        assertNull(store.find("ws_1"));
+        store.shutdown();
+    }
+
+    @Test
+    void callbackAfterQueryFillsInTheReceipt() {
+        TransactionStore store = newStore(100, 3600, 3600);
+        store.onCallback(new StkCallback("29115-1", "ws_1", 0, "query", null, null, null, null,
+                System.currentTimeMillis()));
+        assertNull(store.find("ws_1").mpesaReceiptNumber());
+
+        store.onCallback(callback("ws_1", 0));
+
+        TransactionView view = store.find("ws_1");
+        assertEquals(TransactionStatus.COMPLETED, view.status());
+        assertEquals("NLJ7RT61SV", view.mpesaReceiptNumber());
+        assertEquals(100, view.amount());
+        assertEquals("254708374149", view.phone());
+        store.shutdown();
+    }
+
+    @Test
+    void lateCallbackReplacesSweeperTimeout() throws InterruptedException {
+        TransactionStore store = newStore(100, 3600, 0);
+        store.recordPending("ws_1", "29115-1", "254708374149", 100);
+        Thread.sleep(5);
+        store.sweep();
+        assertEquals(TransactionStatus.TIMEOUT, store.statusOf("ws_1"));
+
+        store.onCallback(callback("ws_1", 0));
+
+        TransactionView view = store.find("ws_1");
+        assertEquals(TransactionStatus.COMPLETED, view.status());
+        assertEquals(0, view.resultCode());
+        assertEquals("NLJ7RT61SV", view.mpesaReceiptNumber());
+        store.shutdown();
+    }
+
+    @Test
+    void capacityIsBounded() {
+        TransactionStore store = newStore(1, 3600, 3600);
+        store.recordPending("ws_1", "29115-1", "254708374149", 100);
+        store.recordPending("ws_2", "29115-2", "254708374149", 100);
+
+        assertEquals(1, store.size());
+        assertEquals(1, store.getUntrackedCount());
+        store.shutdown();
+    }
+
+    private static TransactionStore newStore(int maxEntries, long settledTtlSeconds, long pendingTimeoutSeconds) {
+        MpesaConfig config = new MpesaConfig();
+        config.setTransactionsMaxEntries(maxEntries);
+        config.setTransactionsSettledTtlSeconds(settledTtlSeconds);
+        config.setTransactionsPendingTimeoutSeconds(pendingTimeoutSeconds);
+        return new TransactionStore(config, new MpesaMetrics(new SimpleMeterRegistry()), TransactionRepository.NONE);
+    }
+
+    private static StkCallback callback(String checkoutRequestId, int resultCode) {
+        return new StkCallback("29115-1", checkoutRequestId, resultCode, "desc",
+                resultCode == 0 ? new BigDecimal("100") : null, resultCode == 0 ? "NLJ7RT61SV" : null,
+                "20250730143000", "254708374149", System.currentTimeMillis());
+    }
+}
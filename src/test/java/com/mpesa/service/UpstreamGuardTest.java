@@ -0,0 +1,114 @@
+package com.mpesa.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamGuardTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    void breakerOpensOnFailureRateAndFailsFast() {
+        CircuitBreaker breaker = new CircuitBreaker(10, 4, 50, 30_000, 2, now::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onResult(i == 0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState()); // below minimum calls
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(false); // 3 of 4 failed
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(30_000, breaker.getRetryAfterMillis());
+        assertEquals(1, breaker.getRejectedCount());
+    }
+
+    @Test
+    void breakerClosesAfterSuccessfulTrialCalls() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 1, 50, 30_000, 2, now::get);
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        now.addAndGet(30_000);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire()); // only two trial calls
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onResult(true);
+        breaker.onResult(true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void failedTrialCallReopensBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 1, 50, 30_000, 2, now::get);
+        breaker.tryAcquire();
+        breaker.onResult(false);
+
+        now.addAndGet(30_000);
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void limitRejectsCallsBeyondIt() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, 2.0, 0.5);
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+        assertEquals(1, limit.getRejectedCount());
+
+        limit.cancel();
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    void limitGrowsWhileLatencyIsStableAndShrinksWhenItRises() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 100, 2.0, 0.9);
+        long fast = TimeUnit.MILLISECONDS.toNanos(50);
+        for (int i = 0; i < 50; i++) {
+            fillAndRelease(limit, fast);
+        }
+        int grown = limit.getLimit();
+        assertTrue(grown > 10, "limit should grow under stable latency, was " + grown);
+
+        long slow = TimeUnit.MILLISECONDS.toNanos(500);
+        for (int i = 0; i < 50; i++) {
+            fillAndRelease(limit, slow);
+        }
+        assertTrue(limit.getLimit() < grown, "limit should shrink when latency rises, was " + limit.getLimit());
+    }
+
+    @Test
+    void failuresBackOffMultiplicatively() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(40, 2, 100, 2.0, 0.5);
+        assertTrue(limit.tryAcquire());
+        limit.release(1_000_000, true);
+        assertEquals(20, limit.getLimit());
+        assertEquals(0, limit.getInFlight());
+    }
+
+    /** Keeps the limit saturated so increases are allowed, then releases one call */
+    private static void fillAndRelease(AdaptiveConcurrencyLimit limit, long rttNanos) {
+        int acquired = 0;
+        while (limit.tryAcquire()) {
+            acquired++;
+        }
+        limit.release(rttNanos, false);
+        for (int i = 1; i < acquired; i++) {
+            limit.cancel();
+        }
+    }
+}